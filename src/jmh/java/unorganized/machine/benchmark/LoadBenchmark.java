@@ -0,0 +1,73 @@
+package unorganized.machine.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import unorganized.machine.control.Control;
+import unorganized.machine.edges.Edge;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.mapper.ATypeMapper;
+import unorganized.machine.reader.BinaryLayoutReader;
+import unorganized.machine.reader.StreamingLayoutReader;
+import unorganized.machine.reader.UnitLayoutReader;
+import unorganized.machine.writer.BinaryLayoutWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks loading a layout file with each reader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int unitCount;
+
+    private File textFile;
+    private File binaryFile;
+
+    /**
+     * Reader holding parsed lines and units, so that wiring the edges is measured alone.
+     */
+    private UnitLayoutReader wiringReader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.textFile = SyntheticLayout.write(this.unitCount, 1L);
+        this.binaryFile = File.createTempFile("synthetic-" + this.unitCount + "-", ".bin");
+        this.binaryFile.deleteOnExit();
+        BinaryLayoutWriter.convert(this.textFile, this.binaryFile);
+        this.wiringReader = new UnitLayoutReader(this.textFile);
+        this.wiringReader.mapAllLine(Map.of("A", new ATypeMapper()));
+        this.wiringReader.createAllUnits();
+    }
+
+    @Benchmark
+    public Control unitLayoutReader() throws IOException {
+        Control control = new Control();
+        control.addMapper("A", new ATypeMapper());
+        control.readLayout(new UnitLayoutReader(this.textFile));
+        return control;
+    }
+
+    @Benchmark
+    public Map<Long, Edge> createAllEdges() {
+        return this.wiringReader.createAllEdges();
+    }
+
+    @Benchmark
+    public CompiledEngine streamingLayoutReader() throws IOException {
+        return new StreamingLayoutReader(this.textFile).read();
+    }
+
+    @Benchmark
+    public CompiledEngine binaryLayoutReader() throws IOException {
+        return new BinaryLayoutReader(this.binaryFile).read();
+    }
+}
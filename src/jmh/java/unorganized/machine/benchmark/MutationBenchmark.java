@@ -0,0 +1,74 @@
+package unorganized.machine.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import unorganized.machine.control.Control;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks copying a control, reversing edges and initializing unit states.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MutationBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int unitCount;
+
+    private Control objectControl;
+    private Control compiledControl;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File layoutFile = SyntheticLayout.write(this.unitCount, 1L);
+        this.objectControl = PulseBenchmark.read(layoutFile);
+        this.compiledControl = PulseBenchmark.read(layoutFile);
+        this.compiledControl.compile();
+    }
+
+    /**
+     * Make sure the object model benchmarks did not compile their control, which would measure the engine instead.
+     */
+    @TearDown(Level.Iteration)
+    public void checkObjectControl() {
+        if (this.objectControl.getEngine() != null) {
+            throw new IllegalStateException("The object model control was compiled.");
+        }
+    }
+
+    @Benchmark
+    public Control copy() {
+        return Control.copy(this.objectControl);
+    }
+
+    @Benchmark
+    public Control sharedCopy() {
+        return Control.sharedCopy(this.compiledControl);
+    }
+
+    @Benchmark
+    public void reverseSingleEdge() {
+        this.objectControl.reverseSingleEdge();
+    }
+
+    @Benchmark
+    public void compiledReverseSingleEdge() {
+        this.compiledControl.reverseSingleEdge();
+    }
+
+    @Benchmark
+    public void initUnitStates() {
+        this.objectControl.initUnitStates();
+    }
+
+    @Benchmark
+    public void compiledInitUnitStates() {
+        this.compiledControl.initUnitStates();
+    }
+}
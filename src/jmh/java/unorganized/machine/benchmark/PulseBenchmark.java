@@ -0,0 +1,81 @@
+package unorganized.machine.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import unorganized.machine.control.Control;
+import unorganized.machine.mapper.ATypeMapper;
+import unorganized.machine.reader.StreamingLayoutReader;
+import unorganized.machine.reader.UnitLayoutReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a single pulse of the object machine and of the compiled engine, on scalar, vector and parallel code.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class PulseBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int unitCount;
+
+    private Control objectControl;
+    private Control compiledControl;
+    private Control vectorControl;
+    private Control parallelControl;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File layoutFile = SyntheticLayout.write(this.unitCount, 1L);
+        this.objectControl = read(layoutFile);
+        // Compiled controls are loaded straight into engines, so that only one object machine is held.
+        this.compiledControl = new Control();
+        this.compiledControl.readLayout(new StreamingLayoutReader(layoutFile));
+        this.vectorControl = new Control();
+        this.vectorControl.readLayout(new StreamingLayoutReader(layoutFile));
+        this.vectorControl.getEngine().setVectorized(true);
+        if (!this.vectorControl.getEngine().isVectorized()) {
+            throw new IllegalStateException("The jdk.incubator.vector module is not available.");
+        }
+        this.parallelControl = new Control();
+        this.parallelControl.readLayout(new StreamingLayoutReader(layoutFile));
+        this.parallelControl.getEngine().setParallelism(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.parallelControl.getEngine().setParallelism(1);
+    }
+
+    @Benchmark
+    public void objectPulse() {
+        this.objectControl.makePulse();
+    }
+
+    @Benchmark
+    public void compiledPulse() {
+        this.compiledControl.makePulse();
+    }
+
+    @Benchmark
+    public void vectorPulse() {
+        this.vectorControl.makePulse();
+    }
+
+    @Benchmark
+    public void parallelPulse() {
+        this.parallelControl.makePulse();
+    }
+
+    static Control read(File layoutFile) throws IOException {
+        Control control = new Control();
+        control.addMapper("A", new ATypeMapper());
+        control.readLayout(new UnitLayoutReader(layoutFile));
+        return control;
+    }
+}
@@ -0,0 +1,29 @@
+package unorganized.machine.benchmark;
+
+import unorganized.machine.generator.LayoutGenerator;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Synthetic unit layouts for benchmarks.
+ */
+final class SyntheticLayout {
+
+    private SyntheticLayout() {
+    }
+
+    /**
+     * Write a temporary layout file of random type A units, each with two random inputs.
+     * @param unitCount number of units
+     * @param seed seed of the random layout
+     * @return layout file, deleted when the JVM exits
+     * @throws IOException The file cannot be written.
+     */
+    static File write(int unitCount, long seed) throws IOException {
+        File layoutFile = File.createTempFile("synthetic-" + unitCount + "-", ".ulf");
+        layoutFile.deleteOnExit();
+        LayoutGenerator.builder().unitCount(unitCount).seed(seed).build().writeText(layoutFile);
+        return layoutFile;
+    }
+}
@@ -0,0 +1,68 @@
+package unorganized.machine.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.reader.StreamingLayoutReader;
+import unorganized.machine.trace.AsyncTraceWriter;
+import unorganized.machine.trace.OverflowPolicy;
+import unorganized.machine.trace.TraceWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a pulse of the compiled engine alone, with its states traced on the pulse thread,
+ * and with its states traced by a background writer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TraceBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int unitCount;
+
+    private CompiledEngine engine;
+    private TraceWriter traceWriter;
+    private AsyncTraceWriter asyncTraceWriter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File layoutFile = SyntheticLayout.write(this.unitCount, 1L);
+        this.engine = new StreamingLayoutReader(layoutFile).read();
+        File traceFile = File.createTempFile("trace-" + this.unitCount + "-", ".trace");
+        traceFile.deleteOnExit();
+        this.traceWriter = new TraceWriter(this.engine, traceFile);
+        File asyncTraceFile = File.createTempFile("async-trace-" + this.unitCount + "-", ".trace");
+        asyncTraceFile.deleteOnExit();
+        this.asyncTraceWriter = new AsyncTraceWriter(new TraceWriter(this.engine, asyncTraceFile),
+                this.engine.getStates().length, 64, OverflowPolicy.BLOCK);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.traceWriter.close();
+        this.asyncTraceWriter.close();
+    }
+
+    @Benchmark
+    public void pulse() {
+        this.engine.pulse();
+    }
+
+    @Benchmark
+    public void tracedPulse() throws IOException {
+        this.engine.pulse();
+        this.traceWriter.record(this.engine);
+    }
+
+    @Benchmark
+    public void asyncTracedPulse() throws IOException {
+        this.engine.pulse();
+        this.asyncTraceWriter.record(this.engine);
+    }
+}
@@ -0,0 +1,72 @@
+package unorganized.machine.analysis;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import unorganized.machine.engine.Topology;
+
+import java.util.List;
+
+/**
+ * Attractor reached by a machine from an initial state, found by the state space explorer.
+ * @author altair823
+ * @see StateSpaceExplorer
+ */
+@Getter
+@AllArgsConstructor
+public class Attractor {
+
+    /**
+     * Connectivity of the explored machine, which gives the unit of every state bit.
+     */
+    private final Topology topology;
+
+    /**
+     * Number of pulses made while searching for the cycle.
+     */
+    private final long steps;
+
+    /**
+     * Number of pulses from the initial state to the first state on the cycle, or -1 if no cycle was found.
+     */
+    private final long transientLength;
+
+    /**
+     * Number of pulses in the cycle, or 0 if no cycle was found. A fixed point has period 1.
+     */
+    private final long period;
+
+    /**
+     * States on the cycle starting from its first state, as unit state words in unit index order.
+     * Long cycles are cut at the limit given to the explorer.
+     */
+    private final List<long[]> cycleStates;
+
+    /**
+     * Check whether a cycle was found within the maximum number of pulses.
+     * @return true if a cycle was found
+     */
+    public boolean isCycleFound() {
+        return this.period > 0;
+    }
+
+    /**
+     * Get the state of a unit in a state on the cycle.
+     * @param position position on the cycle, counted from its first state
+     * @param unitId unit ID
+     * @return state of the unit
+     */
+    public boolean getState(int position, long unitId) {
+        int index = this.topology.indexOf(unitId);
+        if (index < 0) {
+            throw new IllegalArgumentException("There is no unit " + unitId + ".");
+        }
+        return (this.cycleStates.get(position)[index >>> 6] & (1L << index)) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "steps: " + this.steps + "\n"
+                + "transient length: " + this.transientLength + "\n"
+                + "period: " + this.period + "\n";
+    }
+}
@@ -0,0 +1,55 @@
+package unorganized.machine.analysis;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Attractors of a small machine with the number of initial states falling into each of them.
+ * Attractors are numbered in ascending order of their smallest state, which is the representative state.
+ * A state is a number whose bit {@code i} is the state of the unit with index {@code i} in the topology.
+ * @author altair823
+ * @see BasinMapper
+ */
+@Getter
+@AllArgsConstructor
+public class BasinMap {
+
+    /**
+     * Number of units, so that there are {@code 2^unitCount} initial states.
+     */
+    private final int unitCount;
+
+    /**
+     * Smallest state on the cycle of each attractor.
+     */
+    private final long[] attractorStates;
+
+    /**
+     * Number of states on the cycle of each attractor.
+     */
+    private final long[] periods;
+
+    /**
+     * Number of initial states falling into each attractor, including the states on the cycle.
+     */
+    private final long[] basinSizes;
+
+    /**
+     * Get the number of attractors.
+     * @return number of attractors
+     */
+    public int getAttractorCount() {
+        return this.attractorStates.length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("attractors: " + this.attractorStates.length + "\n");
+        for (int attractor = 0; attractor < this.attractorStates.length; attractor++) {
+            builder.append("state: ").append(this.attractorStates[attractor])
+                    .append(", period: ").append(this.periods[attractor])
+                    .append(", basin size: ").append(this.basinSizes[attractor]).append("\n");
+        }
+        return builder.toString();
+    }
+}
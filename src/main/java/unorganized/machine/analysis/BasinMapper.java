@@ -0,0 +1,394 @@
+package unorganized.machine.analysis;
+
+import lombok.Builder;
+import lombok.Getter;
+import unorganized.machine.control.Control;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.engine.PopulationEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Analysis tool that classifies every initial state of a small machine by the attractor it falls into.
+ * States are advanced 64 at a time on a population engine, with 64 by 64 bit matrix transposes between
+ * the states and the bit slices of the engine.
+ * First, the set of all states is mapped to its image repeatedly in a bitmap until the set does not shrink,
+ * which leaves exactly the states on cycles. Then every initial state is advanced until it reaches a state on a cycle.
+ * Both phases run in parallel over ranges of states.
+ * @author altair823
+ * @see BasinMap
+ */
+@Getter
+@Builder
+public class BasinMapper {
+
+    /**
+     * Maximum number of units of a machine, which gives 2^30 initial states.
+     */
+    public static final int MAX_UNITS = 30;
+
+    /**
+     * Number of bitmap words in one parallel range. 1024 words hold 65536 states.
+     */
+    private static final int CHUNK_WORDS = 1024;
+
+    /**
+     * Number of threads.
+     */
+    @Builder.Default
+    private final int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Optional file receiving the attractor number of every initial state, or null.
+     * The file holds one little endian int per state, at position {@code 4 * state}.
+     */
+    private final File tableFile;
+
+    /**
+     * Method mapping the basins of the machine of a control.
+     * The control is compiled if it is not compiled yet, and its states are not changed.
+     * @param control control holding the machine
+     * @return attractors and their basin sizes
+     * @throws IOException The table file cannot be written.
+     */
+    public BasinMap map(Control control) throws IOException {
+        if (control.getEngine() == null) {
+            control.compile();
+        }
+        return this.map(control.getEngine());
+    }
+
+    /**
+     * Method mapping the basins of a compiled machine with its current edge inversions.
+     * @param engine engine holding the machine
+     * @return attractors and their basin sizes
+     * @throws IOException The table file cannot be written.
+     * @throws IllegalArgumentException The machine has more than 30 units.
+     */
+    public BasinMap map(CompiledEngine engine) throws IOException {
+        int unitCount = engine.getTopology().getUnitCount();
+        if (unitCount > MAX_UNITS) {
+            throw new IllegalArgumentException("Basins can be mapped for at most " + MAX_UNITS + " units.");
+        }
+        if (this.parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        try {
+            return new Mapping(engine, pool).run();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Transpose a 64 by 64 bit matrix in place, so that bit {@code j} of row {@code i} becomes
+     * bit {@code i} of row {@code j}.
+     * @param rows 64 rows of the matrix
+     */
+    static void transpose(long[] rows) {
+        long mask = 0x00000000FFFFFFFFL;
+        for (int width = 32; width != 0; width >>>= 1, mask ^= mask << width) {
+            for (int row = 0; row < 64; row = (row + width + 1) & ~width) {
+                long swapped = ((rows[row] >>> width) ^ rows[row + width]) & mask;
+                rows[row] ^= swapped << width;
+                rows[row + width] ^= swapped;
+            }
+        }
+    }
+
+    /**
+     * State of one mapping run.
+     */
+    private class Mapping {
+        private final CompiledEngine engine;
+        private final ForkJoinPool pool;
+        private final int unitCount;
+        private final long stateCount;
+        private final int wordCount;
+        private final ThreadLocal<Successor> successors;
+
+        private AtomicLongArray cycleStates;
+        private int[] ranks;
+        private int[] attractorOf;
+        private int attractorCount;
+        private long[] attractorStates = new long[16];
+        private long[] periods = new long[16];
+        private final List<long[]> basinCounts = new ArrayList<>();
+        private final ThreadLocal<long[]> localCounts;
+
+        Mapping(CompiledEngine engine, ForkJoinPool pool) {
+            this.engine = engine;
+            this.pool = pool;
+            this.unitCount = engine.getTopology().getUnitCount();
+            this.stateCount = 1L << this.unitCount;
+            this.wordCount = (int) ((this.stateCount + 63) >>> 6);
+            this.successors = ThreadLocal.withInitial(() -> new Successor(engine));
+            this.localCounts = ThreadLocal.withInitial(() -> {
+                long[] counts = new long[this.attractorCount];
+                synchronized (this.basinCounts) {
+                    this.basinCounts.add(counts);
+                }
+                return counts;
+            });
+        }
+
+        BasinMap run() throws IOException {
+            this.findCycleStates();
+            this.findAttractors();
+            if (BasinMapper.this.tableFile == null) {
+                this.runChunks(chunk -> this.classify(chunk, null));
+            } else {
+                try (FileChannel channel = FileChannel.open(BasinMapper.this.tableFile.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    this.runChunks(chunk -> this.classify(chunk, channel));
+                }
+            }
+            long[] basinSizes = new long[this.attractorCount];
+            for (long[] counts : this.basinCounts) {
+                for (int attractor = 0; attractor < this.attractorCount; attractor++) {
+                    basinSizes[attractor] += counts[attractor];
+                }
+            }
+            return new BasinMap(this.unitCount, Arrays.copyOf(this.attractorStates, this.attractorCount),
+                    Arrays.copyOf(this.periods, this.attractorCount), basinSizes);
+        }
+
+        /**
+         * Map the set of all states to its image until it does not shrink.
+         */
+        private void findCycleStates() throws IOException {
+            AtomicLongArray current = new AtomicLongArray(this.wordCount);
+            for (int word = 0; word < this.wordCount; word++) {
+                current.set(word, this.stateCount < 64 ? (1L << this.stateCount) - 1 : -1L);
+            }
+            long count = this.stateCount;
+            AtomicLongArray next = new AtomicLongArray(this.wordCount);
+            while (true) {
+                AtomicLongArray source = current;
+                AtomicLongArray target = next;
+                this.runChunks(chunk -> this.image(source, target, chunk));
+                long nextCount = 0;
+                for (int word = 0; word < this.wordCount; word++) {
+                    nextCount += Long.bitCount(next.get(word));
+                }
+                current = next;
+                next = source;
+                if (nextCount == count) {
+                    break;
+                }
+                count = nextCount;
+                for (int word = 0; word < this.wordCount; word++) {
+                    next.set(word, 0L);
+                }
+            }
+            this.cycleStates = current;
+            this.ranks = new int[this.wordCount + 1];
+            for (int word = 0; word < this.wordCount; word++) {
+                this.ranks[word + 1] = this.ranks[word] + Long.bitCount(current.get(word));
+            }
+        }
+
+        /**
+         * Add the successors of the states of a range in the source set to the target set.
+         */
+        private void image(AtomicLongArray source, AtomicLongArray target, int chunk) {
+            Successor successor = this.successors.get();
+            long[] rows = successor.rows;
+            int count = 0;
+            int end = Math.min(this.wordCount, (chunk + 1) * CHUNK_WORDS);
+            for (int word = chunk * CHUNK_WORDS; word < end; word++) {
+                long bits = source.get(word);
+                while (bits != 0) {
+                    rows[count++] = ((long) word << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    if (count == 64) {
+                        successor.step(count);
+                        for (int i = 0; i < count; i++) {
+                            target.getAndAccumulate((int) (rows[i] >>> 6), 1L << rows[i], (a, b) -> a | b);
+                        }
+                        count = 0;
+                    }
+                }
+            }
+            if (count > 0) {
+                successor.step(count);
+                for (int i = 0; i < count; i++) {
+                    target.getAndAccumulate((int) (rows[i] >>> 6), 1L << rows[i], (a, b) -> a | b);
+                }
+            }
+        }
+
+        /**
+         * Walk the cycle of every state on a cycle, numbering the attractors by their smallest state.
+         */
+        private void findAttractors() {
+            this.attractorOf = new int[this.ranks[this.wordCount]];
+            long[] assigned = new long[this.wordCount];
+            Successor successor = new Successor(this.engine);
+            for (int word = 0; word < this.wordCount; word++) {
+                long bits = this.cycleStates.get(word) & ~assigned[word];
+                while (bits != 0) {
+                    long state = ((long) word << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    if ((assigned[word] & (1L << state)) != 0) {
+                        continue;
+                    }
+                    if (this.attractorCount == this.attractorStates.length) {
+                        this.attractorStates = Arrays.copyOf(this.attractorStates, this.attractorCount << 1);
+                        this.periods = Arrays.copyOf(this.periods, this.attractorCount << 1);
+                    }
+                    long period = 0;
+                    long cursor = state;
+                    do {
+                        assigned[(int) (cursor >>> 6)] |= 1L << cursor;
+                        this.attractorOf[this.rank(cursor)] = this.attractorCount;
+                        successor.rows[0] = cursor;
+                        successor.step(1);
+                        cursor = successor.rows[0];
+                        period++;
+                    } while (cursor != state);
+                    this.attractorStates[this.attractorCount] = state;
+                    this.periods[this.attractorCount++] = period;
+                }
+            }
+        }
+
+        /**
+         * Advance every initial state of a range until it reaches a cycle, and count it in the basin.
+         */
+        private void classify(int chunk, FileChannel channel) throws IOException {
+            Successor successor = this.successors.get();
+            long[] counts = this.localCounts.get();
+            long[] rows = successor.rows;
+            long from = (long) chunk * CHUNK_WORDS << 6;
+            long to = Math.min(this.stateCount, (long) (chunk + 1) * CHUNK_WORDS << 6);
+            ByteBuffer table = channel == null ? null
+                    : ByteBuffer.allocate((int) (to - from) << 2).order(ByteOrder.LITTLE_ENDIAN);
+            for (long start = from; start < to; start += 64) {
+                int count = (int) Math.min(64, to - start);
+                for (int i = 0; i < count; i++) {
+                    rows[i] = start + i;
+                }
+                long pending = count == 64 ? -1L : (1L << count) - 1;
+                while (true) {
+                    long lanes = pending;
+                    while (lanes != 0) {
+                        int lane = Long.numberOfTrailingZeros(lanes);
+                        lanes &= lanes - 1;
+                        long state = rows[lane];
+                        if ((this.cycleStates.get((int) (state >>> 6)) & (1L << state)) != 0) {
+                            int attractor = this.attractorOf[this.rank(state)];
+                            counts[attractor]++;
+                            if (table != null) {
+                                table.putInt((int) (start - from + lane) << 2, attractor);
+                            }
+                            pending &= ~(1L << lane);
+                        }
+                    }
+                    if (pending == 0) {
+                        break;
+                    }
+                    successor.step(count);
+                }
+            }
+            if (table != null) {
+                long position = from << 2;
+                while (table.hasRemaining()) {
+                    position += channel.write(table, position);
+                }
+            }
+        }
+
+        private int rank(long state) {
+            int word = (int) (state >>> 6);
+            return this.ranks[word] + Long.bitCount(this.cycleStates.get(word) & ((1L << state) - 1));
+        }
+
+        /**
+         * Run a task for every range of states on the pool and wait for all of them.
+         */
+        private void runChunks(ChunkTask task) throws IOException {
+            int chunkCount = (this.wordCount + CHUNK_WORDS - 1) / CHUNK_WORDS;
+            List<Callable<Void>> tasks = new ArrayList<>(chunkCount);
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                int number = chunk;
+                tasks.add(() -> {
+                    task.run(number);
+                    return null;
+                });
+            }
+            try {
+                for (Future<Void> future : this.pool.invokeAll(tasks)) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException ioException) {
+                    throw ioException;
+                }
+                if (e.getCause() instanceof UncheckedIOException uncheckedIOException) {
+                    throw uncheckedIOException.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    private interface ChunkTask {
+        void run(int chunk) throws IOException;
+    }
+
+    /**
+     * Calculator of the successors of up to 64 states on a population engine of 64 variants.
+     */
+    private static class Successor {
+        private final PopulationEngine population;
+        private final int unitCount;
+
+        /**
+         * States given to and returned from {@link #step(int)}, one per row.
+         */
+        private final long[] rows = new long[64];
+
+        Successor(CompiledEngine engine) {
+            this.population = PopulationEngine.of(engine, 64);
+            this.unitCount = engine.getTopology().getUnitCount();
+        }
+
+        /**
+         * Replace the first rows with their successors.
+         * @param count number of states in the rows
+         */
+        void step(int count) {
+            for (int i = count; i < 64; i++) {
+                this.rows[i] = 0L;
+            }
+            transpose(this.rows);
+            for (int index = 0; index < this.unitCount; index++) {
+                this.population.setStateSlice(index, 0, this.rows[index]);
+            }
+            this.population.pulse();
+            for (int index = 0; index < 64; index++) {
+                this.rows[index] = index < this.unitCount ? this.population.getStateSlice(index, 0) : 0L;
+            }
+            transpose(this.rows);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package unorganized.machine.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressed hash table from state fingerprints to the pulse at which the state was seen.
+ * Keys and values are held in primitive arrays of a fixed capacity, and linear probing resolves collisions.
+ * When the table is full, entries are thinned out to the pulses of a larger sampling stride.
+ * @author altair823
+ * @see StateSpaceExplorer
+ */
+class FingerprintTable {
+
+    /**
+     * Key that marks an empty entry. A fingerprint equal to it is stored as {@link #ZERO_KEY}.
+     */
+    private static final long EMPTY = 0L;
+    private static final long ZERO_KEY = 0x9E3779B97F4A7C15L;
+
+    private long[] keys;
+    private long[] steps;
+    private long[] spareKeys;
+    private long[] spareSteps;
+    private final int mask;
+    private final int maxSize;
+    private int size;
+
+    /**
+     * Constructor that allocates a table for a maximum number of entries.
+     * @param maxSize maximum number of entries, kept at most half of the capacity
+     */
+    FingerprintTable(int maxSize) {
+        if (maxSize < 1 || maxSize > 1 << 29) {
+            throw new IllegalArgumentException("Maximum size must be between 1 and 2^29.");
+        }
+        int capacity = Integer.highestOneBit(maxSize) << 2;
+        this.keys = new long[capacity];
+        this.steps = new long[capacity];
+        this.spareKeys = new long[capacity];
+        this.spareSteps = new long[capacity];
+        this.mask = capacity - 1;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Find the pulse of a fingerprint.
+     * @param fingerprint state fingerprint
+     * @return pulse stored with the fingerprint, or -1 if it is not in the table
+     */
+    long get(long fingerprint) {
+        long key = fingerprint == EMPTY ? ZERO_KEY : fingerprint;
+        for (int position = slot(key); ; position = (position + 1) & this.mask) {
+            if (this.keys[position] == key) {
+                return this.steps[position];
+            }
+            if (this.keys[position] == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Store a fingerprint with a pulse, replacing the pulse if the fingerprint is already in the table.
+     * @param fingerprint state fingerprint
+     * @param step pulse of the state
+     */
+    void put(long fingerprint, long step) {
+        long key = fingerprint == EMPTY ? ZERO_KEY : fingerprint;
+        int position = slot(key);
+        while (this.keys[position] != EMPTY && this.keys[position] != key) {
+            position = (position + 1) & this.mask;
+        }
+        if (this.keys[position] == EMPTY) {
+            this.size++;
+        }
+        this.keys[position] = key;
+        this.steps[position] = step;
+    }
+
+    /**
+     * Keep only the entries of pulses that are multiples of a stride.
+     * @param stride sampling stride
+     */
+    void retain(long stride) {
+        long[] oldKeys = this.keys;
+        long[] oldSteps = this.steps;
+        this.keys = this.spareKeys;
+        this.steps = this.spareSteps;
+        this.spareKeys = oldKeys;
+        this.spareSteps = oldSteps;
+        Arrays.fill(this.keys, EMPTY);
+        this.size = 0;
+        for (int position = 0; position < oldKeys.length; position++) {
+            if (oldKeys[position] != EMPTY && oldSteps[position] % stride == 0) {
+                int target = slot(oldKeys[position]);
+                while (this.keys[target] != EMPTY) {
+                    target = (target + 1) & this.mask;
+                }
+                this.keys[target] = oldKeys[position];
+                this.steps[target] = oldSteps[position];
+                this.size++;
+            }
+        }
+    }
+
+    boolean isFull() {
+        return this.size >= this.maxSize;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32)) & this.mask;
+    }
+}
@@ -0,0 +1,146 @@
+package unorganized.machine.analysis;
+
+import lombok.Builder;
+import lombok.Getter;
+import unorganized.machine.control.Control;
+import unorganized.machine.engine.CompiledEngine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Analysis tool that finds the transient length and the cycle of a machine from its current state.
+ * Fingerprints of visited states are kept in a primitive hash table of bounded size. When the table is full,
+ * only states at multiples of a doubled sampling stride are kept, so memory stays bounded for any number of pulses.
+ * A fingerprint seen again gives a candidate period, which is verified exactly by replaying from the initial state
+ * with two engines a period apart. The replay also finds the first state on the cycle.
+ * Fingerprint collisions fail the verification and the search goes on.
+ * @author altair823
+ * @see Attractor
+ */
+@Getter
+@Builder
+public class StateSpaceExplorer {
+
+    /**
+     * Maximum number of pulses made while searching for the cycle.
+     */
+    @Builder.Default
+    private final long maxSteps = Long.MAX_VALUE;
+
+    /**
+     * Maximum number of fingerprints kept at once.
+     */
+    @Builder.Default
+    private final int maxFingerprints = 1 << 20;
+
+    /**
+     * Maximum number of cycle states stored in the result.
+     */
+    @Builder.Default
+    private final int maxCycleStates = 1024;
+
+    /**
+     * Method exploring the machine of a control from its current state.
+     * The control is compiled if it is not compiled yet, and its states are not changed.
+     * @param control control holding the machine
+     * @return attractor reached from the current state
+     */
+    public Attractor explore(Control control) {
+        if (control.getEngine() == null) {
+            control.compile();
+        }
+        return this.explore(control.getEngine());
+    }
+
+    /**
+     * Method exploring a compiled machine from its current state. The engine is not changed.
+     * @param engine engine holding the machine
+     * @return attractor reached from the current state
+     */
+    public Attractor explore(CompiledEngine engine) {
+        CompiledEngine start = engine.copy();
+        CompiledEngine runner = start.copy();
+        FingerprintTable table = new FingerprintTable(this.maxFingerprints);
+        long stride = 1;
+        table.put(fingerprint(runner.getStates()), 0);
+        for (long step = 1; step <= this.maxSteps; step++) {
+            runner.pulse();
+            long fingerprint = fingerprint(runner.getStates());
+            long seen = table.get(fingerprint);
+            if (seen >= 0) {
+                long transientLength = findTransient(start, seen, step - seen);
+                if (transientLength >= 0) {
+                    return new Attractor(engine.getTopology(), step, transientLength, step - seen,
+                            this.collectCycle(start, transientLength, step - seen));
+                }
+                // A collision of fingerprints, so the entry is given to the newer state.
+                table.put(fingerprint, step);
+                continue;
+            }
+            if (step % stride == 0) {
+                if (table.isFull()) {
+                    stride <<= 1;
+                    table.retain(stride);
+                }
+                if (step % stride == 0) {
+                    table.put(fingerprint, step);
+                }
+            }
+        }
+        return new Attractor(engine.getTopology(), this.maxSteps, -1, 0, List.of());
+    }
+
+    /**
+     * Find the first state on the cycle by replaying from the initial state with two engines a period apart.
+     * @param start engine at the initial state
+     * @param seen pulse of the earlier state with the same fingerprint
+     * @param period candidate period
+     * @return transient length, or -1 if the states do not repeat with the period
+     */
+    private static long findTransient(CompiledEngine start, long seen, long period) {
+        CompiledEngine tortoise = start.copy();
+        CompiledEngine hare = start.copy();
+        for (long i = 0; i < period; i++) {
+            hare.pulse();
+        }
+        for (long transientLength = 0; transientLength <= seen; transientLength++) {
+            if (Arrays.equals(tortoise.getStates(), hare.getStates())) {
+                return transientLength;
+            }
+            tortoise.pulse();
+            hare.pulse();
+        }
+        return -1;
+    }
+
+    /**
+     * Collect the states on the cycle up to the maximum number of cycle states.
+     */
+    private List<long[]> collectCycle(CompiledEngine start, long transientLength, long period) {
+        CompiledEngine runner = start.copy();
+        for (long i = 0; i < transientLength; i++) {
+            runner.pulse();
+        }
+        List<long[]> states = new ArrayList<>();
+        for (long i = 0; i < Math.min(period, this.maxCycleStates); i++) {
+            states.add(runner.getStates().clone());
+            runner.pulse();
+        }
+        return states;
+    }
+
+    /**
+     * Hash the state words into a 64 bit fingerprint.
+     */
+    static long fingerprint(long[] states) {
+        long hash = 0x6A09E667F3BCC909L ^ states.length;
+        for (long word : states) {
+            hash = Long.rotateLeft(hash ^ word, 29) * 0x9E3779B97F4A7C15L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+}
@@ -18,4 +18,17 @@ public class ATypeCalculator implements StateCalculator {
             throw new ClassCastException();
         }
     }
+
+    @Override
+    public boolean calculate(boolean first, boolean second) {
+        return !(first && second);
+    }
+
+    @Override
+    public boolean calculate(long states, int count) {
+        if (count < 2) {
+            throw new IndexOutOfBoundsException("Type A unit needs two previous states but got " + count + ".");
+        }
+        return (states & 3L) != 3L;
+    }
 }
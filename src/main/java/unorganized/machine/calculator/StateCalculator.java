@@ -1,10 +1,14 @@
 package unorganized.machine.calculator;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Handler interface that Handle current state of unit.
  * The type of classes that implement this interface varies according to the unit type.
+ * Primitive calculating methods fall back to the collection method by default.
+ * Calculators used on the hot path should override them to avoid boxing.
  */
 public interface StateCalculator {
     /**
@@ -13,4 +17,28 @@ public interface StateCalculator {
      * @return new current state
      */
     boolean calculate(Collection<Boolean> states);
+
+    /**
+     * Calculating method for unit current state from two previous states.
+     * @param first state from the first previous unit
+     * @param second state from the second previous unit
+     * @return new current state
+     */
+    default boolean calculate(boolean first, boolean second) {
+        return calculate(List.of(first, second));
+    }
+
+    /**
+     * Calculating method for unit current state from packed previous states.
+     * @param states previous states, bit {@code i} holding the state from the i-th previous unit
+     * @param count number of previous states, at most 64
+     * @return new current state
+     */
+    default boolean calculate(long states, int count) {
+        List<Boolean> stateList = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            stateList.add((states >>> i & 1L) != 0);
+        }
+        return calculate(stateList);
+    }
 }
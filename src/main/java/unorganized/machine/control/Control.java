@@ -1,15 +1,31 @@
 package unorganized.machine.control;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import unorganized.machine.deliver.StateDeliver;
 import unorganized.machine.edges.Edge;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.engine.EdgeFlips;
+import unorganized.machine.engine.InputDriver;
+import unorganized.machine.engine.Probe;
+import unorganized.machine.engine.RunResult;
+import unorganized.machine.engine.StopCondition;
+import unorganized.machine.engine.Topology;
+import unorganized.machine.engine.UnitOrder;
 import unorganized.machine.mapper.DataMapper;
+import unorganized.machine.metric.MachineMetrics;
+import unorganized.machine.reader.BinaryLayoutReader;
+import unorganized.machine.reader.StreamingLayoutReader;
 import unorganized.machine.reader.UnitLayoutReader;
 import unorganized.machine.units.Unit;
 
+import java.io.IOException;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 /**
  * Class that implements the control described in Turing's paper.
@@ -24,6 +40,43 @@ public class Control {
     private Map<Long, Edge> edgeMap;
     private final Map<Long, Boolean> initialUnitStates = new HashMap<>();
 
+    /**
+     * Initial unit states packed one bit per unit index of the engine, when the layout was read into an engine.
+     */
+    @Getter(AccessLevel.NONE)
+    private long[] initialStateWords;
+
+    /**
+     * Compiled engine that runs pulses instead of units and edges. Null until the control is compiled.
+     */
+    private CompiledEngine engine;
+
+    /**
+     * Whether units or edges were handed out, so the engine must reload them before a pulse.
+     */
+    @Getter(AccessLevel.NONE)
+    private boolean unitsExposed;
+    @Getter(AccessLevel.NONE)
+    private boolean edgesExposed;
+
+    /**
+     * Units and edges of the original control of a shared copy. Used only to create units and edges when requested.
+     */
+    @Getter(AccessLevel.NONE)
+    private Map<Long, Unit> templateUnitMap;
+    @Getter(AccessLevel.NONE)
+    private Map<Long, Edge> templateEdgeMap;
+
+    /**
+     * Metrics recording pulses, layout loads and copies. Null when the control is not measured.
+     */
+    private MachineMetrics metrics;
+
+    /**
+     * Driver clamping input units of the compiled engine to the frames of an input source. Null when no unit is driven.
+     */
+    private InputDriver inputDriver;
+
     /**
      * Method to add a new data mapper
      * @param mapperType a string that indicates type of data mapper
@@ -38,34 +91,404 @@ public class Control {
      * @param unitLayoutReader reader object that read unit layout
      */
     public void readLayout(UnitLayoutReader unitLayoutReader){
+        long start = this.metrics == null ? 0L : System.nanoTime();
         unitLayoutReader.mapAllLine(this.dataMappers);
         this.unitMap = unitLayoutReader.createAllUnits();
         this.edgeMap = unitLayoutReader.createAllEdges();
+        this.engine = null;
+        this.unitsExposed = false;
+        this.edgesExposed = false;
+        this.initialStateWords = null;
+        this.inputDriver = null;
 
         // Save initial unit states.
         this.unitMap.forEach((id, unit) -> this.initialUnitStates.put(id, unit.isCurrentState()));
+        if (this.metrics != null) {
+            this.metrics.recordLoad(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Method to read unit layout straight into a compiled engine.
+     * Units and edges are created only when they are requested.
+     * @param streamingLayoutReader reader object that read unit layout
+     * @throws IOException The layout file cannot be read or is malformed.
+     * @see StreamingLayoutReader
+     */
+    public void readLayout(StreamingLayoutReader streamingLayoutReader) throws IOException {
+        long start = this.metrics == null ? 0L : System.nanoTime();
+        this.loadEngine(streamingLayoutReader.read(), start);
+    }
+
+    /**
+     * Method to read unit layout straight into a compiled engine, renumbering units for locality.
+     * Units and edges keep the IDs of the layout file.
+     * @param streamingLayoutReader reader object that read unit layout
+     * @param unitOrder order of the units in the engine
+     * @throws IOException The layout file cannot be read or is malformed.
+     * @see UnitOrder
+     */
+    public void readLayout(StreamingLayoutReader streamingLayoutReader, UnitOrder unitOrder) throws IOException {
+        long start = this.metrics == null ? 0L : System.nanoTime();
+        this.loadEngine(streamingLayoutReader.read(unitOrder), start);
+    }
+
+    /**
+     * Method to load a binary unit layout into a compiled engine.
+     * Units and edges are created only when they are requested.
+     * @param binaryLayoutReader reader object that read binary unit layout
+     * @throws IOException The layout file cannot be read or is malformed.
+     * @see BinaryLayoutReader
+     */
+    public void readLayout(BinaryLayoutReader binaryLayoutReader) throws IOException {
+        long start = this.metrics == null ? 0L : System.nanoTime();
+        this.loadEngine(binaryLayoutReader.read(), start);
+    }
+
+    /**
+     * Replace the machine with a compiled engine and save its states as initial unit states.
+     */
+    private void loadEngine(CompiledEngine loadedEngine, long start){
+        this.engine = loadedEngine;
+        this.engine.setMetrics(this.metrics);
+        this.inputDriver = null;
+        this.unitMap = null;
+        this.edgeMap = null;
+        this.templateUnitMap = null;
+        this.templateEdgeMap = null;
+        this.unitsExposed = false;
+        this.edgesExposed = false;
+
+        // Save initial unit states.
+        this.initialUnitStates.clear();
+        this.initialStateWords = this.engine.getStates().clone();
+        if (this.metrics != null) {
+            this.metrics.recordLoad(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Getter for initial unit states.
+     * @return Map of initial states by unit ID
+     */
+    public Map<Long, Boolean> getInitialUnitStates(){
+        if (this.initialStateWords != null && this.initialUnitStates.isEmpty()) {
+            Topology topology = this.engine.getTopology();
+            for (int index = 0; index < topology.getUnitCount(); index++) {
+                this.initialUnitStates.put(topology.unitId(index),
+                        (this.initialStateWords[index >>> 6] & (1L << index)) != 0);
+            }
+        }
+        return this.initialUnitStates;
     }
 
     /**
      * Method that make a pulse to all edges and units.
      */
     public void makePulse(){
+        if (this.engine != null) {
+            this.syncEngine();
+            this.engine.pulse();
+            return;
+        }
+        if (this.metrics != null) {
+            this.makeMeasuredPulse();
+            return;
+        }
+        this.edgeMap.forEach((id, edge) -> edge.deliverState());
+        this.unitMap.forEach((id, unit) -> unit.calculateState());
+    }
+
+    /**
+     * Make a pulse to all edges and units and record it, counting the units whose state changed.
+     */
+    private void makeMeasuredPulse(){
+        long start = System.nanoTime();
+        Map<Long, Boolean> previousStates = new HashMap<>();
+        this.unitMap.forEach((id, unit) -> previousStates.put(id, unit.isCurrentState()));
         this.edgeMap.forEach((id, edge) -> edge.deliverState());
         this.unitMap.forEach((id, unit) -> unit.calculateState());
+        long nanos = System.nanoTime() - start;
+        long flippedUnits = this.unitMap.entrySet().stream()
+                .filter(entry -> entry.getValue().isCurrentState() != previousStates.get(entry.getKey()))
+                .count();
+        this.metrics.recordPulse(flippedUnits, this.edgeMap.size(), nanos);
+    }
+
+    /**
+     * Method that sets the metrics recording pulses, layout loads and copies of the control.
+     * Pulses of the compiled engine are recorded by the engine itself.
+     * @param metrics metrics to record into, or null to stop measuring
+     * @see MachineMetrics#register(String)
+     */
+    public void setMetrics(MachineMetrics metrics){
+        this.metrics = metrics;
+        if (this.engine != null) {
+            this.engine.setMetrics(metrics);
+        }
+    }
+
+    /**
+     * Method that drives input units from the frames of an input source on every pulse of the compiled engine.
+     * Unlike a state set between pulses, a driven state is not overwritten by the calculation of the unit,
+     * and a batch run consumes the whole source without a call per pulse.
+     * The control is compiled first if it is not compiled yet.
+     * @param inputDriver driver of the input units, or null to stop driving them
+     * @see InputDriver
+     */
+    public void setInputDriver(InputDriver inputDriver){
+        this.requireEngine().setInputDriver(inputDriver);
+        this.inputDriver = inputDriver;
+    }
+
+    /**
+     * Method that makes pulses in a batch on the compiled engine.
+     * The control is compiled first if it is not compiled yet.
+     * @param pulses maximum number of pulses
+     * @param stopCondition condition that ends the run early
+     * @return number of executed pulses, and the cycle found if the run stopped early
+     */
+    public RunResult run(long pulses, StopCondition stopCondition){
+        if (this.engine == null) {
+            this.compile();
+        }
+        this.syncEngine();
+        return this.engine.run(pulses, stopCondition);
+    }
+
+    /**
+     * Method that makes a number of pulses in a batch on the compiled engine.
+     * @param pulses number of pulses
+     * @return number of executed pulses
+     */
+    public RunResult run(long pulses){
+        return this.run(pulses, StopCondition.NONE);
+    }
+
+    /**
+     * Method that compiles current units and edges into a bit-packed engine.
+     * After compiling, pulses run on the engine and units are updated only when the unit map is requested.
+     * If the layout was read straight into an engine and no units were created, that engine is kept.
+     * @return compiled engine
+     * @see CompiledEngine
+     */
+    public CompiledEngine compile(){
+        if (this.unitMap == null && this.engine != null) {
+            return this.engine;
+        }
+        this.engine = CompiledEngine.compile(this.unitMap, this.edgeMap);
+        this.engine.setMetrics(this.metrics);
+        this.engine.setInputDriver(this.inputDriver);
+        // Units and edges handed out before compiling may still be changed by the caller, so they stay exposed.
+        return this.engine;
+    }
+
+    /**
+     * Method that compiles current units and edges into a bit-packed engine running pulses on several threads.
+     * @param parallelism number of threads calculating a pulse
+     * @return compiled engine
+     */
+    public CompiledEngine compile(int parallelism){
+        this.compile().setParallelism(parallelism);
+        return this.engine;
+    }
+
+    /**
+     * Getter for the compiled engine. Units and edges changed through the getters are loaded into the engine first.
+     * @return compiled engine, or null if the control is not compiled
+     */
+    public CompiledEngine getEngine(){
+        if (this.engine != null) {
+            this.syncEngine();
+        }
+        return this.engine;
+    }
+
+    /**
+     * Getter for units. If the control is compiled, units are updated with the current states of the engine.
+     * Units changed by the caller are reloaded into the engine before the next pulse, also after compiling.
+     * @return Map of units
+     */
+    public Map<Long, Unit> getUnitMap(){
+        this.materialize();
+        if (this.engine != null) {
+            this.engine.writeStates(this.unitMap);
+        }
+        this.unitsExposed = true;
+        return this.unitMap;
+    }
+
+    /**
+     * Getter for edges. If the control is compiled, deliver rules of edges are updated with the engine,
+     * and the engine reloads them before the next pulse.
+     * @return Map of edges
+     */
+    public Map<Long, Edge> getEdgeMap(){
+        this.materialize();
+        if (this.engine != null) {
+            this.engine.writeInversions(this.edgeMap);
+        }
+        this.edgesExposed = true;
+        return this.edgeMap;
+    }
+
+    /**
+     * Reload units and edges handed out by getters into the engine, as they may have been changed by a caller.
+     */
+    private void syncEngine(){
+        if (this.unitsExposed) {
+            this.engine.readStates(this.unitMap);
+            this.unitsExposed = false;
+        }
+        if (this.edgesExposed) {
+            this.engine.readInversions(this.edgeMap);
+            this.edgesExposed = false;
+        }
     }
 
     /**
      * Method that reverse the way a single edge delivering state between two units.
+     * The edge is drawn by the random generator of the current thread.
+     * A control that is not compiled reverses the edge object, and a compiled control reverses it on the engine.
      * @see Edge
      */
     public void reverseSingleEdge(){
-        this.edgeMap.get(((long) (Math.random() * 100000) % this.edgeMap.size() + 1)).reverseDeliverRule();
+        if (this.engine != null) {
+            this.reverseRandomEdges(1, ThreadLocalRandom.current());
+            return;
+        }
+        this.randomEdge(ThreadLocalRandom.current()).reverseDeliverRule();
+    }
+
+    /**
+     * Draw an edge of the edge map. Edge IDs are usually contiguous from 1, so an ID is drawn first,
+     * and the edges are walked only if there is no edge of that ID.
+     */
+    private Edge randomEdge(RandomGenerator random){
+        int position = random.nextInt(this.edgeMap.size());
+        Edge edge = this.edgeMap.get(position + 1L);
+        if (edge != null) {
+            return edge;
+        }
+        return this.edgeMap.values().stream().skip(position).findFirst().orElseThrow();
+    }
+
+    /**
+     * Method that reverses distinct edges drawn by an injected random generator, so that runs can be reproduced.
+     * Edges are drawn by rank among the edge IDs, which need not be contiguous.
+     * The control is compiled first if it is not compiled yet.
+     * @param count number of edges to reverse
+     * @param random generator drawing the edges
+     * @return record of the reversed edges, which can be undone with {@link #undoEdges(EdgeFlips)}
+     * @throws IllegalArgumentException The count is negative or larger than the number of edges.
+     * @see CompiledEngine#reverseRandomEdges(int, RandomGenerator)
+     */
+    public EdgeFlips reverseRandomEdges(int count, RandomGenerator random){
+        return this.requireEngine().reverseRandomEdges(count, random);
+    }
+
+    /**
+     * Method that undoes a batch of edges reversed by {@link #reverseRandomEdges(int, RandomGenerator)}.
+     * @param flips record of the reversed edges
+     */
+    public void undoEdges(EdgeFlips flips){
+        this.requireEngine().reverseEdges(flips);
+    }
+
+    /**
+     * Method that reverses the way an edge delivers state on the compiled engine.
+     * The control is compiled first if it is not compiled yet.
+     * @param edgeId edge ID
+     */
+    public void reverseEdge(long edgeId){
+        this.requireEngine().reverseEdge(edgeId);
+    }
+
+    /**
+     * Method that sets the current state of a unit on the compiled engine.
+     * The control is compiled first if it is not compiled yet.
+     * @param unitId unit ID
+     * @param state new state
+     */
+    public void setUnitState(long unitId, boolean state){
+        this.requireEngine().setState(unitId, state);
+    }
+
+    /**
+     * Method that gathers the current states of the units observed by a probe, without creating units.
+     * The control is compiled first if it is not compiled yet.
+     * @param probe probe registering the observed units
+     * @return gathered states, one bit per observed unit. The same array is returned by every read of the probe.
+     * @see Probe
+     */
+    public long[] readProbe(Probe probe){
+        return probe.read(this.requireEngine());
+    }
+
+    /**
+     * Method that gathers the current states of the units observed by a probe into a bit set.
+     * The control is compiled first if it is not compiled yet.
+     * @param probe probe registering the observed units
+     * @param target receives the states, one bit per observed unit
+     */
+    public void readProbe(Probe probe, BitSet target){
+        probe.read(this.requireEngine(), target);
+    }
+
+    /**
+     * Method that begins a transaction on the compiled engine. Edges reversed, unit states set and pulses made
+     * until the commit or rollback are logged as packed words, so that a mutation can be tried and evaluated
+     * in place and then reverted without copying the machine.
+     * The control is compiled first if it is not compiled yet.
+     * @throws IllegalStateException A transaction is already open.
+     * @see CompiledEngine#begin()
+     */
+    public void begin(){
+        this.requireEngine().begin();
+    }
+
+    /**
+     * Method that keeps the changes of the current transaction.
+     * @throws IllegalStateException There is no open transaction.
+     */
+    public void commit(){
+        this.requireEngine().commit();
+    }
+
+    /**
+     * Method that reverts units and edges to the beginning of the current transaction.
+     * Units and edges changed through the getters during the transaction are reverted as well.
+     * @throws IllegalStateException There is no open transaction.
+     */
+    public void rollback(){
+        this.requireEngine().rollback();
+    }
+
+    /**
+     * Compile the control if it is not compiled yet, and reload units and edges handed out by getters.
+     */
+    private CompiledEngine requireEngine(){
+        if (this.engine == null) {
+            this.compile();
+        }
+        this.syncEngine();
+        return this.engine;
     }
 
     /**
      * Method that initializes all units with initial unit states.
      */
     public void initUnitStates(){
+        if (this.engine != null && this.initialStateWords != null) {
+            this.engine.setStates(this.initialStateWords);
+            this.unitsExposed = false;
+            return;
+        }
+        if (this.engine != null) {
+            this.initialUnitStates.forEach(this.engine::setState);
+            this.unitsExposed = false;
+            return;
+        }
         this.initialUnitStates.forEach((id, state) -> this.unitMap.get(id).setCurrentState(state));
     }
 
@@ -75,18 +498,82 @@ public class Control {
      * @return new control object
      */
     public static Control copy(Control originalControl){
+        long start = originalControl.metrics == null ? 0L : System.nanoTime();
         Control newControl = new Control();
         originalControl.getDataMappers().forEach(newControl::addMapper);
         newControl.unitMap = new HashMap<>();
-        originalControl.unitMap.forEach((id, unit)-> newControl.unitMap.put(id, Unit.copy(unit)));
+        originalControl.getUnitMap().forEach((id, unit)-> newControl.unitMap.put(id, Unit.copy(unit)));
         newControl.edgeMap = new HashMap<>();
-        originalControl.edgeMap.forEach((id, edge)-> newControl.edgeMap.put(id, Edge.builder()
+        originalControl.getEdgeMap().forEach((id, edge)-> newControl.edgeMap.put(id, Edge.builder()
                 .id(id)
                 .tailUnit(newControl.unitMap.get(edge.getTailUnit().getId()))
                 .headUnit(newControl.unitMap.get(edge.getHeadUnit().getId()))
                 .stateDeliver(StateDeliver.copy(edge.getStateDeliver()))
                 .build()));
 
+        if (originalControl.metrics != null) {
+            originalControl.metrics.recordCopy(System.nanoTime() - start);
+        }
+        return newControl;
+    }
+
+    /**
+     * Copy method that shares the connectivity of the original control with the new one.
+     * The original control is compiled if it is not compiled yet, and the new control gets a copy of the engine
+     * that clones states and deliver rules only when either control changes them.
+     * Units and edges of the new control are created only when they are requested.
+     * @param originalControl original control object
+     * @return new compiled control object
+     * @see CompiledEngine#copy()
+     */
+    public static Control sharedCopy(Control originalControl){
+        long start = originalControl.metrics == null ? 0L : System.nanoTime();
+        if (originalControl.engine == null) {
+            originalControl.compile();
+        }
+        originalControl.syncEngine();
+        Control newControl = new Control();
+        originalControl.getDataMappers().forEach(newControl::addMapper);
+        if (originalControl.unitMap != null) {
+            newControl.templateUnitMap = originalControl.unitMap;
+            newControl.templateEdgeMap = originalControl.edgeMap;
+        } else {
+            newControl.templateUnitMap = originalControl.templateUnitMap;
+            newControl.templateEdgeMap = originalControl.templateEdgeMap;
+        }
+        newControl.engine = originalControl.engine.copy();
+        if (originalControl.metrics != null) {
+            originalControl.metrics.recordCopy(System.nanoTime() - start);
+        }
         return newControl;
     }
+
+    /**
+     * Create units and edges of a shared copy from the templates and the states of the engine,
+     * or from the engine alone if the layout was read straight into the engine.
+     */
+    private void materialize(){
+        if (this.unitMap != null || this.engine == null) {
+            return;
+        }
+        if (this.templateUnitMap == null) {
+            this.unitMap = this.engine.createUnitMap();
+            this.edgeMap = this.engine.createEdgeMap(this.unitMap);
+            return;
+        }
+        Map<Long, Unit> newUnitMap = new HashMap<>();
+        this.templateUnitMap.forEach((id, unit) -> newUnitMap.put(id, Unit.copy(unit)));
+        Map<Long, Edge> newEdgeMap = new HashMap<>();
+        this.templateEdgeMap.forEach((id, edge) -> newEdgeMap.put(id, Edge.builder()
+                .id(id)
+                .tailUnit(edge.getTailUnit() == null ? null : newUnitMap.get(edge.getTailUnit().getId()))
+                .headUnit(edge.getHeadUnit() == null ? null : newUnitMap.get(edge.getHeadUnit().getId()))
+                .stateDeliver(StateDeliver.copy(edge.getStateDeliver()))
+                .build()));
+        this.engine.writeInversions(newEdgeMap);
+        this.unitMap = newUnitMap;
+        this.edgeMap = newEdgeMap;
+        this.templateUnitMap = null;
+        this.templateEdgeMap = null;
+    }
 }
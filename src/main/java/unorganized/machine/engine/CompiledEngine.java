@@ -0,0 +1,956 @@
+package unorganized.machine.engine;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import unorganized.machine.calculator.ATypeCalculator;
+import unorganized.machine.deliver.StateDeliver;
+import unorganized.machine.edges.Edge;
+import unorganized.machine.metric.MachineMetrics;
+import unorganized.machine.units.Unit;
+
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.random.RandomGenerator;
+
+/**
+ * Simulation engine that runs a machine over bit-packed states instead of Unit and Edge objects.
+ * Unit states are held one bit per unit in long words, and the inversion of every input slot is held
+ * in the same way. A pulse reads the current words and writes the next words, so it allocates nothing
+ * and gives the same result as delivering every edge and calculating every unit.
+ * @author altair823
+ * @see Topology
+ */
+@Getter
+public class CompiledEngine {
+
+    /**
+     * Constructor of the vector kernel, or null if the module or the kernel classes are not available.
+     */
+    private static final Constructor<?> VECTOR_KERNEL = findVectorKernel();
+
+    /**
+     * Connectivity of the machine.
+     */
+    private final Topology topology;
+
+    /**
+     * Current unit states. Bit {@code index} is the state of the unit with that index.
+     * The words may be shared with copies of the engine, so callers must not change them.
+     */
+    private long[] states;
+
+    /**
+     * Buffer that receives the states of the next pulse.
+     */
+    @Getter(AccessLevel.NONE)
+    private long[] nextStates;
+
+    /**
+     * Inversion flags of input slots. A set bit means the edge of the slot delivers the reversed state.
+     * The words may be shared with copies of the engine, so callers must not change them.
+     */
+    private long[] inversions;
+
+    /**
+     * Whether arrays are shared with copies of the engine and must be cloned before they are changed.
+     */
+    @Getter(AccessLevel.NONE)
+    private boolean statesShared;
+    @Getter(AccessLevel.NONE)
+    private boolean nextStatesShared;
+    @Getter(AccessLevel.NONE)
+    private boolean inversionsShared;
+
+    /**
+     * Number of pulses made by the engine.
+     */
+    private long pulseCount;
+
+    /**
+     * Runner of parallel pulses. Null when pulses run on the calling thread.
+     */
+    @Getter(AccessLevel.NONE)
+    private ParallelPulse parallelPulse;
+
+    /**
+     * Vector kernel calculating the NAND gates. Null when pulses run on scalar code.
+     */
+    @Getter(AccessLevel.NONE)
+    private VectorKernel vectorPulse;
+
+    /**
+     * Incremental runner calculating only the units whose inputs changed. Null when every pulse is a full sweep.
+     */
+    @Getter(AccessLevel.NONE)
+    private DeltaPulse deltaPulse;
+
+    /**
+     * Log of the words changed in the current transaction. Null when there is no transaction.
+     */
+    @Getter(AccessLevel.NONE)
+    private UndoLog undoLog;
+
+    /**
+     * Metrics recording every pulse. Null when the engine is not measured.
+     */
+    private MachineMetrics metrics;
+
+    /**
+     * Driver clamping the input units to the frames of an input source. Null when no unit is driven.
+     */
+    private InputDriver inputDriver;
+
+    CompiledEngine(Topology topology, long[] states, long[] inversions) {
+        this.topology = topology;
+        this.states = states;
+        this.nextStates = new long[states.length];
+        this.inversions = inversions;
+    }
+
+    /**
+     * Compile units and edges of a loaded machine into a new engine.
+     * @param unitMap units of the machine
+     * @param edgeMap edges of the machine
+     * @return new engine holding the current states and deliver rules
+     */
+    public static CompiledEngine compile(Map<Long, Unit> unitMap, Map<Long, Edge> edgeMap) {
+        Topology topology = Topology.of(unitMap, edgeMap);
+        CompiledEngine engine = new CompiledEngine(topology,
+                new long[topology.getWordCount()],
+                new long[Topology.wordsFor(topology.getUnitCount() << 1)]);
+        engine.readStates(unitMap);
+        engine.readInversions(edgeMap);
+        return engine;
+    }
+
+    /**
+     * Create an engine over a topology with given states and no reversed edges.
+     * @param topology connectivity of the machine
+     * @param states unit states, one bit per unit index
+     * @return new engine
+     */
+    public static CompiledEngine of(Topology topology, long[] states) {
+        if (states.length != topology.getWordCount()) {
+            throw new IllegalArgumentException("Number of state words does not match the topology.");
+        }
+        return new CompiledEngine(topology, states, new long[Topology.wordsFor(topology.getUnitCount() << 1)]);
+    }
+
+    /**
+     * Create an engine over a topology with given states and edge inversions.
+     * @param topology connectivity of the machine
+     * @param states unit states, one bit per unit index
+     * @param inversions edge inversions, one bit per input slot
+     * @return new engine
+     */
+    public static CompiledEngine of(Topology topology, long[] states, long[] inversions) {
+        if (inversions.length != Topology.wordsFor(topology.getUnitCount() << 1)) {
+            throw new IllegalArgumentException("Number of inversion words does not match the topology.");
+        }
+        if (states.length != topology.getWordCount()) {
+            throw new IllegalArgumentException("Number of state words does not match the topology.");
+        }
+        return new CompiledEngine(topology, states, inversions);
+    }
+
+    /**
+     * Create units and edges of the machine from the topology, the states and the edge inversions.
+     * Custom units keep their own state calculator, and all other units use the type A calculator.
+     * @return Map of new units
+     */
+    public Map<Long, Unit> createUnitMap() {
+        Map<Long, Unit> unitMap = new HashMap<>();
+        long[] unitIds = this.topology.getUnitIds();
+        for (int index = 0; index < unitIds.length; index++) {
+            unitMap.put(unitIds[index], Unit.builder()
+                    .id(unitIds[index])
+                    .currentState((this.states[index >>> 6] & (1L << index)) != 0)
+                    .stateCalculator(this.topology.calculator(index) != null
+                            ? this.topology.calculator(index) : new ATypeCalculator())
+                    .build());
+        }
+        return unitMap;
+    }
+
+    /**
+     * Create edges of the machine connecting given units.
+     * @param unitMap units created by {@link #createUnitMap()}
+     * @return Map of new edges
+     */
+    public Map<Long, Edge> createEdgeMap(Map<Long, Unit> unitMap) {
+        Map<Long, Edge> edgeMap = new HashMap<>();
+        long[] unitIds = this.topology.getUnitIds();
+        long[] slotEdgeIds = this.topology.getSlotEdgeIds();
+        for (int slot = 0; slot < slotEdgeIds.length; slot++) {
+            if (this.topology.isWired(slot >>> 1)) {
+                StateDeliver stateDeliver = new StateDeliver();
+                if ((this.inversions[slot >>> 6] & (1L << slot)) != 0) {
+                    stateDeliver.reverse();
+                }
+                edgeMap.put(slotEdgeIds[slot], Edge.builder()
+                        .id(slotEdgeIds[slot])
+                        .tailUnit(unitMap.get(unitIds[this.topology.input(slot)]))
+                        .headUnit(unitMap.get(unitIds[slot >>> 1]))
+                        .stateDeliver(stateDeliver)
+                        .build());
+            }
+        }
+        return edgeMap;
+    }
+
+    /**
+     * Make a pulse to all units. If input units are driven, they take the next frame of their source,
+     * or keep their last driven states if the source has ended.
+     */
+    public void pulse() {
+        if (this.inputDriver != null) {
+            this.drive();
+        }
+        this.makePulse();
+    }
+
+    /**
+     * Make a pulse with the next input frame, unless the input source has ended.
+     * @return false if the input source has ended, in which case no pulse is made
+     */
+    private boolean pulseDriven() {
+        if (this.inputDriver != null && !this.drive()) {
+            return false;
+        }
+        this.makePulse();
+        return true;
+    }
+
+    /**
+     * Read the next input frame and schedule the words of the input units it changes for an incremental pulse.
+     * @return false if the input source has ended
+     */
+    private boolean drive() {
+        if (!this.inputDriver.advance()) {
+            return false;
+        }
+        if (this.deltaPulse != null) {
+            for (int word : this.inputDriver.getWords()) {
+                if (this.inputDriver.changes(word, this.states)) {
+                    this.deltaPulse.schedule(word);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calculate the next states of all units, incrementally if possible, and swap the state buffers.
+     */
+    private void makePulse() {
+        long start = this.metrics == null ? 0L : System.nanoTime();
+        boolean sweep = false;
+        if (this.nextStatesShared) {
+            this.nextStates = new long[this.states.length];
+            this.nextStatesShared = false;
+            if (this.deltaPulse != null) {
+                this.deltaPulse.invalidate();
+            }
+        }
+        if (this.undoLog != null) {
+            this.undoLog.saveStates(this.states);
+        }
+        if (this.deltaPulse == null || !this.deltaPulse.pulse(this.states, this.nextStates)) {
+            step(this.states, this.nextStates);
+            sweep = true;
+            if (this.deltaPulse != null) {
+                this.deltaPulse.sweep(this.states, this.nextStates);
+            }
+        }
+        swap();
+        this.pulseCount++;
+        if (this.metrics != null) {
+            this.recordPulse(System.nanoTime() - start, sweep);
+        }
+    }
+
+    /**
+     * Record a pulse into the metrics, counting the changed units from the states before and after the pulse.
+     * After an incremental pulse only the calculated words are compared, as no other word can change.
+     */
+    private void recordPulse(long nanos, boolean sweep) {
+        if (!sweep) {
+            this.metrics.recordPulse(this.deltaPulse.flippedUnits(this.states, this.nextStates),
+                    this.deltaPulse.deliveredEdges(this.topology.getWiredUnits()), nanos);
+            return;
+        }
+        long flippedUnits = 0;
+        for (int word = 0; word < this.states.length; word++) {
+            flippedUnits += Long.bitCount(this.states[word] ^ this.nextStates[word]);
+        }
+        this.metrics.recordPulse(flippedUnits, this.topology.getEdgeCount(), nanos);
+    }
+
+    /**
+     * Set the metrics recording every pulse of the engine. Copies of the engine are not measured.
+     * @param metrics metrics to record into, or null to stop measuring
+     */
+    public void setMetrics(MachineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Set the driver clamping input units to the frames of an input source on every pulse.
+     * Copies of the engine are not driven, and frames read in a transaction are not returned by a rollback.
+     * @param inputDriver driver of the input units, or null to stop driving them
+     * @throws IllegalArgumentException An input unit does not exist in the engine.
+     */
+    public void setInputDriver(InputDriver inputDriver) {
+        if (inputDriver != null) {
+            inputDriver.bind(this.topology, this.states);
+        }
+        // Units released from the old driver calculate their own states again, which is not tracked.
+        if (this.deltaPulse != null && this.inputDriver != null) {
+            this.deltaPulse.invalidate();
+        }
+        this.inputDriver = inputDriver;
+    }
+
+    /**
+     * Make pulses in a batch without returning to the caller between pulses.
+     * If input units are driven, the run also ends when their source ends, so a whole input tape
+     * is consumed by a single run.
+     * @param pulses maximum number of pulses
+     * @param stopCondition condition that ends the run early
+     * @return number of executed pulses, and the cycle found if the run stopped early
+     * @throws IllegalStateException Cycles are looked for while input units are driven.
+     */
+    public RunResult run(long pulses, StopCondition stopCondition) {
+        if (pulses < 0) {
+            throw new IllegalArgumentException("Number of pulses must not be negative.");
+        }
+        switch (stopCondition) {
+            case FIXED_POINT:
+                for (long step = 1; step <= pulses; step++) {
+                    if (!pulseDriven()) {
+                        return new RunResult(step - 1, -1, 0);
+                    }
+                    // After the swap, the next state buffer holds the states before the pulse.
+                    if (Arrays.equals(this.states, this.nextStates)) {
+                        return new RunResult(step, step - 1, 1);
+                    }
+                }
+                return new RunResult(pulses, -1, 0);
+            case CYCLE:
+                if (this.inputDriver != null) {
+                    throw new IllegalStateException("Cycles cannot be found while input units are driven.");
+                }
+                return runUntilCycle(pulses);
+            default:
+                for (long step = 0; step < pulses; step++) {
+                    if (!pulseDriven()) {
+                        return new RunResult(step, -1, 0);
+                    }
+                }
+                return new RunResult(pulses, -1, 0);
+        }
+    }
+
+    /**
+     * Make pulses until the states repeat, using Brent's cycle detection.
+     * The engine states play the hare, and the tortoise is a saved copy at every power of two.
+     */
+    private RunResult runUntilCycle(long pulses) {
+        long[] start = this.states.clone();
+        long[] tortoise = this.states.clone();
+        long power = 1;
+        long period = 0;
+        long step = 0;
+        while (step < pulses) {
+            pulse();
+            step++;
+            period++;
+            if (Arrays.equals(this.states, tortoise)) {
+                return new RunResult(step, findCycleStart(start, period), period);
+            }
+            if (period == power) {
+                System.arraycopy(this.states, 0, tortoise, 0, tortoise.length);
+                power <<= 1;
+                period = 0;
+            }
+        }
+        return new RunResult(step, -1, 0);
+    }
+
+    /**
+     * Find the first state on a cycle by replaying from the start with two cursors a period apart.
+     * The replay runs on scratch buffers and does not change the engine states.
+     */
+    private long findCycleStart(long[] start, long period) {
+        long[] tortoise = start;
+        long[] tortoiseNext = new long[start.length];
+        long[] hare = start.clone();
+        long[] hareNext = new long[start.length];
+        for (long i = 0; i < period; i++) {
+            step(hare, hareNext);
+            long[] temporary = hare;
+            hare = hareNext;
+            hareNext = temporary;
+        }
+        long cycleStart = 0;
+        while (!Arrays.equals(tortoise, hare)) {
+            step(tortoise, tortoiseNext);
+            step(hare, hareNext);
+            long[] temporary = tortoise;
+            tortoise = tortoiseNext;
+            tortoiseNext = temporary;
+            temporary = hare;
+            hare = hareNext;
+            hareNext = temporary;
+            cycleStart++;
+        }
+        return cycleStart;
+    }
+
+    /**
+     * Calculate the next states of all units, on the parallel runner if there is one.
+     */
+    private void step(long[] source, long[] target) {
+        if (this.parallelPulse != null) {
+            this.parallelPulse.compute(source, target);
+        } else {
+            compute(source, target, 0, this.topology.getWordCount());
+        }
+    }
+
+    /**
+     * Set the number of threads calculating a pulse.
+     * Units are split into ranges of whole state words, so the result is identical to the sequential pulse.
+     * @param parallelism number of threads, or 1 to run pulses on the calling thread
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        if (this.parallelPulse != null) {
+            this.parallelPulse.getPool().shutdown();
+            this.parallelPulse = null;
+        }
+        if (parallelism > 1) {
+            this.parallelPulse = new ParallelPulse(this::compute, this.topology.getWordCount(),
+                    new ForkJoinPool(parallelism), ParallelPulse.DEFAULT_CHUNK_WORDS);
+        }
+    }
+
+    /**
+     * Get the number of threads calculating a pulse.
+     * @return number of threads
+     */
+    public int getParallelism() {
+        return this.parallelPulse == null ? 1 : this.parallelPulse.getPool().getParallelism();
+    }
+
+    /**
+     * Set whether pulses only calculate the units whose inputs changed on the previous pulse.
+     * The result of a pulse is identical either way. A pulse is still a full sweep after the states or the edges
+     * are changed from outside, or when many units changed on the previous pulse.
+     * @param incremental true to track changed units between pulses
+     */
+    public void setIncremental(boolean incremental) {
+        if (!incremental) {
+            this.deltaPulse = null;
+        } else if (this.deltaPulse == null) {
+            this.deltaPulse = new DeltaPulse(this.topology, this::compute);
+        }
+    }
+
+    /**
+     * Check whether pulses only calculate the units whose inputs changed.
+     * @return true if changed units are tracked between pulses
+     */
+    public boolean isIncremental() {
+        return this.deltaPulse != null;
+    }
+
+    /**
+     * Get the incremental runner, for tests in the package.
+     */
+    DeltaPulse getDeltaPulse() {
+        return this.deltaPulse;
+    }
+
+    /**
+     * Check whether the jdk.incubator.vector module is available to the engine.
+     * The module is only resolved if the JVM is started with {@code --add-modules jdk.incubator.vector}.
+     * @return true if pulses can be vectorized
+     */
+    public static boolean isVectorAvailable() {
+        return VECTOR_KERNEL != null;
+    }
+
+    private static Constructor<?> findVectorKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return Class.forName("unorganized.machine.engine.VectorPulse").getDeclaredConstructor(Topology.class);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Set whether pulses calculate the NAND gates over vector lanes of the JDK Vector API.
+     * If the jdk.incubator.vector module is not available, pulses keep running on scalar code.
+     * The result of a pulse is identical either way.
+     * @param vectorized true to use the vector kernel when it is available
+     * @see #isVectorAvailable()
+     */
+    public void setVectorized(boolean vectorized) {
+        if (!vectorized || !isVectorAvailable()) {
+            this.vectorPulse = null;
+        } else if (this.vectorPulse == null) {
+            try {
+                this.vectorPulse = (VectorKernel) VECTOR_KERNEL.newInstance(this.topology);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Check whether pulses run on the vector kernel.
+     * @return true if the vector kernel is in use
+     */
+    public boolean isVectorized() {
+        return this.vectorPulse != null;
+    }
+
+    /**
+     * Calculate the next states of the units in a range of state words.
+     * @param source current states
+     * @param target words receiving the next states
+     * @param fromWord first word, inclusive
+     * @param toWord last word, exclusive
+     */
+    void compute(long[] source, long[] target, int fromWord, int toWord) {
+        int[] inputs = this.topology.getInputs();
+        long[] fixedUnits = this.topology.getFixedUnits();
+        long[] customUnits = this.topology.getCustomUnits();
+        long[] inversions = this.inversions;
+        InputDriver inputDriver = this.inputDriver;
+        int unitCount = this.topology.getUnitCount();
+        if (this.vectorPulse != null) {
+            this.vectorPulse.compute(source, target, inversions, fromWord, toWord);
+            for (int word = fromWord; word < toWord; word++) {
+                long next = target[word];
+                if (customUnits[word] != 0) {
+                    next = computeCustom(source, word, next, customUnits[word]);
+                }
+                long fixed = fixedUnits[word];
+                next = (next & ~fixed) | (source[word] & fixed);
+                target[word] = inputDriver == null ? next : inputDriver.clamp(word, next);
+            }
+            return;
+        }
+        for (int word = fromWord; word < toWord; word++) {
+            int base = word << 6;
+            int bits = Math.min(64, unitCount - base);
+            long next = 0L;
+            for (int bit = 0; bit < bits; bit++) {
+                int slot = (base + bit) << 1;
+                int first = inputs[slot];
+                int second = inputs[slot + 1];
+                long firstState = (source[first >>> 6] >>> first) ^ (inversions[slot >>> 6] >>> slot);
+                long secondState = (source[second >>> 6] >>> second) ^ (inversions[(slot + 1) >>> 6] >>> (slot + 1));
+                // NAND gate of the two delivered states.
+                next |= (~(firstState & secondState) & 1L) << bit;
+            }
+            if (customUnits[word] != 0) {
+                next = computeCustom(source, word, next, customUnits[word]);
+            }
+            long fixed = fixedUnits[word];
+            next = (next & ~fixed) | (source[word] & fixed);
+            target[word] = inputDriver == null ? next : inputDriver.clamp(word, next);
+        }
+    }
+
+    /**
+     * Replace the next states of custom units in a word with the results of their own state calculators.
+     */
+    private long computeCustom(long[] source, int word, long next, long custom) {
+        int[] inputs = this.topology.getInputs();
+        while (custom != 0) {
+            int index = (word << 6) + Long.numberOfTrailingZeros(custom);
+            custom &= custom - 1;
+            int slot = index << 1;
+            boolean first = (((source[inputs[slot] >>> 6] >>> inputs[slot])
+                    ^ (this.inversions[slot >>> 6] >>> slot)) & 1L) != 0;
+            boolean second = (((source[inputs[slot + 1] >>> 6] >>> inputs[slot + 1])
+                    ^ (this.inversions[(slot + 1) >>> 6] >>> (slot + 1))) & 1L) != 0;
+            if (this.topology.calculator(index).calculate(first, second)) {
+                next |= 1L << index;
+            } else {
+                next &= ~(1L << index);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Swap the current and next state buffers after the next states are calculated.
+     */
+    void swap() {
+        long[] temporary = this.states;
+        this.states = this.nextStates;
+        this.nextStates = temporary;
+        this.nextStatesShared = this.statesShared;
+        this.statesShared = false;
+    }
+
+    /**
+     * Create an engine running the same machine with unit indexes in another order.
+     * Unit IDs and edge IDs are kept, so states and edges are reached by the same IDs as in this engine.
+     * The new engine runs pulses on the calling thread with scalar code.
+     * @param unitOrder order of the unit indexes
+     * @return new engine over the reordered topology
+     */
+    public CompiledEngine reorder(UnitOrder unitOrder) {
+        int[] order = unitOrder.order(this.topology);
+        int unitCount = this.topology.getUnitCount();
+        long[] newStates = new long[this.states.length];
+        long[] newInversions = new long[this.inversions.length];
+        for (int index = 0; index < unitCount; index++) {
+            int old = order[index];
+            if ((this.states[old >>> 6] & (1L << old)) != 0) {
+                newStates[index >>> 6] |= 1L << index;
+            }
+            for (int k = 0; k < 2; k++) {
+                int oldSlot = (old << 1) + k;
+                int slot = (index << 1) + k;
+                if ((this.inversions[oldSlot >>> 6] & (1L << oldSlot)) != 0) {
+                    newInversions[slot >>> 6] |= 1L << slot;
+                }
+            }
+        }
+        CompiledEngine engine = new CompiledEngine(this.topology.reorder(order), newStates, newInversions);
+        engine.pulseCount = this.pulseCount;
+        return engine;
+    }
+
+    /**
+     * Copy the engine, sharing the topology with the original.
+     * States and edge inversions are shared as well until either engine changes them, and then cloned.
+     * The copy uses the vector kernel and incremental pulses if the original does,
+     * but always runs pulses on the calling thread, it does not join an open transaction,
+     * and its input units are not driven.
+     * @return new engine with the same states and edge inversions
+     */
+    public CompiledEngine copy() {
+        this.statesShared = true;
+        this.inversionsShared = true;
+        return new CompiledEngine(this);
+    }
+
+    /**
+     * Constructor for a copy that shares all arrays with the original.
+     */
+    private CompiledEngine(CompiledEngine original) {
+        this.topology = original.topology;
+        this.states = original.states;
+        this.nextStates = original.states;
+        this.inversions = original.inversions;
+        this.pulseCount = original.pulseCount;
+        this.vectorPulse = original.vectorPulse;
+        if (original.deltaPulse != null) {
+            this.deltaPulse = new DeltaPulse(original.deltaPulse, this::compute);
+        }
+        this.statesShared = true;
+        this.nextStatesShared = true;
+        this.inversionsShared = true;
+    }
+
+    /**
+     * Clone the states before changing them if they are shared with a copy.
+     * Changes from outside are not tracked, so the next incremental pulse is a full sweep.
+     */
+    private void ownStates() {
+        if (this.deltaPulse != null) {
+            this.deltaPulse.invalidate();
+        }
+        if (this.statesShared) {
+            this.states = this.states.clone();
+            this.statesShared = false;
+        }
+    }
+
+    /**
+     * Clone the edge inversions before changing them if they are shared with a copy.
+     * Changes from outside are not tracked, so the next incremental pulse is a full sweep.
+     */
+    private void ownInversions() {
+        if (this.deltaPulse != null) {
+            this.deltaPulse.invalidate();
+        }
+        if (this.inversionsShared) {
+            this.inversions = this.inversions.clone();
+            this.inversionsShared = false;
+        }
+    }
+
+    /**
+     * Get the current state of a unit.
+     * @param unitId unit ID
+     * @return current state
+     */
+    public boolean getState(long unitId) {
+        int index = requireIndex(unitId);
+        return (this.states[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Set the current state of a unit.
+     * @param unitId unit ID
+     * @param state new state
+     */
+    public void setState(long unitId, boolean state) {
+        int index = requireIndex(unitId);
+        ownStates();
+        if (this.undoLog != null) {
+            this.undoLog.recordState(this.states, index >>> 6);
+        }
+        if (state) {
+            this.states[index >>> 6] |= 1L << index;
+        } else {
+            this.states[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    /**
+     * Reverse the way an edge delivers state.
+     * @param edgeId edge ID
+     */
+    public void reverseEdge(long edgeId) {
+        int slot = requireSlot(edgeId);
+        ownInversions();
+        if (this.undoLog != null) {
+            this.undoLog.recordInversion(this.inversions, slot >>> 6);
+        }
+        this.inversions[slot >>> 6] ^= 1L << slot;
+    }
+
+    /**
+     * Reverse distinct edges drawn at random by an injected generator, so that runs can be reproduced
+     * and every thread can use its own generator.
+     * @param count number of edges to reverse
+     * @param random generator drawing the edges
+     * @return record of the reversed edges, which undoes the batch when reversed again
+     * @throws IllegalArgumentException The count is negative or larger than the number of edges.
+     * @see #reverseEdges(EdgeFlips)
+     */
+    public EdgeFlips reverseRandomEdges(int count, RandomGenerator random) {
+        EdgeFlips flips = new EdgeFlips(this.topology, count, random);
+        this.reverseEdges(flips);
+        return flips;
+    }
+
+    /**
+     * Reverse the edges of a batch again, which undoes the batch.
+     * @param flips record of reversed edges of this engine or of an engine sharing the topology
+     * @throws IllegalArgumentException The edges belong to another topology.
+     */
+    public void reverseEdges(EdgeFlips flips) {
+        int[] slots = flips.slotsOf(this.topology);
+        ownInversions();
+        for (int slot : slots) {
+            if (this.undoLog != null) {
+                this.undoLog.recordInversion(this.inversions, slot >>> 6);
+            }
+            this.inversions[slot >>> 6] ^= 1L << slot;
+        }
+    }
+
+    /**
+     * Check whether an edge delivers the reversed state.
+     * @param edgeId edge ID
+     * @return true if the state is reversed
+     */
+    public boolean isEdgeReversed(long edgeId) {
+        int slot = requireSlot(edgeId);
+        return (this.inversions[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Replace the current states of all units.
+     * @param words unit states, one bit per unit index
+     */
+    public void setStates(long[] words) {
+        if (words.length != this.topology.getWordCount()) {
+            throw new IllegalArgumentException("Number of state words does not match the topology.");
+        }
+        ownStates();
+        if (this.undoLog != null) {
+            this.undoLog.saveStates(this.states);
+        }
+        System.arraycopy(words, 0, this.states, 0, words.length);
+    }
+
+    /**
+     * Replace the inversion flags of all input slots.
+     * @param words edge inversions, one bit per input slot
+     */
+    public void setInversions(long[] words) {
+        if (words.length != this.inversions.length) {
+            throw new IllegalArgumentException("Number of inversion words does not match the topology.");
+        }
+        ownInversions();
+        if (this.undoLog != null) {
+            this.undoLog.saveInversions(this.inversions);
+        }
+        System.arraycopy(words, 0, this.inversions, 0, words.length);
+    }
+
+    /**
+     * Set the number of pulses made by the engine, for example when restoring a snapshot.
+     * @param pulseCount number of pulses
+     */
+    public void setPulseCount(long pulseCount) {
+        this.pulseCount = pulseCount;
+    }
+
+    /**
+     * Begin a transaction. Until it is committed or rolled back, the engine logs the old values of the state
+     * and inversion words it changes, so that a mutation can be tried and evaluated in place and then reverted.
+     * Single changes log one word each, and the first pulse or change of all words saves the whole array once.
+     * @throws IllegalStateException A transaction is already open.
+     */
+    public void begin() {
+        if (this.undoLog != null) {
+            throw new IllegalStateException("A transaction is already open.");
+        }
+        this.undoLog = new UndoLog(this.pulseCount);
+    }
+
+    /**
+     * Keep the changes of the current transaction and drop its log.
+     * @throws IllegalStateException There is no open transaction.
+     */
+    public void commit() {
+        requireTransaction();
+        this.undoLog = null;
+    }
+
+    /**
+     * Restore the states, edge inversions and number of pulses of the beginning of the current transaction.
+     * @throws IllegalStateException There is no open transaction.
+     */
+    public void rollback() {
+        requireTransaction();
+        ownStates();
+        ownInversions();
+        this.undoLog.restore(this.states, this.inversions);
+        this.pulseCount = this.undoLog.getPulseCount();
+        this.undoLog = null;
+    }
+
+    /**
+     * Check whether a transaction is open.
+     * @return true between {@link #begin()} and its commit or rollback
+     */
+    public boolean isInTransaction() {
+        return this.undoLog != null;
+    }
+
+    /**
+     * Get the number of single word changes logged in the current transaction, for tests and instrumentation.
+     */
+    int getUndoLogSize() {
+        return this.undoLog == null ? 0 : this.undoLog.size();
+    }
+
+    private void requireTransaction() {
+        if (this.undoLog == null) {
+            throw new IllegalStateException("There is no open transaction.");
+        }
+    }
+
+    /**
+     * Load the current states of units into the engine.
+     * @param unitMap units of the machine
+     */
+    public void readStates(Map<Long, Unit> unitMap) {
+        ownStates();
+        if (this.undoLog != null) {
+            this.undoLog.saveStates(this.states);
+        }
+        long[] unitIds = this.topology.getUnitIds();
+        for (int index = 0; index < unitIds.length; index++) {
+            if (unitMap.get(unitIds[index]).isCurrentState()) {
+                this.states[index >>> 6] |= 1L << index;
+            } else {
+                this.states[index >>> 6] &= ~(1L << index);
+            }
+        }
+    }
+
+    /**
+     * Store the current states of the engine into units.
+     * @param unitMap units of the machine
+     */
+    public void writeStates(Map<Long, Unit> unitMap) {
+        long[] unitIds = this.topology.getUnitIds();
+        for (int index = 0; index < unitIds.length; index++) {
+            unitMap.get(unitIds[index]).setCurrentState((this.states[index >>> 6] & (1L << index)) != 0);
+        }
+    }
+
+    /**
+     * Load the deliver rules of edges into the engine.
+     * @param edgeMap edges of the machine
+     */
+    public void readInversions(Map<Long, Edge> edgeMap) {
+        ownInversions();
+        if (this.undoLog != null) {
+            this.undoLog.saveInversions(this.inversions);
+        }
+        long[] slotEdgeIds = this.topology.getSlotEdgeIds();
+        for (int slot = 0; slot < slotEdgeIds.length; slot++) {
+            if (this.topology.isWired(slot >>> 1) && !edgeMap.get(slotEdgeIds[slot]).getStateDeliver().isDeliverWay()) {
+                this.inversions[slot >>> 6] |= 1L << slot;
+            } else {
+                this.inversions[slot >>> 6] &= ~(1L << slot);
+            }
+        }
+    }
+
+    /**
+     * Store the edge inversions of the engine into the deliver rules of edges.
+     * @param edgeMap edges of the machine
+     */
+    public void writeInversions(Map<Long, Edge> edgeMap) {
+        long[] slotEdgeIds = this.topology.getSlotEdgeIds();
+        for (int slot = 0; slot < slotEdgeIds.length; slot++) {
+            if (this.topology.isWired(slot >>> 1)) {
+                Edge edge = edgeMap.get(slotEdgeIds[slot]);
+                boolean reversed = (this.inversions[slot >>> 6] & (1L << slot)) != 0;
+                if (edge.getStateDeliver().isDeliverWay() == reversed) {
+                    edge.reverseDeliverRule();
+                }
+            }
+        }
+    }
+
+    private int requireIndex(long unitId) {
+        int index = this.topology.indexOf(unitId);
+        if (index < 0) {
+            throw new IllegalArgumentException("There is no unit " + unitId + ".");
+        }
+        return index;
+    }
+
+    private int requireSlot(long edgeId) {
+        int slot = this.topology.slotOf(edgeId);
+        if (slot < 0) {
+            throw new IllegalArgumentException("There is no edge " + edgeId + ".");
+        }
+        return slot;
+    }
+}
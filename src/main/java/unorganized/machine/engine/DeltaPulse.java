@@ -0,0 +1,255 @@
+package unorganized.machine.engine;
+
+import java.util.Arrays;
+
+/**
+ * Incremental pulse runner that only calculates the state words whose units may change.
+ * A unit can only change on a pulse if one of its input units changed on the previous pulse,
+ * so the head units of every changed unit are scheduled through the reverse adjacency of the topology.
+ * All other units keep their states, which gives exactly the same result as a full pulse.
+ * Units are scheduled by whole state words, and a full sweep is requested when too many words are scheduled
+ * or when the tracking is lost by an external change of states or edges.
+ * @author altair823
+ * @see CompiledEngine#setIncremental(boolean)
+ */
+class DeltaPulse {
+
+    /**
+     * A full sweep is made when more than this fraction of the state words is scheduled.
+     */
+    static final int FULL_SWEEP_DIVISOR = 4;
+
+    private final ParallelPulse.RangeKernel kernel;
+
+    /**
+     * Head units of the edges going out of each unit, in compressed rows.
+     */
+    private final int[] headOffsets;
+    private final int[] heads;
+
+    /**
+     * Maximum number of scheduled words before a full sweep is requested instead.
+     */
+    private final int limit;
+
+    /**
+     * Words changed by the last pulse. The target buffer of the next pulse is behind the source in these words only.
+     */
+    private final int[] changedWords;
+    private int changedCount;
+
+    /**
+     * Words scheduled for the next pulse, with one flag bit per word.
+     */
+    private int[] dirtyWords;
+    private int dirtyCount;
+    private int[] nextDirtyWords;
+    private final long[] dirtyFlags;
+
+    /**
+     * Number of words calculated by the last incremental pulse, which are kept at the head of the next dirty words
+     * until the next pulse.
+     */
+    private int computedCount;
+
+    /**
+     * Whether the changed and scheduled words describe the current buffers.
+     */
+    private boolean tracking;
+
+    /**
+     * Number of pulses calculated as a full sweep, for tests and instrumentation.
+     */
+    private long fullSweeps;
+
+    /**
+     * Constructor that builds the reverse adjacency of a topology.
+     * @param topology connectivity of the machine
+     * @param kernel calculation of a range of state words
+     */
+    DeltaPulse(Topology topology, ParallelPulse.RangeKernel kernel) {
+        int unitCount = topology.getUnitCount();
+        int[] inputs = topology.getInputs();
+        this.kernel = kernel;
+        this.headOffsets = new int[unitCount + 1];
+        for (int slot = 0; slot < unitCount << 1; slot++) {
+            if (topology.isWired(slot >>> 1)) {
+                this.headOffsets[inputs[slot] + 1]++;
+            }
+        }
+        for (int index = 0; index < unitCount; index++) {
+            this.headOffsets[index + 1] += this.headOffsets[index];
+        }
+        this.heads = new int[this.headOffsets[unitCount]];
+        int[] next = Arrays.copyOf(this.headOffsets, unitCount);
+        for (int slot = 0; slot < unitCount << 1; slot++) {
+            if (topology.isWired(slot >>> 1)) {
+                this.heads[next[inputs[slot]]++] = slot >>> 1;
+            }
+        }
+        this.limit = topology.getWordCount() / FULL_SWEEP_DIVISOR;
+        this.changedWords = new int[topology.getWordCount()];
+        this.dirtyWords = new int[topology.getWordCount()];
+        this.nextDirtyWords = new int[topology.getWordCount()];
+        this.dirtyFlags = new long[Topology.wordsFor(topology.getWordCount())];
+    }
+
+    /**
+     * Constructor for a copy of an engine, sharing the reverse adjacency and starting with a full sweep.
+     * @param original runner of the original engine
+     * @param kernel calculation of a range of state words of the copy
+     */
+    DeltaPulse(DeltaPulse original, ParallelPulse.RangeKernel kernel) {
+        this.kernel = kernel;
+        this.headOffsets = original.headOffsets;
+        this.heads = original.heads;
+        this.limit = original.limit;
+        this.changedWords = new int[original.changedWords.length];
+        this.dirtyWords = new int[original.dirtyWords.length];
+        this.nextDirtyWords = new int[original.nextDirtyWords.length];
+        this.dirtyFlags = new long[original.dirtyFlags.length];
+    }
+
+    /**
+     * Stop tracking changes, so that the next pulse is a full sweep.
+     */
+    void invalidate() {
+        this.tracking = false;
+    }
+
+    /**
+     * Calculate the next states from the words scheduled by the previous pulse.
+     * @param source current states
+     * @param target states before the current states, which receive the next states
+     * @return false if a full sweep is needed instead, in which case nothing is changed
+     */
+    boolean pulse(long[] source, long[] target) {
+        if (!this.tracking) {
+            return false;
+        }
+        for (int i = 0; i < this.changedCount; i++) {
+            int word = this.changedWords[i];
+            target[word] = source[word];
+        }
+        for (int i = 0; i < this.dirtyCount; i++) {
+            int word = this.dirtyWords[i];
+            this.kernel.compute(source, target, word, word + 1);
+        }
+        for (int i = 0; i < this.dirtyCount; i++) {
+            int word = this.dirtyWords[i];
+            this.dirtyFlags[word >>> 6] &= ~(1L << word);
+        }
+        int[] words = this.dirtyWords;
+        int count = this.dirtyCount;
+        this.dirtyWords = this.nextDirtyWords;
+        this.nextDirtyWords = words;
+        this.dirtyCount = 0;
+        this.changedCount = 0;
+        this.computedCount = count;
+        for (int i = 0; i < count && this.tracking; i++) {
+            int word = words[i];
+            this.track(word, target[word] ^ source[word]);
+        }
+        return true;
+    }
+
+    /**
+     * Start tracking changes after a full sweep.
+     * @param source states before the sweep
+     * @param target states calculated by the sweep
+     */
+    void sweep(long[] source, long[] target) {
+        this.fullSweeps++;
+        Arrays.fill(this.dirtyFlags, 0L);
+        this.dirtyCount = 0;
+        this.changedCount = 0;
+        this.tracking = true;
+        for (int word = 0; word < source.length && this.tracking; word++) {
+            this.track(word, target[word] ^ source[word]);
+        }
+    }
+
+    /**
+     * Schedule a word for the next pulse because its units change from outside, such as driven input units.
+     * Tracking stops if too many words are scheduled.
+     * @param word state word index
+     */
+    void schedule(int word) {
+        if (!this.tracking || (this.dirtyFlags[word >>> 6] & (1L << word)) != 0) {
+            return;
+        }
+        if (this.dirtyCount == this.limit) {
+            this.tracking = false;
+            return;
+        }
+        this.dirtyFlags[word >>> 6] |= 1L << word;
+        this.dirtyWords[this.dirtyCount++] = word;
+    }
+
+    /**
+     * Record the changed units of a word and schedule the words of their head units.
+     * Tracking stops if too many words are scheduled.
+     */
+    private void track(int word, long changed) {
+        if (changed == 0) {
+            return;
+        }
+        this.changedWords[this.changedCount++] = word;
+        while (changed != 0) {
+            int unit = (word << 6) + Long.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+            for (int i = this.headOffsets[unit]; i < this.headOffsets[unit + 1]; i++) {
+                int headWord = this.heads[i] >>> 6;
+                if ((this.dirtyFlags[headWord >>> 6] & (1L << headWord)) == 0) {
+                    if (this.dirtyCount == this.limit) {
+                        this.tracking = false;
+                        return;
+                    }
+                    this.dirtyFlags[headWord >>> 6] |= 1L << headWord;
+                    this.dirtyWords[this.dirtyCount++] = headWord;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of words scheduled for the next pulse.
+     * @return number of scheduled words, meaningful only while tracking
+     */
+    int getDirtyCount() {
+        return this.dirtyCount;
+    }
+
+    /**
+     * Count the edges delivering a state to the units calculated by the last incremental pulse.
+     * Every wired unit has two input edges.
+     * @param wiredUnits wired unit flags of the topology
+     * @return number of delivered edges
+     */
+    long deliveredEdges(long[] wiredUnits) {
+        long edges = 0;
+        for (int i = 0; i < this.computedCount; i++) {
+            edges += Long.bitCount(wiredUnits[this.nextDirtyWords[i]]) << 1;
+        }
+        return edges;
+    }
+
+    /**
+     * Count the units changed by the last incremental pulse in the words it calculated.
+     * @param states states calculated by the pulse
+     * @param previous states before the pulse
+     * @return number of changed units
+     */
+    long flippedUnits(long[] states, long[] previous) {
+        long flipped = 0;
+        for (int i = 0; i < this.computedCount; i++) {
+            int word = this.nextDirtyWords[i];
+            flipped += Long.bitCount(states[word] ^ previous[word]);
+        }
+        return flipped;
+    }
+
+    long getFullSweeps() {
+        return this.fullSweeps;
+    }
+}
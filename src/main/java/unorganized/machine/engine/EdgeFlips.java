@@ -0,0 +1,109 @@
+package unorganized.machine.engine;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Record of a batch of edges reversed at once. Reversing the same edges again undoes the batch,
+ * on the engine that made it or on any copy of it sharing the topology.
+ * @author altair823
+ * @see CompiledEngine#reverseRandomEdges(int, RandomGenerator)
+ * @see CompiledEngine#reverseEdges(EdgeFlips)
+ */
+@Getter
+public class EdgeFlips {
+
+    /**
+     * Topology the edges belong to.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Topology topology;
+
+    /**
+     * Input slots of the reversed edges, in the order they were drawn.
+     */
+    @Getter(AccessLevel.NONE)
+    private final int[] slots;
+
+    /**
+     * IDs of the reversed edges, in the order they were drawn.
+     */
+    private final long[] edgeIds;
+
+    /**
+     * Constructor that draws distinct edges of a topology.
+     * @param topology topology of the edges
+     * @param count number of edges
+     * @param random generator of the drawing
+     * @throws IllegalArgumentException The count is negative or larger than the number of edges.
+     */
+    EdgeFlips(Topology topology, int count, RandomGenerator random) {
+        int[] ranks = sample(topology.getEdgeCount(), count, random);
+        this.topology = topology;
+        this.slots = new int[count];
+        this.edgeIds = new long[count];
+        for (int i = 0; i < count; i++) {
+            this.slots[i] = topology.edgeSlot(ranks[i]);
+            this.edgeIds[i] = topology.edgeId(ranks[i]);
+        }
+    }
+
+    /**
+     * Get the number of reversed edges.
+     * @return number of edges
+     */
+    public int size() {
+        return this.slots.length;
+    }
+
+    /**
+     * Get the input slots of the reversed edges for an engine, checking that it has the same topology.
+     * @param topology topology of the engine
+     * @return input slots of the edges
+     */
+    int[] slotsOf(Topology topology) {
+        if (topology != this.topology) {
+            throw new IllegalArgumentException("Edges were drawn from another topology.");
+        }
+        return this.slots;
+    }
+
+    /**
+     * Draw distinct numbers below a bound with Floyd's algorithm, which needs exactly one random number per draw.
+     * Drawn numbers are kept in an open addressing table of twice the count.
+     * @param bound exclusive upper bound of the numbers
+     * @param count number of numbers
+     * @param random generator of the drawing
+     * @return distinct numbers in the order they were drawn
+     */
+    static int[] sample(int bound, int count, RandomGenerator random) {
+        if (count < 0 || count > bound) {
+            throw new IllegalArgumentException("Cannot draw " + count + " of " + bound + " edges.");
+        }
+        int[] drawn = new int[count];
+        int[] table = new int[Integer.highestOneBit(Math.max(1, count)) << 2];
+        int mask = table.length - 1;
+        int shift = Integer.numberOfLeadingZeros(mask);
+        for (int i = 0, bar = bound - count; i < count; i++, bar++) {
+            int number = random.nextInt(bar + 1);
+            // Numbers are stored plus one, so that zero marks an empty entry.
+            int position = (number * 0x9E3779B9) >>> shift;
+            while (table[position] != 0 && table[position] != number + 1) {
+                position = (position + 1) & mask;
+            }
+            if (table[position] != 0) {
+                // The number was drawn before, so the bar is taken instead. It cannot have been drawn yet.
+                number = bar;
+                position = (number * 0x9E3779B9) >>> shift;
+                while (table[position] != 0) {
+                    position = (position + 1) & mask;
+                }
+            }
+            table[position] = number + 1;
+            drawn[i] = number;
+        }
+        return drawn;
+    }
+}
@@ -0,0 +1,157 @@
+package unorganized.machine.engine;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Driver clamping the input units of an engine to the frames of an input source.
+ * Before every pulse of the engine the next frame is read, and the input units take the states of the frame
+ * on that pulse instead of calculating their own, so that the frame reaches their head units on the next pulse.
+ * When the source has ended, the input units keep their last driven states, and batch runs stop.
+ * A driver feeds a single engine and is not copied with it.
+ * @author altair823
+ * @see CompiledEngine#setInputDriver(InputDriver)
+ */
+@Getter
+public class InputDriver {
+
+    /**
+     * IDs of the input units, in the order of the bits of a frame.
+     */
+    private final long[] unitIds;
+
+    /**
+     * Source of the frames.
+     */
+    private final InputSource source;
+
+    /**
+     * Number of frames read from the source.
+     */
+    private long frameCount;
+
+    /**
+     * Whether the source has ended.
+     */
+    private boolean ended;
+
+    /**
+     * Unit indexes of the input units in the bound engine.
+     */
+    @Getter(AccessLevel.NONE)
+    private int[] indexes;
+
+    /**
+     * Input unit flags and driven states, one bit per unit index of the bound engine.
+     */
+    @Getter(AccessLevel.NONE)
+    private long[] mask;
+    @Getter(AccessLevel.NONE)
+    private long[] driven;
+
+    /**
+     * State words holding input units, in ascending order.
+     */
+    @Getter(AccessLevel.NONE)
+    private int[] words;
+
+    @Getter(AccessLevel.NONE)
+    private final long[] frame;
+
+    /**
+     * Constructor that registers the input units and their source.
+     * @param source source of the frames
+     * @param unitIds IDs of the input units
+     */
+    public InputDriver(InputSource source, long... unitIds) {
+        this.source = source;
+        this.unitIds = unitIds.clone();
+        this.frame = new long[Topology.wordsFor(unitIds.length)];
+    }
+
+    /**
+     * Resolve the input units for an engine. Until the first frame, the input units keep their current states.
+     * @param topology topology of the engine
+     * @param states current states of the engine
+     * @throws IllegalArgumentException An input unit does not exist in the engine.
+     */
+    void bind(Topology topology, long[] states) {
+        int[] indexes = new int[this.unitIds.length];
+        long[] mask = new long[topology.getWordCount()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = topology.indexOf(this.unitIds[i]);
+            if (indexes[i] < 0) {
+                throw new IllegalArgumentException("Input unit " + this.unitIds[i] + " does not exist.");
+            }
+            mask[indexes[i] >>> 6] |= 1L << indexes[i];
+        }
+        long[] driven = new long[mask.length];
+        int[] words = new int[mask.length];
+        int wordCount = 0;
+        for (int word = 0; word < mask.length; word++) {
+            if (mask[word] != 0) {
+                driven[word] = states[word] & mask[word];
+                words[wordCount++] = word;
+            }
+        }
+        this.indexes = indexes;
+        this.mask = mask;
+        this.driven = driven;
+        this.words = Arrays.copyOf(words, wordCount);
+    }
+
+    /**
+     * Read the next frame into the driven states.
+     * @return false if the source has ended, in which case the driven states are kept
+     */
+    boolean advance() {
+        if (this.ended) {
+            return false;
+        }
+        Arrays.fill(this.frame, 0L);
+        if (!this.source.next(this.frame)) {
+            this.ended = true;
+            return false;
+        }
+        for (int word : this.words) {
+            this.driven[word] = 0L;
+        }
+        for (int i = 0; i < this.indexes.length; i++) {
+            int index = this.indexes[i];
+            this.driven[index >>> 6] |= ((this.frame[i >>> 6] >>> i) & 1L) << index;
+        }
+        this.frameCount++;
+        return true;
+    }
+
+    /**
+     * Clamp the input units of a calculated state word to their driven states.
+     * @param word state word index
+     * @param next calculated states of the word
+     * @return states of the word with the input units driven
+     */
+    long clamp(int word, long next) {
+        long mask = this.mask[word];
+        return (next & ~mask) | (this.driven[word] & mask);
+    }
+
+    /**
+     * Get the state words holding input units.
+     * @return word indexes in ascending order
+     */
+    int[] getWords() {
+        return this.words;
+    }
+
+    /**
+     * Check whether the driven states of a word differ from the current states.
+     * @param word state word index
+     * @param states current states
+     * @return true if an input unit of the word changes on the next pulse
+     */
+    boolean changes(int word, long[] states) {
+        return ((this.driven[word] ^ states[word]) & this.mask[word]) != 0;
+    }
+}
@@ -0,0 +1,19 @@
+package unorganized.machine.engine;
+
+/**
+ * Stream of input frames driving the input units of an engine, one frame per pulse.
+ * Bit {@code i} of a frame is the driven state of the i-th input unit of the driver.
+ * A generator can be given as a lambda, and recorded inputs are given as an {@link InputTape}.
+ * @author altair823
+ * @see InputDriver
+ */
+@FunctionalInterface
+public interface InputSource {
+
+    /**
+     * Write the next frame of the stream.
+     * @param frame cleared words receiving the frame, one bit per input unit
+     * @return false if the stream has ended, in which case the frame is ignored
+     */
+    boolean next(long[] frame);
+}
@@ -0,0 +1,120 @@
+package unorganized.machine.engine;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Input frames recorded back to back in a packed bit array. Frame {@code f} takes the bits
+ * from {@code f * width} to {@code (f + 1) * width - 1}, where bit {@code b} is bit {@code b & 63}
+ * of word {@code b >>> 6}. The tape is read from its position, which moves one frame per read.
+ * @author altair823
+ * @see InputDriver
+ */
+@Getter
+public class InputTape implements InputSource {
+
+    /**
+     * Number of bits in a frame, which is the number of driven input units.
+     */
+    private final int width;
+
+    /**
+     * Number of frames on the tape.
+     */
+    private final long frameCount;
+
+    /**
+     * Index of the next frame to read.
+     */
+    private long position;
+
+    private final long[] bits;
+
+    /**
+     * Largest tape file, whose bytes fit in a single array.
+     */
+    static final int MAX_FILE_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * Constructor for a tape over packed frames. The words are not copied.
+     * @param width number of bits in a frame
+     * @param frameCount number of frames
+     * @param bits packed frames
+     * @throws IllegalArgumentException The width is not positive or the words are fewer than the frames.
+     */
+    public InputTape(int width, long frameCount, long[] bits) {
+        if (width < 1 || frameCount < 0 || (long) bits.length << 6 < width * frameCount) {
+            throw new IllegalArgumentException("Tape of " + frameCount + " frames of " + width
+                    + " bits does not fit in " + bits.length + " words.");
+        }
+        this.width = width;
+        this.frameCount = frameCount;
+        this.bits = bits;
+    }
+
+    /**
+     * Read a tape from a file of packed frames. Bit {@code b} of the tape is bit {@code b & 7}
+     * of byte {@code b >>> 3}, and bits after the last whole frame are ignored.
+     * @param file file holding the frames
+     * @param width number of bits in a frame
+     * @return new tape at its first frame
+     * @throws IOException The file cannot be read or is larger than a tape can hold.
+     */
+    public static InputTape read(Path file, int width) throws IOException {
+        if (Files.size(file) > MAX_FILE_SIZE) {
+            throw new FileSystemException(file.toString(), null, "Tape file is larger than "
+                    + MAX_FILE_SIZE + " bytes.");
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        long[] bits = new long[(int) (((long) bytes.length + 7) >>> 3)];
+        for (int i = 0; i < bytes.length; i++) {
+            bits[i >>> 3] |= (bytes[i] & 0xFFL) << ((i & 7) << 3);
+        }
+        return new InputTape(width, ((long) bytes.length << 3) / width, bits);
+    }
+
+    @Override
+    public boolean next(long[] frame) {
+        if (this.position == this.frameCount) {
+            return false;
+        }
+        long offset = this.position * this.width;
+        for (int word = 0; (word << 6) < this.width; word++) {
+            frame[word] = this.bitsAt(offset + ((long) word << 6), Math.min(64, this.width - (word << 6)));
+        }
+        this.position++;
+        return true;
+    }
+
+    /**
+     * Get up to 64 bits of the tape starting at any bit, which may span two words.
+     */
+    private long bitsAt(long offset, int count) {
+        int word = (int) (offset >>> 6);
+        int shift = (int) (offset & 63);
+        long value = this.bits[word] >>> shift;
+        if (shift != 0 && shift + count > 64) {
+            value |= this.bits[word + 1] << (64 - shift);
+        }
+        return count == 64 ? value : value & ((1L << count) - 1);
+    }
+
+    /**
+     * Get the number of frames left to read.
+     * @return number of frames after the position
+     */
+    public long remaining() {
+        return this.frameCount - this.position;
+    }
+
+    /**
+     * Move the position back to the first frame.
+     */
+    public void rewind() {
+        this.position = 0;
+    }
+}
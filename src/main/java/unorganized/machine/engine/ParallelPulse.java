@@ -0,0 +1,105 @@
+package unorganized.machine.engine;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pulse runner that calculates ranges of an engine on a fork join pool.
+ * Every range is written by one task only, so the result is identical to the sequential pulse.
+ * Tasks are created once and reinitialized on every pulse.
+ * @author altair823
+ * @see CompiledEngine
+ */
+class ParallelPulse {
+
+    /**
+     * Default number of state words in one range. 64 words hold 4096 units.
+     */
+    static final int DEFAULT_CHUNK_WORDS = 64;
+
+    /**
+     * Calculation of the next states in a range of an engine.
+     */
+    interface RangeKernel {
+        /**
+         * Calculate the next states of a range.
+         * @param source current states
+         * @param target buffer receiving the next states
+         * @param from start of the range, inclusive
+         * @param to end of the range, exclusive
+         */
+        void compute(long[] source, long[] target, int from, int to);
+    }
+
+    private final ForkJoinPool pool;
+    private final RangeTask[] tasks;
+    private final RootTask root = new RootTask();
+
+    /**
+     * Constructor that splits an engine into ranges.
+     * @param kernel calculation of a range
+     * @param size total size of all ranges
+     * @param pool pool running the ranges
+     * @param chunk size of one range
+     */
+    ParallelPulse(RangeKernel kernel, int size, ForkJoinPool pool, int chunk) {
+        if (chunk < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive.");
+        }
+        this.pool = pool;
+        this.tasks = new RangeTask[(size + chunk - 1) / chunk];
+        for (int i = 0; i < this.tasks.length; i++) {
+            this.tasks[i] = new RangeTask(kernel, i * chunk, Math.min(size, (i + 1) * chunk));
+        }
+    }
+
+    /**
+     * Calculate all ranges from the source words into the target words and wait for them.
+     * @param source current states
+     * @param target words receiving the next states
+     */
+    void compute(long[] source, long[] target) {
+        for (RangeTask task : this.tasks) {
+            task.source = source;
+            task.target = target;
+            task.reinitialize();
+        }
+        this.root.reinitialize();
+        this.pool.invoke(this.root);
+    }
+
+    ForkJoinPool getPool() {
+        return this.pool;
+    }
+
+    private class RootTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute() {
+            ForkJoinTask.invokeAll(tasks);
+        }
+    }
+
+    private static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RangeKernel kernel;
+        private final int from;
+        private final int to;
+        private long[] source;
+        private long[] target;
+
+        RangeTask(RangeKernel kernel, int from, int to) {
+            this.kernel = kernel;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            this.kernel.compute(this.source, this.target, this.from, this.to);
+        }
+    }
+}
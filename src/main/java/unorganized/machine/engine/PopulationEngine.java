@@ -0,0 +1,374 @@
+package unorganized.machine.engine;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import unorganized.machine.calculator.StateCalculator;
+import unorganized.machine.metric.MachineMetrics;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Engine that runs many variants of one machine at once.
+ * All variants share one topology and differ only in unit states and edge inversions.
+ * States and inversions are bit-sliced: bit {@code v} of a word belongs to variant {@code v}, so one NAND over a word
+ * advances 64 variants. The words of unit {@code index} are {@code index * blockCount} to
+ * {@code (index + 1) * blockCount - 1}, and the same layout is used for the inversion words of input slots.
+ * @author altair823
+ * @see Topology
+ */
+@Getter
+public class PopulationEngine {
+
+    /**
+     * Default number of units in one parallel range.
+     */
+    private static final int DEFAULT_CHUNK_UNITS = 1024;
+
+    /**
+     * Connectivity shared by all variants.
+     */
+    private final Topology topology;
+
+    /**
+     * Number of variants.
+     */
+    private final int variantCount;
+
+    /**
+     * Number of words per unit or input slot. Each word holds 64 variants.
+     */
+    private final int blockCount;
+
+    /**
+     * Bit-sliced unit states of all variants.
+     */
+    @Getter(AccessLevel.NONE)
+    private long[] states;
+
+    @Getter(AccessLevel.NONE)
+    private long[] nextStates;
+
+    /**
+     * Bit-sliced inversion flags of all input slots of all variants.
+     */
+    @Getter(AccessLevel.NONE)
+    private final long[] inversions;
+
+    /**
+     * Mask of the bits of the last block that belong to variants.
+     */
+    @Getter(AccessLevel.NONE)
+    private final long lastBlockMask;
+
+    /**
+     * Number of pulses made by the engine.
+     */
+    private long pulseCount;
+
+    @Getter(AccessLevel.NONE)
+    private ParallelPulse parallelPulse;
+
+    /**
+     * Metrics recording every pulse, counting units and edges of all variants. Null when the engine is not measured.
+     */
+    private MachineMetrics metrics;
+
+    /**
+     * Constructor that creates variants of a topology with all states false and no reversed edges.
+     * @param topology connectivity shared by all variants
+     * @param variantCount number of variants
+     */
+    public PopulationEngine(Topology topology, int variantCount) {
+        if (variantCount < 1) {
+            throw new IllegalArgumentException("Number of variants must be positive.");
+        }
+        this.topology = topology;
+        this.variantCount = variantCount;
+        this.blockCount = Topology.wordsFor(variantCount);
+        this.states = new long[topology.getUnitCount() * this.blockCount];
+        this.nextStates = new long[this.states.length];
+        this.inversions = new long[(topology.getUnitCount() << 1) * this.blockCount];
+        this.lastBlockMask = (variantCount & 63) == 0 ? -1L : (1L << variantCount) - 1;
+    }
+
+    /**
+     * Create variants that all start with the states and edge inversions of a compiled engine.
+     * @param engine base machine
+     * @param variantCount number of variants
+     * @return new population
+     */
+    public static PopulationEngine of(CompiledEngine engine, int variantCount) {
+        PopulationEngine population = new PopulationEngine(engine.getTopology(), variantCount);
+        for (int variant = 0; variant < variantCount; variant++) {
+            population.load(variant, engine);
+        }
+        return population;
+    }
+
+    /**
+     * Make a pulse to all units of all variants.
+     */
+    public void pulse() {
+        long start = this.metrics == null ? 0L : System.nanoTime();
+        if (this.parallelPulse != null) {
+            this.parallelPulse.compute(this.states, this.nextStates);
+        } else {
+            compute(this.states, this.nextStates, 0, this.topology.getUnitCount());
+        }
+        long[] temporary = this.states;
+        this.states = this.nextStates;
+        this.nextStates = temporary;
+        this.pulseCount++;
+        if (this.metrics != null) {
+            this.recordPulse(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Record a pulse into the metrics, counting the changed units of all variants.
+     */
+    private void recordPulse(long nanos) {
+        long flippedUnits = 0;
+        for (int word = 0; word < this.states.length; word++) {
+            long changed = this.states[word] ^ this.nextStates[word];
+            if (word % this.blockCount == this.blockCount - 1) {
+                changed &= this.lastBlockMask;
+            }
+            flippedUnits += Long.bitCount(changed);
+        }
+        this.metrics.recordPulse(flippedUnits, (long) this.topology.getEdgeCount() * this.variantCount, nanos);
+    }
+
+    /**
+     * Set the metrics recording every pulse of the engine.
+     * @param metrics metrics to record into, or null to stop measuring
+     */
+    public void setMetrics(MachineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Make a number of pulses to all variants.
+     * @param pulses number of pulses
+     */
+    public void run(long pulses) {
+        for (long step = 0; step < pulses; step++) {
+            pulse();
+        }
+    }
+
+    /**
+     * Calculate the next states of all variants for a range of units.
+     */
+    private void compute(long[] source, long[] target, int fromUnit, int toUnit) {
+        int[] inputs = this.topology.getInputs();
+        long[] fixedUnits = this.topology.getFixedUnits();
+        long[] customUnits = this.topology.getCustomUnits();
+        long[] inversions = this.inversions;
+        int blocks = this.blockCount;
+        for (int unit = fromUnit; unit < toUnit; unit++) {
+            int base = unit * blocks;
+            if ((fixedUnits[unit >>> 6] & (1L << unit)) != 0) {
+                System.arraycopy(source, base, target, base, blocks);
+                continue;
+            }
+            int slot = unit << 1;
+            int first = inputs[slot] * blocks;
+            int second = inputs[slot + 1] * blocks;
+            int firstInversion = slot * blocks;
+            int secondInversion = firstInversion + blocks;
+            if ((customUnits[unit >>> 6] & (1L << unit)) != 0) {
+                computeCustom(source, target, unit, first, second, firstInversion, secondInversion);
+                continue;
+            }
+            for (int block = 0; block < blocks; block++) {
+                // NAND gate of the two delivered states of 64 variants.
+                target[base + block] = ~((source[first + block] ^ inversions[firstInversion + block])
+                        & (source[second + block] ^ inversions[secondInversion + block]));
+            }
+            target[base + blocks - 1] &= this.lastBlockMask;
+        }
+    }
+
+    /**
+     * Calculate the next states of a custom unit of all variants with its own state calculator.
+     */
+    private void computeCustom(long[] source, long[] target, int unit, int first, int second,
+                               int firstInversion, int secondInversion) {
+        StateCalculator calculator = this.topology.calculator(unit);
+        int base = unit * this.blockCount;
+        for (int block = 0; block < this.blockCount; block++) {
+            long firstStates = source[first + block] ^ this.inversions[firstInversion + block];
+            long secondStates = source[second + block] ^ this.inversions[secondInversion + block];
+            long lanes = block == this.blockCount - 1 ? this.lastBlockMask : -1L;
+            long next = 0L;
+            for (int bit = 0; bit < 64 && (lanes >>> bit) != 0; bit++) {
+                if (calculator.calculate((firstStates >>> bit & 1L) != 0, (secondStates >>> bit & 1L) != 0)) {
+                    next |= 1L << bit;
+                }
+            }
+            target[base + block] = next;
+        }
+    }
+
+    /**
+     * Set the number of threads calculating a pulse.
+     * @param parallelism number of threads, or 1 to run pulses on the calling thread
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        if (this.parallelPulse != null) {
+            this.parallelPulse.getPool().shutdown();
+            this.parallelPulse = null;
+        }
+        if (parallelism > 1) {
+            this.parallelPulse = new ParallelPulse(this::compute, this.topology.getUnitCount(),
+                    new ForkJoinPool(parallelism), DEFAULT_CHUNK_UNITS);
+        }
+    }
+
+    /**
+     * Copy the states and edge inversions of a compiled engine into a variant.
+     * @param variant variant number
+     * @param engine engine sharing the topology of this population
+     */
+    public void load(int variant, CompiledEngine engine) {
+        if (engine.getTopology() != this.topology) {
+            throw new IllegalArgumentException("The engine does not share the topology of the population.");
+        }
+        checkVariant(variant);
+        long[] engineStates = engine.getStates();
+        for (int index = 0; index < this.topology.getUnitCount(); index++) {
+            setBit(this.states, index, variant, (engineStates[index >>> 6] & (1L << index)) != 0);
+        }
+        long[] engineInversions = engine.getInversions();
+        for (int slot = 0; slot < this.topology.getUnitCount() << 1; slot++) {
+            setBit(this.inversions, slot, variant, (engineInversions[slot >>> 6] & (1L << slot)) != 0);
+        }
+    }
+
+    /**
+     * Create a compiled engine holding the states and edge inversions of a variant.
+     * @param variant variant number
+     * @return new engine sharing the topology of this population
+     */
+    public CompiledEngine toEngine(int variant) {
+        checkVariant(variant);
+        long[] engineStates = new long[this.topology.getWordCount()];
+        for (int index = 0; index < this.topology.getUnitCount(); index++) {
+            if (getBit(this.states, index, variant)) {
+                engineStates[index >>> 6] |= 1L << index;
+            }
+        }
+        long[] engineInversions = new long[Topology.wordsFor(this.topology.getUnitCount() << 1)];
+        for (int slot = 0; slot < this.topology.getUnitCount() << 1; slot++) {
+            if (getBit(this.inversions, slot, variant)) {
+                engineInversions[slot >>> 6] |= 1L << slot;
+            }
+        }
+        return new CompiledEngine(this.topology, engineStates, engineInversions);
+    }
+
+    /**
+     * Get the current state of a unit of a variant.
+     * @param variant variant number
+     * @param unitId unit ID
+     * @return current state
+     */
+    public boolean getState(int variant, long unitId) {
+        checkVariant(variant);
+        return getBit(this.states, requireIndex(unitId), variant);
+    }
+
+    /**
+     * Set the current state of a unit of a variant.
+     * @param variant variant number
+     * @param unitId unit ID
+     * @param state new state
+     */
+    public void setState(int variant, long unitId, boolean state) {
+        checkVariant(variant);
+        setBit(this.states, requireIndex(unitId), variant, state);
+    }
+
+    /**
+     * Reverse the way an edge of a variant delivers state.
+     * @param variant variant number
+     * @param edgeId edge ID
+     */
+    public void reverseEdge(int variant, long edgeId) {
+        checkVariant(variant);
+        int slot = requireSlot(edgeId);
+        this.inversions[slot * this.blockCount + (variant >>> 6)] ^= 1L << variant;
+    }
+
+    /**
+     * Check whether an edge of a variant delivers the reversed state.
+     * @param variant variant number
+     * @param edgeId edge ID
+     * @return true if the state is reversed
+     */
+    public boolean isEdgeReversed(int variant, long edgeId) {
+        checkVariant(variant);
+        return getBit(this.inversions, requireSlot(edgeId), variant);
+    }
+
+    /**
+     * Get the bit-sliced states of a unit for a block of 64 variants.
+     * @param index unit index
+     * @param block block number, holding variants {@code 64 * block} to {@code 64 * block + 63}
+     * @return word whose bit {@code v} is the state of variant {@code 64 * block + v}
+     */
+    public long getStateSlice(int index, int block) {
+        return this.states[index * this.blockCount + block];
+    }
+
+    /**
+     * Set the bit-sliced states of a unit for a block of 64 variants.
+     * Bits of variants beyond the number of variants are ignored.
+     * @param index unit index
+     * @param block block number, holding variants {@code 64 * block} to {@code 64 * block + 63}
+     * @param slice word whose bit {@code v} is the state of variant {@code 64 * block + v}
+     */
+    public void setStateSlice(int index, int block, long slice) {
+        long mask = block == this.blockCount - 1 ? this.lastBlockMask : -1L;
+        this.states[index * this.blockCount + block] = slice & mask;
+    }
+
+    private boolean getBit(long[] words, int row, int variant) {
+        return (words[row * this.blockCount + (variant >>> 6)] & (1L << variant)) != 0;
+    }
+
+    private void setBit(long[] words, int row, int variant, boolean value) {
+        int position = row * this.blockCount + (variant >>> 6);
+        if (value) {
+            words[position] |= 1L << variant;
+        } else {
+            words[position] &= ~(1L << variant);
+        }
+    }
+
+    private void checkVariant(int variant) {
+        if (variant < 0 || variant >= this.variantCount) {
+            throw new IndexOutOfBoundsException("There is no variant " + variant + ".");
+        }
+    }
+
+    private int requireIndex(long unitId) {
+        int index = this.topology.indexOf(unitId);
+        if (index < 0) {
+            throw new IllegalArgumentException("There is no unit " + unitId + ".");
+        }
+        return index;
+    }
+
+    private int requireSlot(long edgeId) {
+        int slot = this.topology.slotOf(edgeId);
+        if (slot < 0) {
+            throw new IllegalArgumentException("There is no edge " + edgeId + ".");
+        }
+        return slot;
+    }
+}
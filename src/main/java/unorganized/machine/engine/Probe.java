@@ -0,0 +1,138 @@
+package unorganized.machine.engine;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.BitSet;
+
+/**
+ * Set of observed units whose states are gathered from an engine without creating units.
+ * Unit IDs are registered once and resolved to unit indexes on the first read from an engine,
+ * and again only when the engine has another topology. Bit {@code i} of the gathered values is the state
+ * of the i-th registered unit, and the values are gathered into the same array on every read.
+ * A probe is not thread-safe, so each thread should use its own probe.
+ * @author altair823
+ * @see unorganized.machine.control.Control#readProbe(Probe)
+ */
+@Getter
+public class Probe {
+
+    /**
+     * IDs of the observed units.
+     */
+    private final long[] unitIds;
+
+    /**
+     * States gathered by the last read, one bit per observed unit.
+     */
+    @Getter(AccessLevel.NONE)
+    private final long[] values;
+
+    /**
+     * Topology the unit indexes were resolved for, and the indexes.
+     */
+    @Getter(AccessLevel.NONE)
+    private Topology topology;
+    @Getter(AccessLevel.NONE)
+    private final int[] indexes;
+
+    /**
+     * Constructor that registers the observed units.
+     * @param unitIds IDs of the observed units
+     */
+    public Probe(long... unitIds) {
+        this.unitIds = unitIds.clone();
+        this.values = new long[Topology.wordsFor(unitIds.length)];
+        this.indexes = new int[unitIds.length];
+    }
+
+    /**
+     * Get the number of observed units.
+     * @return number of units
+     */
+    public int size() {
+        return this.unitIds.length;
+    }
+
+    /**
+     * Gather the current states of the observed units of an engine.
+     * @param engine engine holding the units
+     * @return gathered states, one bit per observed unit. The same array is returned by every read.
+     * @throws IllegalArgumentException An observed unit does not exist in the engine.
+     */
+    public long[] read(CompiledEngine engine) {
+        this.read(engine, this.values);
+        return this.values;
+    }
+
+    /**
+     * Gather the current states of the observed units of an engine into an array.
+     * @param engine engine holding the units
+     * @param target receives the states, one bit per observed unit
+     * @throws IllegalArgumentException An observed unit does not exist in the engine.
+     */
+    public void read(CompiledEngine engine, long[] target) {
+        if (target.length < this.values.length) {
+            throw new IllegalArgumentException("Target is smaller than the number of observed units.");
+        }
+        this.resolve(engine.getTopology());
+        long[] states = engine.getStates();
+        int[] indexes = this.indexes;
+        for (int word = 0; word < this.values.length; word++) {
+            long value = 0L;
+            int end = Math.min(indexes.length, (word + 1) << 6);
+            for (int i = word << 6; i < end; i++) {
+                int index = indexes[i];
+                value |= ((states[index >>> 6] >>> index) & 1L) << i;
+            }
+            target[word] = value;
+        }
+    }
+
+    /**
+     * Gather the current states of the observed units of an engine into a bit set.
+     * The bit set allocates only if it is smaller than the number of observed units.
+     * @param engine engine holding the units
+     * @param target receives the states, one bit per observed unit
+     * @throws IllegalArgumentException An observed unit does not exist in the engine.
+     */
+    public void read(CompiledEngine engine, BitSet target) {
+        this.resolve(engine.getTopology());
+        long[] states = engine.getStates();
+        for (int i = 0; i < this.indexes.length; i++) {
+            int index = this.indexes[i];
+            target.set(i, (states[index >>> 6] & (1L << index)) != 0);
+        }
+    }
+
+    /**
+     * Get the state of an observed unit gathered by the last read into the probe.
+     * @param position position of the unit among the registered unit IDs
+     * @return gathered state
+     */
+    public boolean get(int position) {
+        if (position < 0 || position >= this.unitIds.length) {
+            throw new IndexOutOfBoundsException("Position " + position + " is out of " + this.unitIds.length
+                    + " observed units.");
+        }
+        return (this.values[position >>> 6] & (1L << position)) != 0;
+    }
+
+    /**
+     * Resolve the unit indexes for a topology if they were resolved for another one.
+     */
+    private void resolve(Topology topology) {
+        if (topology == this.topology) {
+            return;
+        }
+        this.topology = null;
+        for (int i = 0; i < this.unitIds.length; i++) {
+            int index = topology.indexOf(this.unitIds[i]);
+            if (index < 0) {
+                throw new IllegalArgumentException("Unit " + this.unitIds[i] + " does not exist.");
+            }
+            this.indexes[i] = index;
+        }
+        this.topology = topology;
+    }
+}
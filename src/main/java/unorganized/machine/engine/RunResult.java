@@ -0,0 +1,44 @@
+package unorganized.machine.engine;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Result of a batch run of pulses.
+ * @author altair823
+ * @see CompiledEngine#run(long, StopCondition)
+ */
+@Getter
+@AllArgsConstructor
+public class RunResult {
+
+    /**
+     * Number of pulses executed by the run.
+     */
+    private final long steps;
+
+    /**
+     * Number of pulses from the start of the run to the first state on the cycle, or -1 if no cycle was found.
+     */
+    private final long cycleStart;
+
+    /**
+     * Number of pulses in the cycle, or 0 if no cycle was found. A fixed point has period 1.
+     */
+    private final long period;
+
+    /**
+     * Check whether the run stopped on a fixed point or a cycle.
+     * @return true if a cycle was found
+     */
+    public boolean isCycleFound() {
+        return this.period > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "steps: " + this.steps + "\n"
+                + "cycle start: " + this.cycleStart + "\n"
+                + "period: " + this.period + "\n";
+    }
+}
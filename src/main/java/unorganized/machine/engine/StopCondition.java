@@ -0,0 +1,24 @@
+package unorganized.machine.engine;
+
+/**
+ * Condition that ends a batch run of pulses before the requested number of pulses.
+ * @author altair823
+ * @see CompiledEngine#run(long, StopCondition)
+ */
+public enum StopCondition {
+
+    /**
+     * Run all requested pulses.
+     */
+    NONE,
+
+    /**
+     * Stop when a pulse does not change any unit state.
+     */
+    FIXED_POINT,
+
+    /**
+     * Stop when the states repeat, which includes a fixed point as a cycle of period 1.
+     */
+    CYCLE
+}
@@ -0,0 +1,470 @@
+package unorganized.machine.engine;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import unorganized.machine.calculator.ATypeCalculator;
+import unorganized.machine.calculator.StateCalculator;
+import unorganized.machine.edges.Edge;
+import unorganized.machine.units.Unit;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Immutable connectivity of a machine flattened into primitive arrays.
+ * Arrays returned by getters are shared by every engine over the topology and must not be changed.
+ * Every unit gets a dense index and two input slots. Slot {@code 2 * index + k} holds the index of the tail unit
+ * of the k-th edge heading to the unit, in ascending edge ID order.
+ * Units without any input edge are marked as fixed and keep their state on every pulse.
+ * Wired units calculate the NAND of their inputs, unless they are marked as custom units,
+ * which calculate their state with their own state calculator on a slower path.
+ * @author altair823
+ * @see CompiledEngine
+ */
+@Getter
+public class Topology {
+
+    /**
+     * Number of units.
+     */
+    private final int unitCount;
+
+    /**
+     * Number of 64 bit words needed to hold one bit per unit.
+     */
+    private final int wordCount;
+
+    /**
+     * Number of edges connected to input slots.
+     */
+    private final int edgeCount;
+
+    /**
+     * Unit ID of each unit index.
+     */
+    private final long[] unitIds;
+
+    /**
+     * Tail unit index of each input slot.
+     */
+    private final int[] inputs;
+
+    /**
+     * Bit set of units that have no input and never change.
+     */
+    private final long[] fixedUnits;
+
+    /**
+     * Bit set of units that have two input edges.
+     */
+    private final long[] wiredUnits;
+
+    /**
+     * Edge ID of each input slot. Only meaningful for slots of wired units.
+     */
+    private final long[] slotEdgeIds;
+
+    /**
+     * Bit set of wired units calculated by their own state calculator instead of the NAND gate.
+     */
+    private final long[] customUnits;
+
+    /**
+     * State calculator of each unit index, or null if there is no custom unit.
+     */
+    @Getter(AccessLevel.NONE)
+    private final StateCalculator[] calculators;
+
+    @Getter(AccessLevel.NONE)
+    private final long[] sortedUnitIds;
+    @Getter(AccessLevel.NONE)
+    private final int[] sortedUnitIndexes;
+    @Getter(AccessLevel.NONE)
+    private final long[] sortedEdgeIds;
+    @Getter(AccessLevel.NONE)
+    private final int[] sortedEdgeSlots;
+
+    Topology(long[] unitIds, int[] inputs, long[] fixedUnits, long[] wiredUnits, long[] slotEdgeIds) {
+        this(unitIds, inputs, fixedUnits, wiredUnits, slotEdgeIds, null);
+    }
+
+    Topology(long[] unitIds, int[] inputs, long[] fixedUnits, long[] wiredUnits, long[] slotEdgeIds,
+             StateCalculator[] calculators) {
+        this.unitCount = unitIds.length;
+        this.wordCount = wordsFor(this.unitCount);
+        this.unitIds = unitIds;
+        this.inputs = inputs;
+        this.fixedUnits = fixedUnits;
+        this.wiredUnits = wiredUnits;
+        this.slotEdgeIds = slotEdgeIds;
+        this.customUnits = new long[this.wordCount];
+        if (calculators != null) {
+            for (int index = 0; index < this.unitCount; index++) {
+                if (calculators[index] != null && isWired(index)) {
+                    this.customUnits[index >>> 6] |= 1L << index;
+                }
+            }
+        }
+        this.calculators = calculators;
+
+        this.sortedUnitIds = new long[this.unitCount];
+        this.sortedUnitIndexes = new int[this.unitCount];
+        sortIndexes(unitIds, null, this.sortedUnitIds, this.sortedUnitIndexes);
+        for (int i = 1; i < this.unitCount; i++) {
+            if (this.sortedUnitIds[i - 1] == this.sortedUnitIds[i]) {
+                throw new IllegalArgumentException("Unit ID " + this.sortedUnitIds[i] + " is duplicated.");
+            }
+        }
+
+        int edges = 0;
+        for (int index = 0; index < this.unitCount; index++) {
+            if (isWired(index)) {
+                edges += 2;
+            }
+        }
+        this.edgeCount = edges;
+        this.sortedEdgeIds = new long[edges];
+        this.sortedEdgeSlots = new int[edges];
+        sortIndexes(slotEdgeIds, wiredUnits, this.sortedEdgeIds, this.sortedEdgeSlots);
+    }
+
+    /**
+     * Create a topology from flattened arrays, for example ones stored in a binary layout file.
+     * @param unitIds unit ID of each unit index
+     * @param inputs tail unit index of each input slot
+     * @param fixedUnits bit set of units that never change
+     * @param wiredUnits bit set of units that have two input edges
+     * @param slotEdgeIds edge ID of each input slot
+     * @return new topology
+     * @throws IllegalArgumentException the arrays do not match each other.
+     */
+    public static Topology of(long[] unitIds, int[] inputs, long[] fixedUnits, long[] wiredUnits, long[] slotEdgeIds) {
+        int unitCount = unitIds.length;
+        if (inputs.length != unitCount << 1 || slotEdgeIds.length != unitCount << 1
+                || fixedUnits.length != wordsFor(unitCount) || wiredUnits.length != wordsFor(unitCount)) {
+            throw new IllegalArgumentException("Array lengths do not match the number of units.");
+        }
+        for (int input : inputs) {
+            if (input < 0 || input >= unitCount) {
+                throw new IllegalArgumentException("Input " + input + " is out of the machine.");
+            }
+        }
+        return new Topology(unitIds, inputs, fixedUnits, wiredUnits, slotEdgeIds);
+    }
+
+    /**
+     * Flatten units and edges of a loaded machine.
+     * Units are indexed in ascending unit ID order.
+     * Units with a state calculator other than ATypeCalculator become custom units.
+     * @param unitMap units of the machine
+     * @param edgeMap edges of the machine
+     * @return new topology
+     * @throws IllegalArgumentException a unit does not have exactly zero or two input edges.
+     */
+    public static Topology of(Map<Long, Unit> unitMap, Map<Long, Edge> edgeMap) {
+        int unitCount = unitMap.size();
+        long[] unitIds = new long[unitCount];
+        int position = 0;
+        for (long id : unitMap.keySet()) {
+            unitIds[position++] = id;
+        }
+        Arrays.sort(unitIds);
+
+        long[] fixedUnits = new long[wordsFor(unitCount)];
+        StateCalculator[] calculators = null;
+        for (int index = 0; index < unitCount; index++) {
+            StateCalculator calculator = unitMap.get(unitIds[index]).getStateCalculator();
+            if (calculator == null) {
+                fixedUnits[index >>> 6] |= 1L << index;
+            } else if (!(calculator instanceof ATypeCalculator)) {
+                if (calculators == null) {
+                    calculators = new StateCalculator[unitCount];
+                }
+                calculators[index] = calculator;
+            }
+        }
+
+        // Gather edges of every head unit in ascending edge ID order.
+        long[] edgeIds = new long[edgeMap.size()];
+        position = 0;
+        for (Map.Entry<Long, Edge> entry : edgeMap.entrySet()) {
+            Edge edge = entry.getValue();
+            if (edge.getTailUnit() != null && edge.getHeadUnit() != null) {
+                edgeIds[position++] = entry.getKey();
+            }
+        }
+        edgeIds = Arrays.copyOf(edgeIds, position);
+        Arrays.sort(edgeIds);
+
+        int[] inputs = new int[unitCount << 1];
+        long[] slotEdgeIds = new long[unitCount << 1];
+        int[] inputCount = new int[unitCount];
+        for (long edgeId : edgeIds) {
+            Edge edge = edgeMap.get(edgeId);
+            int head = Arrays.binarySearch(unitIds, edge.getHeadUnit().getId());
+            int tail = Arrays.binarySearch(unitIds, edge.getTailUnit().getId());
+            if (head < 0 || tail < 0) {
+                throw new IllegalArgumentException("Edge " + edgeId + " connects a unit out of the machine.");
+            }
+            if (inputCount[head] == 2) {
+                throw new IllegalArgumentException("Unit " + unitIds[head] + " has more than two input edges.");
+            }
+            int slot = (head << 1) + inputCount[head]++;
+            inputs[slot] = tail;
+            slotEdgeIds[slot] = edgeId;
+        }
+
+        long[] wiredUnits = new long[wordsFor(unitCount)];
+        for (int index = 0; index < unitCount; index++) {
+            if (inputCount[index] == 2) {
+                wiredUnits[index >>> 6] |= 1L << index;
+            }
+            if (inputCount[index] == 1) {
+                throw new IllegalArgumentException("Unit " + unitIds[index] + " has only one input edge.");
+            }
+            if (inputCount[index] == 0) {
+                // A unit without inputs never receives states, so it keeps its own state.
+                fixedUnits[index >>> 6] |= 1L << index;
+                inputs[index << 1] = index;
+                inputs[(index << 1) + 1] = index;
+            }
+        }
+        return new Topology(unitIds, inputs, fixedUnits, wiredUnits, slotEdgeIds, calculators);
+    }
+
+    /**
+     * Flatten units read from a layout file.
+     * Units are indexed in the order of the file, and previous unit IDs refer to the line of a unit
+     * counted from 1, where 0 means no input. Edge IDs are numbered from 1 in the order of the file,
+     * in the same way as UnitLayoutReader creates edges.
+     * @param unitIds unit ID of each line
+     * @param previousUnitIds two previous unit IDs of each line
+     * @return new topology
+     * @throws IllegalArgumentException a previous unit ID is out of the file, or a unit has only one input.
+     */
+    public static Topology fromLayout(long[] unitIds, long[] previousUnitIds) {
+        int unitCount = unitIds.length;
+        int[] inputs = new int[unitCount << 1];
+        long[] slotEdgeIds = new long[unitCount << 1];
+        long[] fixedUnits = new long[wordsFor(unitCount)];
+        long[] wiredUnits = new long[wordsFor(unitCount)];
+        long edgeId = 1;
+        for (int index = 0; index < unitCount; index++) {
+            int slot = index << 1;
+            long first = previousUnitIds[slot];
+            long second = previousUnitIds[slot + 1];
+            if (first == 0 && second == 0) {
+                fixedUnits[index >>> 6] |= 1L << index;
+                inputs[slot] = index;
+                inputs[slot + 1] = index;
+                continue;
+            }
+            if (first == 0 || second == 0) {
+                throw new IllegalArgumentException("Unit " + unitIds[index] + " has only one input edge.");
+            }
+            if (first < 0 || first > unitCount || second < 0 || second > unitCount) {
+                throw new IllegalArgumentException("Unit " + unitIds[index] + " refers to a unit out of the layout.");
+            }
+            wiredUnits[index >>> 6] |= 1L << index;
+            inputs[slot] = (int) (first - 1);
+            inputs[slot + 1] = (int) (second - 1);
+            slotEdgeIds[slot] = edgeId++;
+            slotEdgeIds[slot + 1] = edgeId++;
+        }
+        return new Topology(unitIds, inputs, fixedUnits, wiredUnits, slotEdgeIds);
+    }
+
+    /**
+     * Create a topology with the same units and edges in another order of unit indexes.
+     * Unit IDs and edge IDs move with their units.
+     * @param order old unit index of each new unit index
+     * @return new topology
+     */
+    Topology reorder(int[] order) {
+        int[] newIndexes = new int[this.unitCount];
+        for (int index = 0; index < this.unitCount; index++) {
+            newIndexes[order[index]] = index;
+        }
+        long[] newUnitIds = new long[this.unitCount];
+        int[] newInputs = new int[this.unitCount << 1];
+        long[] newSlotEdgeIds = new long[this.unitCount << 1];
+        long[] newFixedUnits = new long[this.wordCount];
+        long[] newWiredUnits = new long[this.wordCount];
+        StateCalculator[] newCalculators = this.calculators == null ? null : new StateCalculator[this.unitCount];
+        for (int index = 0; index < this.unitCount; index++) {
+            int old = order[index];
+            newUnitIds[index] = this.unitIds[old];
+            for (int k = 0; k < 2; k++) {
+                newInputs[(index << 1) + k] = newIndexes[this.inputs[(old << 1) + k]];
+                newSlotEdgeIds[(index << 1) + k] = this.slotEdgeIds[(old << 1) + k];
+            }
+            if (isFixed(old)) {
+                newFixedUnits[index >>> 6] |= 1L << index;
+            }
+            if (isWired(old)) {
+                newWiredUnits[index >>> 6] |= 1L << index;
+            }
+            if (newCalculators != null) {
+                newCalculators[index] = this.calculators[old];
+            }
+        }
+        return new Topology(newUnitIds, newInputs, newFixedUnits, newWiredUnits, newSlotEdgeIds, newCalculators);
+    }
+
+    /**
+     * Get the unit ID of a unit index.
+     * @param index unit index
+     * @return unit ID
+     */
+    public long unitId(int index) {
+        return this.unitIds[index];
+    }
+
+    /**
+     * Find the unit index of a unit ID.
+     * @param unitId unit ID
+     * @return unit index, or a negative value if there is no such unit
+     */
+    public int indexOf(long unitId) {
+        int position = Arrays.binarySearch(this.sortedUnitIds, unitId);
+        return position < 0 ? -1 : this.sortedUnitIndexes[position];
+    }
+
+    /**
+     * Find the input slot of an edge ID.
+     * @param edgeId edge ID
+     * @return input slot, or a negative value if there is no such edge
+     */
+    public int slotOf(long edgeId) {
+        int position = Arrays.binarySearch(this.sortedEdgeIds, edgeId);
+        return position < 0 ? -1 : this.sortedEdgeSlots[position];
+    }
+
+    /**
+     * Get the edge ID of a rank in ascending order of edge IDs, so that edges can be drawn by rank
+     * whether their IDs are contiguous or not.
+     * @param rank rank of the edge, from zero to the number of edges
+     * @return edge ID
+     */
+    public long edgeId(int rank) {
+        return this.sortedEdgeIds[rank];
+    }
+
+    /**
+     * Get the input slot of the edge of a rank in ascending order of edge IDs.
+     * @param rank rank of the edge, from zero to the number of edges
+     * @return input slot
+     */
+    public int edgeSlot(int rank) {
+        return this.sortedEdgeSlots[rank];
+    }
+
+    /**
+     * Get the tail unit index of an input slot.
+     * @param slot input slot
+     * @return tail unit index
+     */
+    public int input(int slot) {
+        return this.inputs[slot];
+    }
+
+    /**
+     * Check whether the unit never changes its state.
+     * @param index unit index
+     * @return true if the unit has no inputs
+     */
+    public boolean isFixed(int index) {
+        return (this.fixedUnits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Check whether the unit has two input edges.
+     * @param index unit index
+     * @return true if the input slots of the unit hold edges
+     */
+    public boolean isWired(int index) {
+        return (this.wiredUnits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Check whether the unit calculates its state with its own state calculator.
+     * @param index unit index
+     * @return true if the unit is a custom unit
+     */
+    public boolean isCustom(int index) {
+        return (this.customUnits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Check whether any unit calculates its state with its own state calculator.
+     * Topologies with custom units cannot be stored in layout files.
+     * @return true if there is a custom unit
+     */
+    public boolean hasCustomUnits() {
+        return this.calculators != null;
+    }
+
+    /**
+     * Get the state calculator of a unit other than the type A one.
+     * @param index unit index
+     * @return state calculator, or null if the unit calculates the NAND gate or never changes
+     */
+    public StateCalculator calculator(int index) {
+        return this.calculators == null ? null : this.calculators[index];
+    }
+
+    /**
+     * Get the number of 64 bit words needed to hold the given number of bits.
+     * @param bits number of bits
+     * @return number of words
+     */
+    public static int wordsFor(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    /**
+     * Sort keys with their positions, keeping only the slots of wired units if a wired bit set is given.
+     */
+    private static void sortIndexes(long[] keys, long[] wiredUnits, long[] sortedKeys, int[] sortedPositions) {
+        int count = 0;
+        for (int position = 0; position < keys.length; position++) {
+            if (wiredUnits != null) {
+                int unit = position >>> 1;
+                if ((wiredUnits[unit >>> 6] & (1L << unit)) == 0) {
+                    continue;
+                }
+            }
+            sortedKeys[count] = keys[position];
+            sortedPositions[count++] = position;
+        }
+        mergeSort(sortedKeys, sortedPositions, new long[count], new int[count], 0, count);
+    }
+
+    /**
+     * Stable merge sort of keys and their values without boxing.
+     */
+    private static void mergeSort(long[] keys, int[] values, long[] keyBuffer, int[] valueBuffer, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(keys, values, keyBuffer, valueBuffer, from, middle);
+        mergeSort(keys, values, keyBuffer, valueBuffer, middle, to);
+        if (keys[middle - 1] <= keys[middle]) {
+            return;
+        }
+        System.arraycopy(keys, from, keyBuffer, from, to - from);
+        System.arraycopy(values, from, valueBuffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && keyBuffer[left] <= keyBuffer[right])) {
+                keys[i] = keyBuffer[left];
+                values[i] = valueBuffer[left++];
+            } else {
+                keys[i] = keyBuffer[right];
+                values[i] = valueBuffer[right++];
+            }
+        }
+    }
+}
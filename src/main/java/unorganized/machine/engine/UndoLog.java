@@ -0,0 +1,126 @@
+package unorganized.machine.engine;
+
+import java.util.Arrays;
+
+/**
+ * Log of the packed words changed in a transaction of an engine, kept to restore them on a rollback.
+ * A single change records the old value of its state or inversion word. A change of all words,
+ * such as a pulse, saves a copy of the whole array once instead, after which single changes
+ * of that array need no record as the copy already holds the words from before them.
+ * @author altair823
+ * @see CompiledEngine#begin()
+ */
+class UndoLog {
+
+    /**
+     * Word index of every record, with inversion words stored as the complement of their index.
+     */
+    private int[] positions = new int[16];
+
+    /**
+     * Old value of the word of every record.
+     */
+    private long[] words = new long[16];
+    private int size;
+
+    /**
+     * Copies of the arrays made before their first change of all words. Null while there is no copy.
+     */
+    private long[] savedStates;
+    private long[] savedInversions;
+
+    /**
+     * Number of pulses of the engine when the transaction began.
+     */
+    private final long pulseCount;
+
+    UndoLog(long pulseCount) {
+        this.pulseCount = pulseCount;
+    }
+
+    /**
+     * Record the old value of a state word before it is changed.
+     * @param states current states
+     * @param word word index
+     */
+    void recordState(long[] states, int word) {
+        if (this.savedStates == null) {
+            this.record(word, states[word]);
+        }
+    }
+
+    /**
+     * Record the old value of an inversion word before it is changed.
+     * @param inversions current inversions
+     * @param word word index
+     */
+    void recordInversion(long[] inversions, int word) {
+        if (this.savedInversions == null) {
+            this.record(~word, inversions[word]);
+        }
+    }
+
+    private void record(int position, long word) {
+        if (this.size == this.positions.length) {
+            this.positions = Arrays.copyOf(this.positions, this.size << 1);
+            this.words = Arrays.copyOf(this.words, this.size << 1);
+        }
+        this.positions[this.size] = position;
+        this.words[this.size++] = word;
+    }
+
+    /**
+     * Save all state words before all of them may change.
+     * @param states current states
+     */
+    void saveStates(long[] states) {
+        if (this.savedStates == null) {
+            this.savedStates = states.clone();
+        }
+    }
+
+    /**
+     * Save all inversion words before all of them may change.
+     * @param inversions current inversions
+     */
+    void saveInversions(long[] inversions) {
+        if (this.savedInversions == null) {
+            this.savedInversions = inversions.clone();
+        }
+    }
+
+    /**
+     * Restore the words of the beginning of the transaction. The saved copies are restored first,
+     * and the records made before them are undone from the newest one.
+     * @param states states owned by the engine, which receive the old states
+     * @param inversions inversions owned by the engine, which receive the old inversions
+     */
+    void restore(long[] states, long[] inversions) {
+        if (this.savedStates != null) {
+            System.arraycopy(this.savedStates, 0, states, 0, states.length);
+        }
+        if (this.savedInversions != null) {
+            System.arraycopy(this.savedInversions, 0, inversions, 0, inversions.length);
+        }
+        for (int i = this.size - 1; i >= 0; i--) {
+            int position = this.positions[i];
+            if (position >= 0) {
+                states[position] = this.words[i];
+            } else {
+                inversions[~position] = this.words[i];
+            }
+        }
+    }
+
+    long getPulseCount() {
+        return this.pulseCount;
+    }
+
+    /**
+     * Get the number of word records, for tests and instrumentation.
+     * @return number of records
+     */
+    int size() {
+        return this.size;
+    }
+}
@@ -0,0 +1,157 @@
+package unorganized.machine.engine;
+
+/**
+ * Order of unit indexes in a topology.
+ * Unit IDs are kept with the units, so reordering only changes where the state of a unit lies in the state words.
+ * Placing connected units close to each other lets a pulse read the input words of a unit from the same cache lines.
+ * @author altair823
+ * @see CompiledEngine#reorder(UnitOrder)
+ */
+public enum UnitOrder {
+
+    /**
+     * Keep the order of the layout file or of the unit IDs.
+     */
+    KEEP {
+        @Override
+        int[] order(Topology topology) {
+            int[] order = new int[topology.getUnitCount()];
+            for (int index = 0; index < order.length; index++) {
+                order[index] = index;
+            }
+            return order;
+        }
+    },
+
+    /**
+     * Reverse Cuthill-McKee order. Units are visited breadth first over edges in both directions,
+     * starting from a unit of the lowest degree and visiting neighbours of lower degree first,
+     * and the visiting order is reversed. Connected units get close indexes.
+     */
+    REVERSE_CUTHILL_MCKEE {
+        @Override
+        int[] order(Topology topology) {
+            int unitCount = topology.getUnitCount();
+            int[] offsets = new int[unitCount + 1];
+            int[] neighbours = neighbours(topology, offsets);
+            int[] order = new int[unitCount];
+            long[] visited = new long[Topology.wordsFor(unitCount)];
+            int tail = 0;
+            for (int start : byDegree(offsets, false)) {
+                if ((visited[start >>> 6] & (1L << start)) != 0) {
+                    continue;
+                }
+                visited[start >>> 6] |= 1L << start;
+                order[tail++] = start;
+                // The order array itself is the queue of the breadth first search.
+                for (int head = tail - 1; head < tail; head++) {
+                    int unit = order[head];
+                    int first = tail;
+                    for (int i = offsets[unit]; i < offsets[unit + 1]; i++) {
+                        int neighbour = neighbours[i];
+                        if ((visited[neighbour >>> 6] & (1L << neighbour)) == 0) {
+                            visited[neighbour >>> 6] |= 1L << neighbour;
+                            order[tail++] = neighbour;
+                        }
+                    }
+                    // Neighbours of lower degree are visited first.
+                    for (int i = first + 1; i < tail; i++) {
+                        int neighbour = order[i];
+                        int degree = offsets[neighbour + 1] - offsets[neighbour];
+                        int j = i - 1;
+                        while (j >= first && offsets[order[j] + 1] - offsets[order[j]] > degree) {
+                            order[j + 1] = order[j];
+                            j--;
+                        }
+                        order[j + 1] = neighbour;
+                    }
+                }
+            }
+            for (int i = 0, j = unitCount - 1; i < j; i++, j--) {
+                int temporary = order[i];
+                order[i] = order[j];
+                order[j] = temporary;
+            }
+            return order;
+        }
+    },
+
+    /**
+     * Units of the highest degree first. Units read by many others share the first state words.
+     */
+    DEGREE {
+        @Override
+        int[] order(Topology topology) {
+            int[] offsets = new int[topology.getUnitCount() + 1];
+            neighbours(topology, offsets);
+            return byDegree(offsets, true);
+        }
+    };
+
+    /**
+     * Calculate the new order of the units of a topology.
+     * @param topology topology to reorder
+     * @return old unit index of each new unit index
+     */
+    abstract int[] order(Topology topology);
+
+    /**
+     * Build the neighbours of every unit over edges in both directions, without self loops and fixed units.
+     * @param topology topology of the units
+     * @param offsets receives the start of the neighbours of each unit, and the total count at the end
+     * @return neighbours of all units
+     */
+    private static int[] neighbours(Topology topology, int[] offsets) {
+        int unitCount = topology.getUnitCount();
+        int[] inputs = topology.getInputs();
+        for (int slot = 0; slot < unitCount << 1; slot++) {
+            int head = slot >>> 1;
+            if (topology.isWired(head) && inputs[slot] != head) {
+                offsets[head + 1]++;
+                offsets[inputs[slot] + 1]++;
+            }
+        }
+        for (int index = 0; index < unitCount; index++) {
+            offsets[index + 1] += offsets[index];
+        }
+        int[] neighbours = new int[offsets[unitCount]];
+        int[] next = new int[unitCount];
+        System.arraycopy(offsets, 0, next, 0, unitCount);
+        for (int slot = 0; slot < unitCount << 1; slot++) {
+            int head = slot >>> 1;
+            if (topology.isWired(head) && inputs[slot] != head) {
+                neighbours[next[head]++] = inputs[slot];
+                neighbours[next[inputs[slot]]++] = head;
+            }
+        }
+        return neighbours;
+    }
+
+    /**
+     * Sort units by degree with a stable counting sort.
+     * @param offsets start of the neighbours of each unit
+     * @param descending true to put units of the highest degree first
+     * @return unit indexes sorted by degree
+     */
+    private static int[] byDegree(int[] offsets, boolean descending) {
+        int unitCount = offsets.length - 1;
+        int maxDegree = 0;
+        for (int index = 0; index < unitCount; index++) {
+            maxDegree = Math.max(maxDegree, offsets[index + 1] - offsets[index]);
+        }
+        int[] starts = new int[maxDegree + 2];
+        for (int index = 0; index < unitCount; index++) {
+            int degree = offsets[index + 1] - offsets[index];
+            starts[(descending ? maxDegree - degree : degree) + 1]++;
+        }
+        for (int degree = 0; degree <= maxDegree; degree++) {
+            starts[degree + 1] += starts[degree];
+        }
+        int[] sorted = new int[unitCount];
+        for (int index = 0; index < unitCount; index++) {
+            int degree = offsets[index + 1] - offsets[index];
+            sorted[starts[descending ? maxDegree - degree : degree]++] = index;
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,21 @@
+package unorganized.machine.engine;
+
+/**
+ * Calculation of the NAND gates of a range of state words over vector lanes.
+ * The implementation uses the incubating Vector API, so it is compiled apart from the engine
+ * and loaded only when the jdk.incubator.vector module is available.
+ * @author altair823
+ * @see CompiledEngine#setVectorized(boolean)
+ */
+interface VectorKernel {
+
+    /**
+     * Calculate the NAND gates of the type A units in a range of state words.
+     * @param source current states
+     * @param target words receiving the NAND gates
+     * @param inversions inversion flags of input slots
+     * @param fromWord first word, inclusive
+     * @param toWord last word, exclusive
+     */
+    void compute(long[] source, long[] target, long[] inversions, int fromWord, int toWord);
+}
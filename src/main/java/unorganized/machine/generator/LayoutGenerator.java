@@ -0,0 +1,290 @@
+package unorganized.machine.generator;
+
+import lombok.Builder;
+import lombok.Getter;
+import unorganized.machine.engine.Topology;
+import unorganized.machine.reader.BinaryLayoutReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Generator of random type A unit layouts for scale testing.
+ * Every unit is derived only from the seed and its own line number, so layouts are written in a streaming fashion
+ * without holding the graph in memory, and the text and binary forms of the same options describe the same machine.
+ * @author altair823
+ */
+@Getter
+@Builder
+public class LayoutGenerator {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Number of units.
+     */
+    private final int unitCount;
+
+    /**
+     * Seed of the random layout.
+     */
+    private final long seed;
+
+    /**
+     * Probability that a unit has no inputs and never changes.
+     */
+    @Builder.Default
+    private final double fixedRatio = 0.0;
+
+    /**
+     * Probability that an input of a unit is the unit itself.
+     */
+    @Builder.Default
+    private final double selfLoopRatio = 0.0;
+
+    /**
+     * Maximum distance in lines between a unit and its inputs, or 0 to pick inputs from the whole layout.
+     */
+    @Builder.Default
+    private final int locality = 0;
+
+    /**
+     * Probability that the initial state of a unit is 1.
+     */
+    @Builder.Default
+    private final double stateRatio = 0.5;
+
+    /**
+     * Method writing the layout in the "UnitLayoutDataFile" text format.
+     * @param layoutFile file to create or overwrite
+     * @throws IOException The file cannot be written.
+     */
+    public void writeText(File layoutFile) throws IOException {
+        long[] unit = new long[3];
+        byte[] digits = new byte[20];
+        try (Output output = new Output(layoutFile)) {
+            for (byte b : "UnitLayoutDataFile\n".getBytes()) {
+                output.put(b);
+            }
+            for (int index = 0; index < this.unitCount; index++) {
+                this.generate(index, unit);
+                output.put((byte) 'A');
+                for (long value : unit) {
+                    output.put((byte) ' ');
+                    int length = 0;
+                    do {
+                        digits[length++] = (byte) ('0' + value % 10);
+                        value /= 10;
+                    } while (value > 0);
+                    while (length > 0) {
+                        output.put(digits[--length]);
+                    }
+                }
+                output.put((byte) '\n');
+            }
+        }
+    }
+
+    /**
+     * Method writing the layout in the binary unit layout format.
+     * Every section is written in its own pass over the units.
+     * @param layoutFile file to create or overwrite
+     * @throws IOException The file cannot be written.
+     * @see BinaryLayoutReader
+     */
+    public void writeBinary(File layoutFile) throws IOException {
+        long[] unit = new long[3];
+        try (Output output = new Output(layoutFile)) {
+            output.putInt(BinaryLayoutReader.MAGIC);
+            output.putInt(BinaryLayoutReader.VERSION);
+            output.putInt(this.unitCount);
+            output.putInt(0);
+            for (int index = 0; index < this.unitCount; index++) {
+                output.putLong(index + 1);
+            }
+            this.writeBits(output, index -> {
+                this.generate(index, unit);
+                return unit[2] != 0;
+            });
+            for (int index = 0; index < this.unitCount; index++) {
+                this.generate(index, unit);
+                output.putInt(unit[0] == 0 ? index : (int) unit[0] - 1);
+                output.putInt(unit[1] == 0 ? index : (int) unit[1] - 1);
+            }
+            this.writeBits(output, index -> {
+                this.generate(index, unit);
+                return unit[0] == 0;
+            });
+            this.writeBits(output, index -> {
+                this.generate(index, unit);
+                return unit[0] != 0;
+            });
+            long edgeId = 1;
+            for (int index = 0; index < this.unitCount; index++) {
+                this.generate(index, unit);
+                boolean wired = unit[0] != 0;
+                output.putLong(wired ? edgeId++ : 0);
+                output.putLong(wired ? edgeId++ : 0);
+            }
+            for (int word = 0; word < Topology.wordsFor(this.unitCount << 1); word++) {
+                output.putLong(0L);
+            }
+        }
+    }
+
+    /**
+     * Generate a unit of the layout.
+     * @param index line number of the unit counted from 0
+     * @param unit receives the two previous unit IDs, 0 for none, and the initial state
+     */
+    void generate(int index, long[] unit) {
+        long state = mix(this.seed ^ mix(index + 0x9E3779B97F4A7C15L));
+        state += 0x9E3779B97F4A7C15L;
+        boolean fixed = toDouble(mix(state)) < this.fixedRatio;
+        state += 0x9E3779B97F4A7C15L;
+        unit[0] = fixed ? 0 : this.pickInput(index, state) + 1;
+        state += 0x9E3779B97F4A7C15L * 3;
+        unit[1] = fixed ? 0 : this.pickInput(index, state) + 1;
+        state += 0x9E3779B97F4A7C15L * 3;
+        unit[2] = toDouble(mix(state)) < this.stateRatio ? 1 : 0;
+    }
+
+    /**
+     * Pick an input of a unit from three random numbers derived from the state.
+     */
+    private long pickInput(int index, long state) {
+        if (toDouble(mix(state)) < this.selfLoopRatio) {
+            return index;
+        }
+        long random = mix(state + 0x9E3779B97F4A7C15L) >>> 1;
+        if (this.locality <= 0 || this.locality * 2L + 1 >= this.unitCount) {
+            return random % this.unitCount;
+        }
+        long offset = random % (this.locality * 2L + 1) - this.locality;
+        return Math.floorMod(index + offset, (long) this.unitCount);
+    }
+
+    private interface UnitBit {
+        boolean test(int index);
+    }
+
+    private void writeBits(Output output, UnitBit bit) throws IOException {
+        long word = 0;
+        for (int index = 0; index < this.unitCount; index++) {
+            if (bit.test(index)) {
+                word |= 1L << index;
+            }
+            if ((index & 63) == 63) {
+                output.putLong(word);
+                word = 0;
+            }
+        }
+        if ((this.unitCount & 63) != 0) {
+            output.putLong(word);
+        }
+    }
+
+    /**
+     * Finalizer of SplitMix64.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static double toDouble(long random) {
+        return (random >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Buffered little endian file output.
+     */
+    private static class Output implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        Output(File file) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void put(byte value) throws IOException {
+            this.ensureRemaining(1);
+            this.buffer.put(value);
+        }
+
+        void putInt(int value) throws IOException {
+            this.ensureRemaining(4);
+            this.buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            this.ensureRemaining(8);
+            this.buffer.putLong(value);
+        }
+
+        private void ensureRemaining(int bytes) throws IOException {
+            if (this.buffer.remaining() < bytes) {
+                this.flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+            this.buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.flush();
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Command line generator.
+     * @param args options {@code --units N --seed S --fixed R --self-loops R --locality D --states R --binary}
+     *             followed by the output file
+     * @throws IOException The file cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        LayoutGeneratorBuilder builder = LayoutGenerator.builder();
+        boolean binary = false;
+        File output = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--units" -> builder.unitCount(Integer.parseInt(args[++i]));
+                    case "--seed" -> builder.seed(Long.parseLong(args[++i]));
+                    case "--fixed" -> builder.fixedRatio(Double.parseDouble(args[++i]));
+                    case "--self-loops" -> builder.selfLoopRatio(Double.parseDouble(args[++i]));
+                    case "--locality" -> builder.locality(Integer.parseInt(args[++i]));
+                    case "--states" -> builder.stateRatio(Double.parseDouble(args[++i]));
+                    case "--binary" -> binary = true;
+                    default -> output = new File(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            output = null;
+        }
+        if (output == null) {
+            System.err.println("usage: LayoutGenerator --units N [--seed S] [--fixed R] [--self-loops R]"
+                    + " [--locality D] [--states R] [--binary] <output file>");
+            System.exit(2);
+        }
+        LayoutGenerator generator = builder.build();
+        if (binary) {
+            generator.writeBinary(output);
+        } else {
+            generator.writeText(output);
+        }
+    }
+}
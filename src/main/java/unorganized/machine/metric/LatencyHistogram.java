@@ -0,0 +1,169 @@
+package unorganized.machine.metric;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of durations in nanoseconds with log-linear buckets in the style of HdrHistogram.
+ * Values below {@code 2^precision} have a bucket each, and larger values share buckets of a relative width
+ * of {@code 2^(1-precision)}, so any value from nanoseconds to hours is recorded with a bounded relative error
+ * into a fixed array without allocation.
+ * Recording is not synchronized, and a reader on another thread may see a histogram in the middle of a record.
+ * @author altair823
+ * @see MachineMetrics
+ */
+@Getter
+public class LatencyHistogram {
+
+    /**
+     * Number of significant bits kept of every value.
+     */
+    private final int precision;
+
+    /**
+     * Number of values recorded.
+     */
+    private long count;
+
+    /**
+     * Sum, minimum and maximum of the values recorded.
+     */
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    @Getter(AccessLevel.NONE)
+    private final long[] buckets;
+
+    /**
+     * Constructor with 7 significant bits, which gives a relative error below 1.6 percent.
+     */
+    public LatencyHistogram() {
+        this(7);
+    }
+
+    /**
+     * Constructor with a number of significant bits.
+     * @param precision number of significant bits, from 1 to 16
+     */
+    public LatencyHistogram(int precision) {
+        if (precision < 1 || precision > 16) {
+            throw new IllegalArgumentException("Precision must be from 1 to 16 bits.");
+        }
+        this.precision = precision;
+        this.buckets = new long[bucketOf(Long.MAX_VALUE) + 1];
+    }
+
+    /**
+     * Record a value.
+     * @param value duration in nanoseconds. Negative values are recorded as zero.
+     */
+    public void record(long value) {
+        value = Math.max(0L, value);
+        this.buckets[bucketOf(value)]++;
+        this.count++;
+        this.total += value;
+        this.min = Math.min(this.min, value);
+        this.max = Math.max(this.max, value);
+    }
+
+    /**
+     * Get the mean of the values recorded.
+     * @return mean value, or zero if nothing is recorded
+     */
+    public double getMean() {
+        return this.count == 0 ? 0 : (double) this.total / this.count;
+    }
+
+    /**
+     * Get the minimum of the values recorded.
+     * @return minimum value, or zero if nothing is recorded
+     */
+    public long getMin() {
+        return this.count == 0 ? 0 : this.min;
+    }
+
+    /**
+     * Get a value at a percentile of the values recorded. The highest value of its bucket is returned,
+     * bounded by the maximum recorded value.
+     * @param percentile percentile from 0 to 100
+     * @return value at the percentile, or zero if nothing is recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (this.count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * this.count));
+        long seen = 0;
+        for (int bucket = 0; bucket < this.buckets.length; bucket++) {
+            seen += this.buckets[bucket];
+            if (seen >= rank) {
+                return Math.min(this.max, highestValueOf(bucket));
+            }
+        }
+        return this.max;
+    }
+
+    /**
+     * Add all values recorded by another histogram of the same precision.
+     * @param other histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        if (other.precision != this.precision) {
+            throw new IllegalArgumentException("Histograms must have the same precision.");
+        }
+        for (int bucket = 0; bucket < this.buckets.length; bucket++) {
+            this.buckets[bucket] += other.buckets[bucket];
+        }
+        this.count += other.count;
+        this.total += other.total;
+        this.min = Math.min(this.min, other.min);
+        this.max = Math.max(this.max, other.max);
+    }
+
+    /**
+     * Clear all values recorded.
+     */
+    public void reset() {
+        Arrays.fill(this.buckets, 0L);
+        this.count = 0;
+        this.total = 0;
+        this.min = Long.MAX_VALUE;
+        this.max = 0;
+    }
+
+    /**
+     * Find the bucket of a value. Values below {@code 2^precision} are their own bucket. A larger value is
+     * shifted right until {@code precision} bits are left, and each shift has {@code 2^(precision-1)} buckets.
+     */
+    int bucketOf(long value) {
+        int shift = 64 - Long.numberOfLeadingZeros(value) - this.precision;
+        if (shift <= 0) {
+            return (int) value;
+        }
+        return (shift << (this.precision - 1)) + (int) (value >>> shift);
+    }
+
+    /**
+     * Find the highest value of a bucket.
+     */
+    long highestValueOf(int bucket) {
+        int half = 1 << (this.precision - 1);
+        if (bucket < half << 1) {
+            return bucket;
+        }
+        int shift = bucket / half - 1;
+        long top = bucket - ((long) shift << (this.precision - 1));
+        long highest = ((top + 1) << shift) - 1;
+        // The last bucket ends at the largest long value, beyond which the shift overflows.
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+
+    @Override
+    public String toString() {
+        return "count: " + this.count + ", mean: " + this.getMean() + ", p50: " + this.getValueAtPercentile(50)
+                + ", p99: " + this.getValueAtPercentile(99) + ", max: " + this.max;
+    }
+}
@@ -0,0 +1,205 @@
+package unorganized.machine.metric;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Counters and latency histograms of a running machine.
+ * A control or an engine records into the metrics only while they are set on it, and otherwise pays
+ * a single null check per pulse, so the metrics can stay available in production.
+ * Measurements are passed on to the listeners, and the metrics can be exported as a JMX MBean.
+ * Metrics are recorded without synchronization and must be set on one machine at a time.
+ * @author altair823
+ * @see unorganized.machine.control.Control#setMetrics(MachineMetrics)
+ * @see unorganized.machine.engine.CompiledEngine#setMetrics(MachineMetrics)
+ */
+@Getter
+public class MachineMetrics implements MachineMetricsMBean {
+
+    /**
+     * Number of pulses recorded.
+     */
+    private long pulseCount;
+
+    /**
+     * Number of unit state changes over all pulses.
+     */
+    private long flippedUnitCount;
+
+    /**
+     * Number of edges that delivered a state over all pulses.
+     */
+    private long deliveredEdgeCount;
+
+    /**
+     * Number of unit state changes of the last pulse.
+     */
+    private long lastFlippedUnits;
+
+    /**
+     * Durations of pulses, layout loads and copies.
+     */
+    private final LatencyHistogram pulseLatency = new LatencyHistogram();
+    private final LatencyHistogram loadLatency = new LatencyHistogram();
+    private final LatencyHistogram copyLatency = new LatencyHistogram();
+
+    @Getter(AccessLevel.NONE)
+    private final List<MetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Method that adds a listener receiving every measurement.
+     * @param listener new listener
+     */
+    public void addListener(MetricsListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Method that removes a listener.
+     * @param listener listener to remove
+     */
+    public void removeListener(MetricsListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Record a pulse.
+     * @param flippedUnits number of units whose state changed
+     * @param deliveredEdges number of edges that delivered a state
+     * @param nanos duration of the pulse
+     */
+    public void recordPulse(long flippedUnits, long deliveredEdges, long nanos) {
+        this.pulseCount++;
+        this.flippedUnitCount += flippedUnits;
+        this.deliveredEdgeCount += deliveredEdges;
+        this.lastFlippedUnits = flippedUnits;
+        this.pulseLatency.record(nanos);
+        for (MetricsListener listener : this.listeners) {
+            listener.onPulse(this.pulseCount, flippedUnits, deliveredEdges, nanos);
+        }
+    }
+
+    /**
+     * Record a layout load.
+     * @param nanos duration of the load
+     */
+    public void recordLoad(long nanos) {
+        this.loadLatency.record(nanos);
+        for (MetricsListener listener : this.listeners) {
+            listener.onLoad(nanos);
+        }
+    }
+
+    /**
+     * Record a copy of a machine.
+     * @param nanos duration of the copy
+     */
+    public void recordCopy(long nanos) {
+        this.copyLatency.record(nanos);
+        for (MetricsListener listener : this.listeners) {
+            listener.onCopy(nanos);
+        }
+    }
+
+    @Override
+    public double getMeanFlippedUnits() {
+        return this.pulseCount == 0 ? 0 : (double) this.flippedUnitCount / this.pulseCount;
+    }
+
+    @Override
+    public double getPulseLatencyMean() {
+        return this.pulseLatency.getMean();
+    }
+
+    @Override
+    public long getPulseLatencyP50() {
+        return this.pulseLatency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getPulseLatencyP99() {
+        return this.pulseLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getPulseLatencyP999() {
+        return this.pulseLatency.getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getPulseLatencyMax() {
+        return this.pulseLatency.getMax();
+    }
+
+    @Override
+    public long getLoadCount() {
+        return this.loadLatency.getCount();
+    }
+
+    @Override
+    public double getLoadTimeMean() {
+        return this.loadLatency.getMean();
+    }
+
+    @Override
+    public long getCopyCount() {
+        return this.copyLatency.getCount();
+    }
+
+    @Override
+    public double getCopyTimeMean() {
+        return this.copyLatency.getMean();
+    }
+
+    /**
+     * Clear all counters and histograms. Listeners are kept.
+     */
+    @Override
+    public void reset() {
+        this.pulseCount = 0;
+        this.flippedUnitCount = 0;
+        this.deliveredEdgeCount = 0;
+        this.lastFlippedUnits = 0;
+        this.pulseLatency.reset();
+        this.loadLatency.reset();
+        this.copyLatency.reset();
+    }
+
+    /**
+     * Method that registers the metrics as an MBean of the platform MBean server.
+     * @param name name of the machine in the object name
+     * @return object name of the MBean
+     * @throws JMException The name is malformed or already registered.
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("unorganized.machine:type=MachineMetrics,name="
+                + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * Method that removes an MBean registered by {@link #register(String)}.
+     * @param objectName object name of the MBean
+     * @throws JMException The MBean is not registered.
+     */
+    public static void unregister(ObjectName objectName) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+
+    @Override
+    public String toString() {
+        return "pulses: " + this.pulseCount + "\n"
+                + "flipped units per pulse: " + this.getMeanFlippedUnits() + "\n"
+                + "delivered edges: " + this.deliveredEdgeCount + "\n"
+                + "pulse latency: " + this.pulseLatency + "\n"
+                + "load latency: " + this.loadLatency + "\n"
+                + "copy latency: " + this.copyLatency + "\n";
+    }
+}
@@ -0,0 +1,40 @@
+package unorganized.machine.metric;
+
+/**
+ * Management interface of the metrics of a machine, exported through JMX.
+ * Durations are in nanoseconds.
+ * @author altair823
+ * @see MachineMetrics#register(String)
+ */
+public interface MachineMetricsMBean {
+
+    long getPulseCount();
+
+    long getFlippedUnitCount();
+
+    long getDeliveredEdgeCount();
+
+    long getLastFlippedUnits();
+
+    double getMeanFlippedUnits();
+
+    double getPulseLatencyMean();
+
+    long getPulseLatencyP50();
+
+    long getPulseLatencyP99();
+
+    long getPulseLatencyP999();
+
+    long getPulseLatencyMax();
+
+    long getLoadCount();
+
+    double getLoadTimeMean();
+
+    long getCopyCount();
+
+    double getCopyTimeMean();
+
+    void reset();
+}
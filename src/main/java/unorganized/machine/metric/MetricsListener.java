@@ -0,0 +1,34 @@
+package unorganized.machine.metric;
+
+/**
+ * Listener receiving every measurement of a machine as it is recorded.
+ * Listeners are called on the thread making the pulse, load or copy, so they should return quickly.
+ * @author altair823
+ * @see MachineMetrics#addListener(MetricsListener)
+ */
+public interface MetricsListener {
+
+    /**
+     * Called after a pulse.
+     * @param pulseCount number of pulses recorded so far, including this one
+     * @param flippedUnits number of units whose state changed on the pulse
+     * @param deliveredEdges number of edges that delivered a state on the pulse
+     * @param nanos duration of the pulse in nanoseconds
+     */
+    default void onPulse(long pulseCount, long flippedUnits, long deliveredEdges, long nanos) {
+    }
+
+    /**
+     * Called after a layout is loaded.
+     * @param nanos duration of the load in nanoseconds
+     */
+    default void onLoad(long nanos) {
+    }
+
+    /**
+     * Called after a machine is copied.
+     * @param nanos duration of the copy in nanoseconds
+     */
+    default void onCopy(long nanos) {
+    }
+}
@@ -0,0 +1,141 @@
+package unorganized.machine.reader;
+
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.engine.Topology;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reader class loading a binary unit layout file into a compiled engine.
+ * The file is memory-mapped and every section is copied into its array in bulk, so nothing is parsed.
+ * <p>
+ * The format is little endian. The header holds the magic number, the format version, the unit count and a
+ * reserved word. It is followed by these sections, each starting at a multiple of 8 bytes:
+ * unit IDs (long per unit), states (one bit per unit), inputs (two ints per unit),
+ * fixed units (one bit per unit), wired units (one bit per unit), edge IDs (long per input slot)
+ * and edge inversions (one bit per input slot).
+ * @author altair823
+ * @see unorganized.machine.writer.BinaryLayoutWriter
+ */
+public class BinaryLayoutReader {
+
+    /**
+     * Magic number at the start of a binary layout file, "UMBL" in ASCII.
+     */
+    public static final int MAGIC = 0x554D424C;
+
+    /**
+     * Version of the format written by this version of the project.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Size of the header in bytes.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    private final File layoutFile;
+    private final int unitCount;
+
+    /**
+     * Constructor that verifies the header of a binary unit layout file.
+     * @param layoutFile File object contains binary unit layout
+     * @throws IOException The file cannot be read.
+     * @throws FileSystemException The given file is not binary unit layout file or has another version.
+     */
+    public BinaryLayoutReader(File layoutFile) throws IOException {
+        this.layoutFile = layoutFile;
+        try (FileChannel channel = FileChannel.open(layoutFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) > 0) {
+                // Read the whole header.
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new FileSystemException(layoutFile.getAbsolutePath(), null, "not a binary unit layout file");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new FileSystemException(layoutFile.getAbsolutePath(), null, "unsupported version " + version);
+            }
+            this.unitCount = header.getInt();
+            if (this.unitCount < 0 || channel.size() != fileSize(this.unitCount)) {
+                throw new FileSystemException(layoutFile.getAbsolutePath(), null, "file size does not match the header");
+            }
+        }
+    }
+
+    /**
+     * Get the number of units declared in the header.
+     * @return unit count
+     */
+    public int getUnitCount() {
+        return this.unitCount;
+    }
+
+    /**
+     * Method loading the layout into a new engine.
+     * @return new engine holding the layout, its states and its edge inversions
+     * @throws IOException The file cannot be read.
+     */
+    public CompiledEngine read() throws IOException {
+        int words = Topology.wordsFor(this.unitCount);
+        int slots = this.unitCount << 1;
+        long[] unitIds = new long[this.unitCount];
+        long[] states = new long[words];
+        int[] inputs = new int[slots];
+        long[] fixedUnits = new long[words];
+        long[] wiredUnits = new long[words];
+        long[] slotEdgeIds = new long[slots];
+        long[] inversions = new long[Topology.wordsFor(slots)];
+        try (FileChannel channel = FileChannel.open(this.layoutFile.toPath(), StandardOpenOption.READ)) {
+            long position = readLongs(channel, HEADER_SIZE, unitIds);
+            position = readLongs(channel, position, states);
+            map(channel, position, inputs.length * 4L).asIntBuffer().get(inputs);
+            position = align(position + inputs.length * 4L);
+            position = readLongs(channel, position, fixedUnits);
+            position = readLongs(channel, position, wiredUnits);
+            position = readLongs(channel, position, slotEdgeIds);
+            readLongs(channel, position, inversions);
+        }
+        try {
+            return CompiledEngine.of(Topology.of(unitIds, inputs, fixedUnits, wiredUnits, slotEdgeIds), states, inversions);
+        } catch (IllegalArgumentException e) {
+            throw new FileSystemException(this.layoutFile.getAbsolutePath(), null, e.getMessage());
+        }
+    }
+
+    /**
+     * Get the size of a binary layout file of a number of units.
+     * @param unitCount number of units
+     * @return file size in bytes
+     */
+    public static long fileSize(int unitCount) {
+        long words = Topology.wordsFor(unitCount);
+        long slots = (long) unitCount << 1;
+        return HEADER_SIZE + unitCount * 8L + words * 8 + align(slots * 4) + words * 16 + slots * 8
+                + Topology.wordsFor((int) slots) * 8L;
+    }
+
+    private static long readLongs(FileChannel channel, long position, long[] values) throws IOException {
+        map(channel, position, values.length * 8L).asLongBuffer().get(values);
+        return position + values.length * 8L;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+}
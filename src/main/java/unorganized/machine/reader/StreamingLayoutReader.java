@@ -0,0 +1,311 @@
+package unorganized.machine.reader;
+
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.engine.Topology;
+import unorganized.machine.engine.UnitOrder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reader class reading a unit layout file straight into a compiled engine.
+ * Unlike UnitLayoutReader, it parses bytes of the file in a single pass into primitive arrays of unit IDs,
+ * previous unit IDs and states, without creating strings, maps, units or edges.
+ * It accepts the same "UnitLayoutDataFile" format, but only type A units.
+ * @author altair823
+ * @see UnitLayoutReader
+ * @see CompiledEngine
+ */
+public class StreamingLayoutReader {
+
+    private static final String HEADER = "UnitLayoutDataFile";
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final File layoutFile;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final FileChannel channel;
+
+    /**
+     * Parsed unit count and arrays. Arrays grow while reading and are trimmed at the end.
+     */
+    private int unitCount;
+    private long[] unitIds = new long[1024];
+    private long[] previousUnitIds = new long[2048];
+    private long[] states = new long[16];
+    private boolean explicitIds;
+    private int line = 1;
+
+    /**
+     * Constructor that opens a unit layout file and verifies its header.
+     * @param layoutFile File object contains unit layout file
+     * @throws IOException The file cannot be read.
+     * @throws FileSystemException The given file is not unit layout file.
+     */
+    public StreamingLayoutReader(File layoutFile) throws IOException {
+        this.layoutFile = layoutFile;
+        this.channel = FileChannel.open(layoutFile.toPath(), StandardOpenOption.READ);
+        this.buffer.limit(0);
+        if (!this.verifyUnitLayoutFile()) {
+            this.channel.close();
+            throw new FileSystemException(layoutFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Method for verify unit layout file.
+     * @return boolean value for whether the file starts with the header line
+     */
+    private boolean verifyUnitLayoutFile() throws IOException {
+        for (int i = 0; i < HEADER.length(); i++) {
+            if (nextByte() != HEADER.charAt(i)) {
+                return false;
+            }
+        }
+        int next = nextByte();
+        if (next == '\r') {
+            next = nextByte();
+        }
+        return next == '\n' || next == -1;
+    }
+
+    /**
+     * Method reading all units of the layout file and compiling them into an engine.
+     * Unit IDs and edge IDs are assigned in the same way as UnitLayoutReader does.
+     * @return new engine holding the layout
+     * @throws IOException The file cannot be read.
+     * @throws FileSystemException A line of the file is malformed.
+     */
+    public CompiledEngine read() throws IOException {
+        try {
+            this.readAllLines();
+        } finally {
+            this.channel.close();
+        }
+        Topology topology = Topology.fromLayout(this.unitIds, this.previousUnitIds);
+        return CompiledEngine.of(topology, this.states);
+    }
+
+    /**
+     * Method reading all units of the layout file and compiling them into an engine with renumbered units.
+     * Connected units are placed close to each other in the state words, while unit IDs and edge IDs
+     * are assigned from the file as usual.
+     * @param unitOrder order of the units in the engine
+     * @return new engine holding the layout
+     * @throws IOException The file cannot be read.
+     * @throws FileSystemException A line of the file is malformed.
+     */
+    public CompiledEngine read(UnitOrder unitOrder) throws IOException {
+        CompiledEngine engine = this.read();
+        return unitOrder == UnitOrder.KEEP ? engine : engine.reorder(unitOrder);
+    }
+
+    /**
+     * Parse every line into the primitive arrays.
+     */
+    private void readAllLines() throws IOException {
+        long[] fields = new long[4];
+        IdSet usedIds = null;
+        long nextId = 1;
+        while (true) {
+            int first = skipBlank();
+            if (first == -1) {
+                break;
+            }
+            this.line++;
+            if (first != 'A') {
+                throw malformed("unit type " + (char) first + " is not supported");
+            }
+            int next = nextByte();
+            if (next != ' ' && next != '\t') {
+                throw malformed("unit type must be followed by a space");
+            }
+            int fieldCount = readFields(fields);
+            if (fieldCount != 3 && fieldCount != 4) {
+                throw malformed("expected 3 or 4 numbers but found " + fieldCount);
+            }
+            ensureCapacity(this.unitCount + 1);
+            int index = this.unitCount++;
+            int offset = fieldCount - 3;
+            long id;
+            if (offset == 1) {
+                id = fields[0];
+                if (!this.explicitIds) {
+                    // Keep track of implicit IDs given so far, as explicit IDs can collide with them.
+                    usedIds = new IdSet(index);
+                    for (int i = 0; i < index; i++) {
+                        usedIds.add(this.unitIds[i]);
+                    }
+                    this.explicitIds = true;
+                }
+            } else {
+                boolean used = usedIds != null ? usedIds.contains(nextId)
+                        : index > 0 && this.unitIds[index - 1] == nextId;
+                if (used) {
+                    nextId++;
+                }
+                id = nextId;
+            }
+            if (usedIds != null) {
+                usedIds.add(id);
+            }
+            this.unitIds[index] = id;
+            this.previousUnitIds[index << 1] = fields[offset];
+            this.previousUnitIds[(index << 1) + 1] = fields[offset + 1];
+            if (fields[offset + 2] != 0) {
+                this.states[index >>> 6] |= 1L << index;
+            }
+        }
+        this.unitIds = Arrays.copyOf(this.unitIds, this.unitCount);
+        this.previousUnitIds = Arrays.copyOf(this.previousUnitIds, this.unitCount << 1);
+        this.states = Arrays.copyOf(this.states, (this.unitCount + 63) >>> 6);
+    }
+
+    /**
+     * Read the numbers of the rest of a line.
+     * @return number of fields read
+     */
+    private int readFields(long[] fields) throws IOException {
+        int count = 0;
+        int next = nextByte();
+        while (true) {
+            while (next == ' ' || next == '\t' || next == '\r') {
+                next = nextByte();
+            }
+            if (next == '\n' || next == -1) {
+                return count;
+            }
+            boolean negative = next == '-';
+            if (negative) {
+                next = nextByte();
+            }
+            if (next < '0' || next > '9') {
+                throw malformed("unexpected character " + (char) next);
+            }
+            long value = 0;
+            while (next >= '0' && next <= '9') {
+                value = value * 10 + (next - '0');
+                next = nextByte();
+            }
+            if (count == fields.length) {
+                throw malformed("too many numbers");
+            }
+            fields[count++] = negative ? -value : value;
+        }
+    }
+
+    /**
+     * Skip empty lines.
+     * @return first byte of the next line, or -1 at the end of the file
+     */
+    private int skipBlank() throws IOException {
+        int next = nextByte();
+        while (next == '\n' || next == '\r') {
+            next = nextByte();
+        }
+        return next;
+    }
+
+    private int nextByte() throws IOException {
+        if (!this.buffer.hasRemaining()) {
+            this.buffer.clear();
+            if (this.channel.read(this.buffer) <= 0) {
+                this.buffer.limit(0);
+                return -1;
+            }
+            this.buffer.flip();
+        }
+        return this.buffer.get() & 0xFF;
+    }
+
+    private void ensureCapacity(int units) {
+        if (units > this.unitIds.length) {
+            int capacity = Math.max(units, this.unitIds.length + (this.unitIds.length >> 1));
+            this.unitIds = Arrays.copyOf(this.unitIds, capacity);
+            this.previousUnitIds = Arrays.copyOf(this.previousUnitIds, capacity << 1);
+        }
+        if ((units + 63) >>> 6 > this.states.length) {
+            this.states = Arrays.copyOf(this.states, this.states.length << 1);
+        }
+    }
+
+    private FileSystemException malformed(String reason) {
+        return new FileSystemException(this.layoutFile.getAbsolutePath(), null, "line " + this.line + ": " + reason);
+    }
+
+    /**
+     * Set of unit IDs in an open-addressed table of primitive longs, so that IDs are not boxed.
+     * Empty entries hold {@link Long#MIN_VALUE}, and that ID itself is kept in a flag.
+     */
+    private static final class IdSet {
+
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private long[] table;
+        private int shift;
+        private int size;
+        private boolean containsEmpty;
+
+        private IdSet(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected) << 1);
+            this.table = new long[capacity];
+            this.shift = 64 - Integer.numberOfTrailingZeros(capacity);
+            Arrays.fill(this.table, EMPTY);
+        }
+
+        private boolean contains(long id) {
+            if (id == EMPTY) {
+                return this.containsEmpty;
+            }
+            int mask = this.table.length - 1;
+            for (int i = this.slotOf(id); ; i = (i + 1) & mask) {
+                if (this.table[i] == id) {
+                    return true;
+                }
+                if (this.table[i] == EMPTY) {
+                    return false;
+                }
+            }
+        }
+
+        private void add(long id) {
+            if (id == EMPTY) {
+                this.containsEmpty = true;
+                return;
+            }
+            int mask = this.table.length - 1;
+            int i = this.slotOf(id);
+            while (this.table[i] != EMPTY) {
+                if (this.table[i] == id) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            this.table[i] = id;
+            if (++this.size > this.table.length >>> 1) {
+                this.grow();
+            }
+        }
+
+        private int slotOf(long id) {
+            return (int) ((id * 0x9E3779B97F4A7C15L) >>> this.shift);
+        }
+
+        private void grow() {
+            long[] old = this.table;
+            this.table = new long[old.length << 1];
+            this.shift--;
+            this.size = 0;
+            Arrays.fill(this.table, EMPTY);
+            for (long id : old) {
+                if (id != EMPTY) {
+                    this.add(id);
+                }
+            }
+        }
+    }
+}
@@ -28,7 +28,7 @@ public class UnitLayoutReader {
      * Data containing layout for unit of machine read from file.
      * An element of this list includes the details of particular unit and its edges.
      */
-    private final List<Map<String, Object>> lineData = new LinkedList<>();
+    private final List<Map<String, Object>> lineData = new ArrayList<>();
 
     /**
      * Map containing units of current machine.
@@ -128,7 +128,9 @@ public class UnitLayoutReader {
         }
         Map<Long, Edge> edgeMap = new HashMap<>();
         long id = 1;
-        for (Map<String, Object> unitData : this.lineData) {
+        // Units are created in the order of lines, so the head unit of a line has the same sequence number.
+        for (int sequence = 0; sequence < this.lineData.size(); sequence++) {
+            Map<String, Object> unitData = this.lineData.get(sequence);
             if (unitData.get("previousUnitId") instanceof List<?> previousUnitIds) {
                 for (Object obj : previousUnitIds) {
                     if (obj instanceof Long previousId) {
@@ -138,8 +140,8 @@ public class UnitLayoutReader {
                             }
                             Edge newEdge = Edge.builder()
                                     .id(id)
-                                    .tailUnit(this.currentUnitList.get(Integer.parseInt(String.valueOf(previousId - 1))))
-                                    .headUnit(this.currentUnitList.get(lineData.indexOf(unitData)))
+                                    .tailUnit(this.currentUnitList.get((int) (previousId - 1)))
+                                    .headUnit(this.currentUnitList.get(sequence))
                                     .stateDeliver(new StateDeliver())
                                     .build();
                             edgeMap.put(newEdge.getId(), newEdge);
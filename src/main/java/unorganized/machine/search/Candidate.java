@@ -0,0 +1,32 @@
+package unorganized.machine.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Mutated machine expressed as the edges reversed from the base machine, with its fitness.
+ * @author altair823
+ * @see MutationSearch
+ */
+@Getter
+@AllArgsConstructor
+public class Candidate {
+
+    /**
+     * IDs of the edges reversed from the base machine, in ascending order.
+     */
+    private final long[] flippedEdgeIds;
+
+    /**
+     * Fitness of the candidate.
+     */
+    private final double fitness;
+
+    @Override
+    public String toString() {
+        return "fitness: " + this.fitness + "\n"
+                + "flipped edges: " + Arrays.toString(this.flippedEdgeIds) + "\n";
+    }
+}
@@ -0,0 +1,17 @@
+package unorganized.machine.search;
+
+/**
+ * Score of a candidate machine calculated from the states of its output units.
+ * Implementations are called from several threads at once and must not keep state between calls.
+ * @author altair823
+ * @see MutationSearch
+ */
+@FunctionalInterface
+public interface FitnessFunction {
+    /**
+     * Calculating method for the fitness of a candidate. A higher fitness is better.
+     * @param outputs states of the output units, bit {@code i} holding the state of the i-th output unit
+     * @return fitness of the candidate
+     */
+    double evaluate(long[] outputs);
+}
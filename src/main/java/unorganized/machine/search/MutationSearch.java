@@ -0,0 +1,280 @@
+package unorganized.machine.search;
+
+import lombok.Builder;
+import lombok.Getter;
+import unorganized.machine.control.Control;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.engine.Probe;
+import unorganized.machine.engine.StopCondition;
+import unorganized.machine.engine.Topology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Search tool that looks for machines of a high fitness by mutating the deliver rules of a base machine.
+ * A candidate is expressed as the IDs of the edges reversed from the base machine, so all candidates share
+ * the topology and the states of the base engine. Each worker thread evaluates candidates on its own copy
+ * of the base engine by reversing the edges of the candidate, running the pulses from the base states,
+ * scoring the output units and reversing the edges back.
+ * Every generation mutates candidates picked from the best ones kept so far, and the best candidates
+ * among the old and new ones are kept for the next generation.
+ * Each worker draws from its own split of a seeded random generator, so a search with the same seed
+ * and parallelism always gives the same result.
+ * @author altair823
+ * @see Candidate
+ * @see SearchResult
+ */
+@Getter
+@Builder
+public class MutationSearch {
+
+    /**
+     * Fitness of a candidate calculated from its output units.
+     */
+    private final FitnessFunction fitness;
+
+    /**
+     * IDs of the units passed to the fitness function, in the order of the bits of the outputs.
+     */
+    private final long[] outputUnitIds;
+
+    /**
+     * Number of pulses made from the base states before the output units are scored.
+     */
+    @Builder.Default
+    private final long pulses = 16;
+
+    /**
+     * Number of edges reversed from the parent to make a new candidate.
+     */
+    @Builder.Default
+    private final int flipsPerCandidate = 1;
+
+    /**
+     * Number of new candidates evaluated in every generation.
+     */
+    @Builder.Default
+    private final int candidatesPerGeneration = 256;
+
+    /**
+     * Number of best candidates kept between generations and returned.
+     */
+    @Builder.Default
+    private final int bestCount = 8;
+
+    /**
+     * Number of worker threads evaluating candidates.
+     */
+    @Builder.Default
+    private final int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Seed of the random generator choosing parents and reversed edges.
+     */
+    @Builder.Default
+    private final long seed = 0;
+
+    /**
+     * Method searching from the machine of a control.
+     * The control is compiled if it is not compiled yet, and its machine is not changed.
+     * @param control control holding the base machine
+     * @param generations number of generations
+     * @return best candidates found and the throughput of the search
+     */
+    public SearchResult search(Control control, int generations) {
+        if (control.getEngine() == null) {
+            control.compile();
+        }
+        return this.search(control.getEngine(), generations);
+    }
+
+    /**
+     * Method searching from a compiled machine. The engine is not changed.
+     * @param base engine holding the base machine and the states every candidate starts from
+     * @param generations number of generations
+     * @return best candidates found and the throughput of the search
+     * @throws IllegalArgumentException An option is out of range, an output unit does not exist,
+     * or the machine has no edges.
+     */
+    public SearchResult search(CompiledEngine base, int generations) {
+        if (this.fitness == null || this.outputUnitIds == null) {
+            throw new IllegalArgumentException("Fitness function and output units must be given.");
+        }
+        if (generations < 0 || this.pulses < 0 || this.flipsPerCandidate < 1 || this.candidatesPerGeneration < 1
+                || this.bestCount < 1 || this.parallelism < 1) {
+            throw new IllegalArgumentException("Search options are out of range.");
+        }
+        Evaluation evaluation = new Evaluation(base);
+        long start = System.nanoTime();
+        List<Candidate> best = new ArrayList<>();
+        best.add(new Candidate(new long[0], evaluation.evaluate(base.copy(),
+                new Probe(this.outputUnitIds), new long[0])));
+        long candidateCount = 1;
+        SplittableRandom root = new SplittableRandom(this.seed);
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        try {
+            for (int generation = 0; generation < generations; generation++) {
+                Candidate[] children = new Candidate[this.candidatesPerGeneration];
+                List<Candidate> parents = best;
+                List<Callable<Void>> tasks = new ArrayList<>(this.parallelism);
+                for (int worker = 0; worker < this.parallelism; worker++) {
+                    int from = (int) ((long) this.candidatesPerGeneration * worker / this.parallelism);
+                    int to = (int) ((long) this.candidatesPerGeneration * (worker + 1) / this.parallelism);
+                    SplittableRandom random = root.split();
+                    tasks.add(() -> {
+                        evaluation.mutate(parents, children, from, to, random);
+                        return null;
+                    });
+                }
+                for (Future<Void> future : pool.invokeAll(tasks)) {
+                    future.get();
+                }
+                candidateCount += children.length;
+                best = this.keepBest(best, children);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return new SearchResult(best, candidateCount, System.nanoTime() - start);
+    }
+
+    /**
+     * Keep the best distinct candidates among the kept and the new ones.
+     * The kept candidates come first, so they win ties against new candidates.
+     */
+    private List<Candidate> keepBest(List<Candidate> kept, Candidate[] children) {
+        List<Candidate> all = new ArrayList<>(kept.size() + children.length);
+        all.addAll(kept);
+        all.addAll(Arrays.asList(children));
+        all.sort(Comparator.comparingDouble(Candidate::getFitness).reversed());
+        List<Candidate> best = new ArrayList<>(this.bestCount);
+        for (Candidate candidate : all) {
+            if (best.size() == this.bestCount) {
+                break;
+            }
+            if (best.stream().noneMatch(other -> Arrays.equals(other.getFlippedEdgeIds(),
+                    candidate.getFlippedEdgeIds()))) {
+                best.add(candidate);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Reverse edges in a sorted set of edge IDs. An edge reversed twice is removed from the set.
+     * @param flips sorted IDs of the reversed edges of the parent
+     * @param edges IDs of the edges to reverse, in any order and possibly repeated
+     * @return sorted IDs of the reversed edges of the child
+     */
+    static long[] toggle(long[] flips, long[] edges) {
+        long[] all = Arrays.copyOf(flips, flips.length + edges.length);
+        System.arraycopy(edges, 0, all, flips.length, edges.length);
+        Arrays.sort(all);
+        int count = 0;
+        for (int i = 0; i < all.length; ) {
+            int j = i;
+            while (j < all.length && all[j] == all[i]) {
+                j++;
+            }
+            if (((j - i) & 1) == 1) {
+                all[count++] = all[i];
+            }
+            i = j;
+        }
+        return Arrays.copyOf(all, count);
+    }
+
+    /**
+     * Data of a base machine shared by the worker threads of a search.
+     */
+    private class Evaluation {
+
+        private final CompiledEngine base;
+        private final long[] initialStates;
+
+        /**
+         * IDs of all edges of the base machine, from which reversed edges are drawn.
+         */
+        private final long[] edgeIds;
+
+        private Evaluation(CompiledEngine base) {
+            Topology topology = base.getTopology();
+            this.base = base;
+            this.initialStates = base.getStates().clone();
+            // Reading the output units once checks that they exist.
+            new Probe(MutationSearch.this.outputUnitIds).read(base);
+            long[] slotEdgeIds = topology.getSlotEdgeIds();
+            long[] edgeIds = new long[slotEdgeIds.length];
+            int edgeCount = 0;
+            for (int slot = 0; slot < slotEdgeIds.length; slot++) {
+                if (topology.isWired(slot >>> 1)) {
+                    edgeIds[edgeCount++] = slotEdgeIds[slot];
+                }
+            }
+            if (edgeCount == 0) {
+                throw new IllegalArgumentException("Machine has no edges to reverse.");
+            }
+            this.edgeIds = Arrays.copyOf(edgeIds, edgeCount);
+        }
+
+        /**
+         * Make and evaluate a range of new candidates on a copy of the base engine.
+         * @param parents candidates the new ones are mutated from
+         * @param children receives the new candidates
+         * @param from first candidate, inclusive
+         * @param to last candidate, exclusive
+         * @param random random generator of the worker
+         */
+        private void mutate(List<Candidate> parents, Candidate[] children, int from, int to, SplittableRandom random) {
+            CompiledEngine engine = this.base.copy();
+            Probe probe = new Probe(MutationSearch.this.outputUnitIds);
+            long[] edges = new long[MutationSearch.this.flipsPerCandidate];
+            for (int i = from; i < to; i++) {
+                Candidate parent = parents.get(random.nextInt(parents.size()));
+                for (int j = 0; j < edges.length; j++) {
+                    edges[j] = this.edgeIds[random.nextInt(this.edgeIds.length)];
+                }
+                long[] flips = toggle(parent.getFlippedEdgeIds(), edges);
+                children[i] = new Candidate(flips, this.evaluate(engine, probe, flips));
+            }
+        }
+
+        /**
+         * Evaluate a candidate on an engine holding the deliver rules of the base machine.
+         * The deliver rules are restored before returning.
+         * @param engine copy of the base engine owned by the calling thread
+         * @param probe probe of the output units owned by the calling thread
+         * @param flips IDs of the edges reversed by the candidate
+         * @return fitness of the candidate
+         */
+        private double evaluate(CompiledEngine engine, Probe probe, long[] flips) {
+            engine.setStates(this.initialStates);
+            for (long edgeId : flips) {
+                engine.reverseEdge(edgeId);
+            }
+            engine.run(MutationSearch.this.pulses, StopCondition.NONE);
+            for (long edgeId : flips) {
+                engine.reverseEdge(edgeId);
+            }
+            long[] outputs = new long[Topology.wordsFor(probe.size())];
+            probe.read(engine, outputs);
+            return MutationSearch.this.fitness.evaluate(outputs);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package unorganized.machine.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Result of a mutation search.
+ * @author altair823
+ * @see MutationSearch
+ */
+@Getter
+@AllArgsConstructor
+public class SearchResult {
+
+    /**
+     * Best candidates found, the best first.
+     */
+    private final List<Candidate> bestCandidates;
+
+    /**
+     * Number of candidates evaluated.
+     */
+    private final long candidateCount;
+
+    /**
+     * Time spent on the search in nanoseconds.
+     */
+    private final long elapsedNanos;
+
+    /**
+     * Get the best candidate found.
+     * @return candidate with the highest fitness
+     */
+    public Candidate getBest() {
+        return this.bestCandidates.get(0);
+    }
+
+    /**
+     * Get the throughput of the search.
+     * @return number of candidates evaluated per second
+     */
+    public double getCandidatesPerSecond() {
+        return this.candidateCount * 1e9 / Math.max(1L, this.elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "best fitness: " + this.getBest().getFitness() + "\n"
+                + "candidates: " + this.candidateCount + "\n"
+                + "candidates per second: " + this.getCandidatesPerSecond() + "\n";
+    }
+}
@@ -0,0 +1,270 @@
+package unorganized.machine.snapshot;
+
+import unorganized.machine.control.Control;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.engine.Topology;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reader class restoring snapshots written by SnapshotWriter into a compiled engine or a control.
+ * Snapshots are applied in order, so restoring the n-th snapshot replays the full snapshot and the incremental
+ * snapshots before it. Words are restored by unit ID, so an engine ordering the units in another way,
+ * such as a reordered engine of the same layout, receives the same states and inversions.
+ * @author altair823
+ * @see SnapshotWriter
+ */
+public class SnapshotReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final String source;
+    private final ByteBuffer buffer;
+    private final FileChannel channel;
+
+    /**
+     * Unit ID of every unit index of the saved engine.
+     */
+    private final long[] unitIds;
+    private final long[] states;
+    private final long[] inversions;
+    private long pulseCount;
+    private boolean full;
+
+    /**
+     * Constructor that opens a snapshot file.
+     * @param snapshotFile file written by SnapshotWriter
+     * @throws IOException The file cannot be read.
+     * @throws FileSystemException The given file is not a snapshot file.
+     */
+    public SnapshotReader(File snapshotFile) throws IOException {
+        this.source = snapshotFile.getAbsolutePath();
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.buffer.limit(0);
+        this.channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ);
+        try {
+            int[] header = this.readHeader();
+            this.states = new long[header[0]];
+            this.inversions = new long[header[1]];
+            this.unitIds = new long[header[2]];
+            this.readLongs(this.unitIds);
+        } catch (IOException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Constructor that reads snapshots from a byte buffer.
+     * @param snapshots buffer positioned at the start of the snapshot stream
+     * @throws FileSystemException The buffer does not hold a snapshot stream.
+     */
+    public SnapshotReader(ByteBuffer snapshots) throws FileSystemException {
+        this.source = "buffer";
+        this.buffer = snapshots;
+        this.channel = null;
+        try {
+            int[] header = this.readHeader();
+            this.states = new long[header[0]];
+            this.inversions = new long[header[1]];
+            this.unitIds = new long[header[2]];
+            this.readLongs(this.unitIds);
+        } catch (FileSystemException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Method restoring the latest snapshot into an engine.
+     * @param engine engine with the same topology as the saved one
+     * @throws IOException The snapshots cannot be read.
+     */
+    public void restore(CompiledEngine engine) throws IOException {
+        this.restore(engine, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Method restoring a snapshot into an engine. If the engine orders the units in another way,
+     * the words are moved to the unit indexes of the engine by unit ID.
+     * @param engine engine with the same units as the saved one, in any order
+     * @param snapshots number of snapshots to apply from the current position, or more to apply all of them
+     * @return number of applied snapshots
+     * @throws IOException The snapshots cannot be read.
+     * @throws IllegalArgumentException The engine does not have the units of the saved one.
+     */
+    public int restore(CompiledEngine engine, int snapshots) throws IOException {
+        Topology topology = engine.getTopology();
+        int[] indexes = Arrays.equals(topology.getUnitIds(), this.unitIds) ? null : this.indexesIn(topology);
+        int applied = 0;
+        while (applied < snapshots && this.readRecord()) {
+            applied++;
+        }
+        if (!this.full) {
+            throw new FileSystemException(this.source, null, "no full snapshot");
+        }
+        if (indexes == null) {
+            engine.setStates(this.states);
+            engine.setInversions(this.inversions);
+        } else {
+            this.restoreReordered(engine, indexes);
+        }
+        engine.setPulseCount(this.pulseCount);
+        return applied;
+    }
+
+    /**
+     * Find the unit index in a topology of every saved unit.
+     * @throws IllegalArgumentException The topology does not have the saved units.
+     */
+    private int[] indexesIn(Topology topology) {
+        if (topology.getUnitCount() != this.unitIds.length) {
+            throw new IllegalArgumentException("The engine does not match the snapshot.");
+        }
+        int[] indexes = new int[this.unitIds.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = topology.indexOf(this.unitIds[i]);
+            if (indexes[i] < 0) {
+                throw new IllegalArgumentException("Unit " + this.unitIds[i] + " of the snapshot does not exist.");
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Move the restored words from the saved unit indexes to the unit indexes of an engine.
+     * Both input slots of a unit keep their order, as they are ordered by edge ID in every topology.
+     */
+    private void restoreReordered(CompiledEngine engine, int[] indexes) {
+        long[] states = new long[this.states.length];
+        long[] inversions = new long[this.inversions.length];
+        for (int i = 0; i < indexes.length; i++) {
+            int index = indexes[i];
+            states[index >>> 6] |= ((this.states[i >>> 6] >>> i) & 1L) << index;
+            for (int k = 0; k < 2; k++) {
+                int slot = (i << 1) + k;
+                int newSlot = (index << 1) + k;
+                inversions[newSlot >>> 6] |= ((this.inversions[slot >>> 6] >>> slot) & 1L) << newSlot;
+            }
+        }
+        engine.setStates(states);
+        engine.setInversions(inversions);
+    }
+
+    /**
+     * Method restoring the latest snapshot into a control. The control is compiled if it is not compiled yet.
+     * @param control control with the same machine as the saved one
+     * @throws IOException The snapshots cannot be read.
+     */
+    public void restore(Control control) throws IOException {
+        if (control.getEngine() == null) {
+            control.compile();
+        }
+        this.restore(control.getEngine());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.channel != null) {
+            this.channel.close();
+        }
+    }
+
+    private int[] readHeader() throws IOException {
+        if (!this.ensureRemaining(20) || this.buffer.getInt() != SnapshotWriter.MAGIC) {
+            throw new FileSystemException(this.source, null, "not a snapshot");
+        }
+        int version = this.buffer.getInt();
+        if (version != SnapshotWriter.VERSION) {
+            throw new FileSystemException(this.source, null, "unsupported version " + version);
+        }
+        int[] header = {this.buffer.getInt(), this.buffer.getInt(), this.buffer.getInt()};
+        if (header[2] < 0 || header[0] != Topology.wordsFor(header[2])
+                || header[1] != Topology.wordsFor(header[2] << 1)) {
+            throw new FileSystemException(this.source, null, "header does not match " + header[2] + " units");
+        }
+        return header;
+    }
+
+    /**
+     * Apply the next record to the restored words.
+     * @return false at the end of the snapshots
+     */
+    private boolean readRecord() throws IOException {
+        if (!this.ensureRemaining(9)) {
+            if (this.buffer.hasRemaining()) {
+                throw new FileSystemException(this.source, null, "snapshot is truncated");
+            }
+            return false;
+        }
+        byte type = this.buffer.get();
+        long recordPulseCount = this.buffer.getLong();
+        if (type == SnapshotWriter.FULL) {
+            this.readLongs(this.states);
+            this.readLongs(this.inversions);
+            this.full = true;
+        } else if (type == SnapshotWriter.INCREMENTAL && this.full) {
+            this.readChangedWords(this.states);
+            this.readChangedWords(this.inversions);
+        } else {
+            throw new FileSystemException(this.source, null, "unexpected snapshot record " + type);
+        }
+        this.pulseCount = recordPulseCount;
+        return true;
+    }
+
+    private void readChangedWords(long[] words) throws IOException {
+        this.require(4);
+        int changed = this.buffer.getInt();
+        for (int i = 0; i < changed; i++) {
+            this.require(12);
+            int index = this.buffer.getInt();
+            if (index < 0 || index >= words.length) {
+                throw new FileSystemException(this.source, null, "word index " + index + " is out of range");
+            }
+            words[index] = this.buffer.getLong();
+        }
+    }
+
+    private void readLongs(long[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            this.require(8);
+            values[i] = this.buffer.getLong();
+        }
+    }
+
+    private void require(int bytes) throws IOException {
+        if (!this.ensureRemaining(bytes)) {
+            throw new FileSystemException(this.source, null, "snapshot is truncated");
+        }
+    }
+
+    /**
+     * Make sure the buffer holds a number of bytes, reading more from the file if needed.
+     * @return false if the snapshots end before that
+     */
+    private boolean ensureRemaining(int bytes) throws IOException {
+        if (this.buffer.remaining() >= bytes) {
+            return true;
+        }
+        if (this.channel == null) {
+            return false;
+        }
+        this.buffer.compact();
+        while (this.buffer.position() < bytes) {
+            if (this.channel.read(this.buffer) < 0) {
+                break;
+            }
+        }
+        this.buffer.flip();
+        return this.buffer.remaining() >= bytes;
+    }
+}
@@ -0,0 +1,186 @@
+package unorganized.machine.snapshot;
+
+import unorganized.machine.engine.CompiledEngine;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writer class saving the running state of a compiled engine as snapshots.
+ * A snapshot holds the packed unit states, the packed edge inversions and the pulse counter.
+ * An incremental snapshot holds only the words that changed since the previous snapshot of the writer,
+ * so a long run can be checkpointed every few thousand pulses at the cost of the changed words.
+ * <p>
+ * The stream starts with the magic number, the format version, the number of state words, the number of
+ * inversion words and the number of units as ints, followed by the unit ID of every unit index, so that the words
+ * can be restored into an engine ordering the units in another way. Every snapshot is a record of a type byte
+ * and the pulse counter. A full record is followed by all state words and all inversion words, and an incremental
+ * record by a count of changed state words, pairs of word index and word, and the same for inversion words.
+ * @author altair823
+ * @see SnapshotReader
+ */
+public class SnapshotWriter implements Closeable {
+
+    static final int MAGIC = 0x554D534E;
+    static final int VERSION = 2;
+    static final byte FULL = 1;
+    static final byte INCREMENTAL = 2;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final CompiledEngine engine;
+    private final ByteBuffer buffer;
+    private final FileChannel channel;
+
+    /**
+     * Words of the previous snapshot. Null until the first snapshot is written.
+     */
+    private long[] lastStates;
+    private long[] lastInversions;
+
+    /**
+     * Constructor that creates a snapshot file for an engine.
+     * @param engine engine to save
+     * @param snapshotFile file to create or overwrite
+     * @throws IOException The file cannot be written.
+     */
+    public SnapshotWriter(CompiledEngine engine, File snapshotFile) throws IOException {
+        this.engine = engine;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.writeHeader();
+    }
+
+    /**
+     * Constructor that writes snapshots of an engine into a byte buffer.
+     * @param engine engine to save
+     * @param target buffer receiving snapshots
+     * @throws java.nio.BufferOverflowException The buffer is too small for the header.
+     */
+    public SnapshotWriter(CompiledEngine engine, ByteBuffer target) {
+        this.engine = engine;
+        this.buffer = target;
+        this.channel = null;
+        try {
+            this.writeHeader();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the size in bytes of a stream holding one full snapshot of an engine.
+     * @param engine engine to save
+     * @return size in bytes
+     */
+    public static int fullSize(CompiledEngine engine) {
+        return 20 + 9 + (engine.getTopology().getUnitCount() + engine.getStates().length
+                + engine.getInversions().length) * 8;
+    }
+
+    /**
+     * Method writing a snapshot with all words of the engine.
+     * @throws IOException The snapshot cannot be written.
+     */
+    public void writeFull() throws IOException {
+        long[] states = this.engine.getStates();
+        long[] inversions = this.engine.getInversions();
+        this.ensureRemaining(9);
+        this.buffer.put(FULL);
+        this.buffer.putLong(this.engine.getPulseCount());
+        this.putLongs(states);
+        this.putLongs(inversions);
+        this.lastStates = states.clone();
+        this.lastInversions = inversions.clone();
+        this.flush();
+    }
+
+    /**
+     * Method writing a snapshot with the words changed since the previous snapshot.
+     * The first snapshot of the writer is always a full one.
+     * @throws IOException The snapshot cannot be written.
+     */
+    public void writeIncremental() throws IOException {
+        if (this.lastStates == null) {
+            this.writeFull();
+            return;
+        }
+        this.ensureRemaining(9);
+        this.buffer.put(INCREMENTAL);
+        this.buffer.putLong(this.engine.getPulseCount());
+        this.putChangedWords(this.engine.getStates(), this.lastStates);
+        this.putChangedWords(this.engine.getInversions(), this.lastInversions);
+        this.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.channel != null) {
+            this.flush();
+            this.channel.close();
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        this.ensureRemaining(20);
+        this.buffer.putInt(MAGIC);
+        this.buffer.putInt(VERSION);
+        this.buffer.putInt(this.engine.getStates().length);
+        this.buffer.putInt(this.engine.getInversions().length);
+        this.buffer.putInt(this.engine.getTopology().getUnitCount());
+        this.putLongs(this.engine.getTopology().getUnitIds());
+        this.flush();
+    }
+
+    /**
+     * Write the words that differ from the last words, and update the last words.
+     */
+    private void putChangedWords(long[] words, long[] lastWords) throws IOException {
+        int changed = 0;
+        for (int i = 0; i < words.length; i++) {
+            if (words[i] != lastWords[i]) {
+                changed++;
+            }
+        }
+        this.ensureRemaining(4);
+        this.buffer.putInt(changed);
+        for (int i = 0; i < words.length && changed > 0; i++) {
+            if (words[i] != lastWords[i]) {
+                this.ensureRemaining(12);
+                this.buffer.putInt(i);
+                this.buffer.putLong(words[i]);
+                lastWords[i] = words[i];
+                changed--;
+            }
+        }
+    }
+
+    private void putLongs(long[] values) throws IOException {
+        for (long value : values) {
+            this.ensureRemaining(8);
+            this.buffer.putLong(value);
+        }
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (this.channel != null && this.buffer.remaining() < bytes) {
+            this.flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        if (this.channel == null) {
+            return;
+        }
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+}
@@ -0,0 +1,243 @@
+package unorganized.machine.trace;
+
+import lombok.Getter;
+import unorganized.machine.engine.CompiledEngine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pipeline stage that writes the states of a running machine on a background thread.
+ * The pulse loop copies the packed states into a buffer and hands it over through a bounded lock-free queue,
+ * and the writer thread records the buffers into a sink and hands them back through a second queue to be reused,
+ * so recording allocates nothing once the buffers exist. The sink is flushed whenever the queue runs empty.
+ * When the queue is full, new states either wait or are dropped, by the overflow policy.
+ * A writer must be fed by one thread at a time.
+ * @author altair823
+ * @see TraceWriter
+ */
+public class AsyncTraceWriter implements Closeable {
+
+    /**
+     * Number of busy waits before a waiting thread parks.
+     */
+    private static final int SPIN_LIMIT = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    private final StateSink sink;
+    private final int wordCount;
+
+    /**
+     * What happens to new states when the queue is full.
+     */
+    @Getter
+    private final OverflowPolicy overflowPolicy;
+
+    /**
+     * Buffers holding states to write, and written buffers to reuse.
+     */
+    private final SpscRing<long[]> filled;
+    private final SpscRing<long[]> free;
+
+    /**
+     * Maximum number of buffers, and the number created so far. Touched by the producer only.
+     */
+    private final int maxBuffers;
+    private int bufferCount;
+
+    /**
+     * Buffer of dropped states kept by the producer for the next states.
+     */
+    private long[] spare;
+
+    /**
+     * Number of states handed to the writer thread and of states dropped. Touched by the producer only.
+     */
+    @Getter
+    private long recordedCount;
+    @Getter
+    private long droppedCount;
+
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * First error of the writer thread, reported to the producer.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Constructor that starts a writer thread for a sink.
+     * @param sink destination of the states, used by the writer thread only until the writer is closed
+     * @param wordCount number of state words of every record
+     * @param capacity number of records the queue holds
+     * @param overflowPolicy what happens to new states when the queue is full
+     */
+    public AsyncTraceWriter(StateSink sink, int wordCount, int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.sink = sink;
+        this.wordCount = wordCount;
+        this.overflowPolicy = overflowPolicy;
+        this.filled = new SpscRing<>(capacity);
+        // The producer and the writer thread may each hold one buffer besides the full queue.
+        this.maxBuffers = this.filled.capacity() + 2;
+        this.free = new SpscRing<>(this.maxBuffers);
+        this.thread = new Thread(this::drain, "async-trace-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Method handing the current states of an engine to the writer thread.
+     * @param engine engine with the topology of the sink
+     * @return false if the states were dropped
+     * @throws IOException The writer thread failed to write earlier states.
+     */
+    public boolean record(CompiledEngine engine) throws IOException {
+        return this.record(engine.getStates());
+    }
+
+    /**
+     * Method handing packed states to the writer thread. The states are copied, so the array can be reused.
+     * @param states unit states, one bit per unit index
+     * @return false if the states were dropped
+     * @throws IOException The writer thread failed to write earlier states, or the wait was interrupted.
+     */
+    public boolean record(long[] states) throws IOException {
+        if (states.length != this.wordCount) {
+            throw new IllegalArgumentException("Number of state words does not match the writer.");
+        }
+        this.checkFailure();
+        if (this.closed) {
+            throw new IllegalStateException("The writer is closed.");
+        }
+        long[] buffer = this.spare != null ? this.spare : this.free.poll();
+        this.spare = null;
+        if (buffer == null && this.bufferCount < this.maxBuffers) {
+            buffer = new long[this.wordCount];
+            this.bufferCount++;
+        }
+        if (buffer == null && this.overflowPolicy == OverflowPolicy.BLOCK) {
+            for (int spins = 0; (buffer = this.free.poll()) == null; spins++) {
+                this.await(spins);
+            }
+        }
+        if (buffer == null) {
+            this.droppedCount++;
+            return false;
+        }
+        System.arraycopy(states, 0, buffer, 0, states.length);
+        for (int spins = 0; !this.filled.offer(buffer); spins++) {
+            if (this.overflowPolicy == OverflowPolicy.DROP) {
+                // The buffer was never handed over, so the producer keeps it.
+                this.spare = buffer;
+                this.droppedCount++;
+                return false;
+            }
+            this.await(spins);
+        }
+        this.recordedCount++;
+        return true;
+    }
+
+    /**
+     * Method writing all states handed over so far, stopping the writer thread and closing the sink.
+     * @throws IOException The writer thread failed, or the sink cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        LockSupport.unpark(this.thread);
+        // The sink belongs to the writer thread until it ends, so the wait is not cut short by an interrupt.
+        boolean interrupted = false;
+        while (this.thread.isAlive()) {
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            this.sink.close();
+        } catch (IOException e) {
+            if (this.failure == null) {
+                throw e;
+            }
+        }
+        this.checkFailure();
+    }
+
+    /**
+     * Loop of the writer thread. Buffers are written until the writer is closed and the queue is empty.
+     */
+    private void drain() {
+        boolean dirty = false;
+        int spins = 0;
+        try {
+            while (true) {
+                long[] buffer = this.filled.poll();
+                if (buffer != null) {
+                    this.sink.record(buffer);
+                    this.free.offer(buffer);
+                    dirty = true;
+                    spins = 0;
+                    continue;
+                }
+                if (dirty) {
+                    this.sink.flush();
+                    dirty = false;
+                }
+                if (this.closed) {
+                    // The producer stopped before closing, so a last poll sees everything it handed over.
+                    buffer = this.filled.poll();
+                    if (buffer == null) {
+                        return;
+                    }
+                    this.sink.record(buffer);
+                    this.free.offer(buffer);
+                    dirty = true;
+                    continue;
+                }
+                if (spins++ < SPIN_LIMIT) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            this.failure = e;
+        }
+    }
+
+    /**
+     * Wait for the writer thread, spinning first and then parking.
+     */
+    private void await(int spins) throws IOException {
+        this.checkFailure();
+        if (spins < SPIN_LIMIT) {
+            Thread.onSpinWait();
+            return;
+        }
+        LockSupport.parkNanos(PARK_NANOS);
+        if (Thread.interrupted()) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the writer.");
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (this.failure != null) {
+            throw new IOException("The writer thread failed.", this.failure);
+        }
+    }
+}
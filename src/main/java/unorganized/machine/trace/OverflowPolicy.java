@@ -0,0 +1,19 @@
+package unorganized.machine.trace;
+
+/**
+ * What an asynchronous writer does with new states when its queue is full.
+ * @author altair823
+ * @see AsyncTraceWriter
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Wait until the background writer frees a slot, so that no states are lost.
+     */
+    BLOCK,
+
+    /**
+     * Drop the new states and count them, so that the pulse loop never waits.
+     */
+    DROP
+}
@@ -0,0 +1,80 @@
+package unorganized.machine.trace;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free queue for exactly one producer thread and one consumer thread.
+ * Each side caches the last index it read of the other side, so it only touches the shared index
+ * when the queue looks full or empty.
+ * @param <T> type of the elements
+ * @author altair823
+ */
+class SpscRing<T> {
+
+    private final Object[] slots;
+    private final int mask;
+
+    /**
+     * Number of elements taken by the consumer and put by the producer.
+     */
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Head seen by the producer and tail seen by the consumer.
+     */
+    private long cachedHead;
+    private long cachedTail;
+
+    /**
+     * Constructor with a capacity rounded up to a power of two.
+     * @param capacity minimum number of elements
+     */
+    SpscRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new Object[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Put an element. Called by the producer only.
+     * @param element element to put
+     * @return false if the queue is full
+     */
+    boolean offer(T element) {
+        long tail = this.tail.get();
+        if (tail - this.cachedHead == this.slots.length) {
+            this.cachedHead = this.head.get();
+            if (tail - this.cachedHead == this.slots.length) {
+                return false;
+            }
+        }
+        this.slots[(int) tail & this.mask] = element;
+        this.tail.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * Take the oldest element. Called by the consumer only.
+     * @return oldest element, or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    T poll() {
+        long head = this.head.get();
+        if (head == this.cachedTail) {
+            this.cachedTail = this.tail.get();
+            if (head == this.cachedTail) {
+                return null;
+            }
+        }
+        int slot = (int) head & this.mask;
+        T element = (T) this.slots[slot];
+        this.slots[slot] = null;
+        this.head.lazySet(head + 1);
+        return element;
+    }
+
+    int capacity() {
+        return this.slots.length;
+    }
+}
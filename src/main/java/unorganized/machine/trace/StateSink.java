@@ -0,0 +1,25 @@
+package unorganized.machine.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of the packed unit states of every pulse, such as a trace file.
+ * @author altair823
+ * @see AsyncTraceWriter
+ */
+public interface StateSink extends Closeable {
+
+    /**
+     * Method recording packed unit states. The array may be reused by the caller after the method returns.
+     * @param states unit states, one bit per unit index
+     * @throws IOException The states cannot be written.
+     */
+    void record(long[] states) throws IOException;
+
+    /**
+     * Method writing buffered states to their destination.
+     * @throws IOException The states cannot be written.
+     */
+    void flush() throws IOException;
+}
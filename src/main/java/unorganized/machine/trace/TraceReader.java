@@ -0,0 +1,326 @@
+package unorganized.machine.trace;
+
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reader class giving random access to the records of a trace file written by TraceWriter.
+ * A record is decoded from the keyframe before it, and records read in ascending order are decoded
+ * one delta at a time. If the trace was not closed, the keyframes are found by scanning the records,
+ * and a record cut off at the end of the file is ignored.
+ * @author altair823
+ * @see TraceWriter
+ */
+public class TraceReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String source;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    /**
+     * File offset of the next byte read into the buffer.
+     */
+    private long readOffset;
+
+    /**
+     * Number of units and of state words of every record.
+     */
+    @Getter
+    private final int unitCount;
+    @Getter
+    private final int wordCount;
+
+    /**
+     * Number of records from one keyframe to the next.
+     */
+    @Getter
+    private final int keyframeInterval;
+
+    /**
+     * Unit IDs in the order of the state bits.
+     */
+    @Getter
+    private final long[] unitIds;
+
+    /**
+     * Number of records in the trace.
+     */
+    @Getter
+    private long recordCount;
+
+    private long[] keyframeOffsets;
+
+    /**
+     * States of the last decoded record, and its number. The number is -1 before the first record.
+     */
+    private final long[] current;
+    private long currentRecord = -1;
+
+    /**
+     * Constructor that opens a trace file and loads its keyframe index.
+     * @param traceFile file written by TraceWriter
+     * @throws IOException The file cannot be read.
+     * @throws FileSystemException The given file is not a trace file.
+     */
+    public TraceReader(File traceFile) throws IOException {
+        this.source = traceFile.getAbsolutePath();
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.buffer.limit(0);
+        this.channel = FileChannel.open(traceFile.toPath(), StandardOpenOption.READ);
+        try {
+            this.require(20);
+            if (this.buffer.getInt() != TraceWriter.MAGIC) {
+                throw new FileSystemException(this.source, null, "not a trace");
+            }
+            int version = this.buffer.getInt();
+            if (version != TraceWriter.VERSION) {
+                throw new FileSystemException(this.source, null, "unsupported version " + version);
+            }
+            this.unitCount = this.buffer.getInt();
+            this.wordCount = this.buffer.getInt();
+            this.keyframeInterval = this.buffer.getInt();
+            if (this.unitCount < 0 || this.wordCount != (this.unitCount + 63) >>> 6 || this.keyframeInterval < 1) {
+                throw new FileSystemException(this.source, null, "malformed header");
+            }
+            this.unitIds = new long[this.unitCount];
+            for (int index = 0; index < this.unitCount; index++) {
+                this.require(8);
+                this.unitIds[index] = this.buffer.getLong();
+            }
+            this.current = new long[this.wordCount];
+            if (!this.readIndex(20 + 8L * this.unitCount)) {
+                this.scanIndex(20 + 8L * this.unitCount);
+            }
+        } catch (IOException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Method reading the states of a record into a new array.
+     * @param record number of the record
+     * @return unit states, one bit per unit index
+     * @throws IOException The record cannot be read.
+     */
+    public long[] read(long record) throws IOException {
+        long[] states = new long[this.wordCount];
+        this.read(record, states);
+        return states;
+    }
+
+    /**
+     * Method reading the states of a record.
+     * @param record number of the record
+     * @param states receives the unit states, one bit per unit index
+     * @throws IOException The record cannot be read.
+     * @throws IndexOutOfBoundsException There is no such record.
+     */
+    public void read(long record, long[] states) throws IOException {
+        if (states.length != this.wordCount) {
+            throw new IllegalArgumentException("Number of state words does not match the trace.");
+        }
+        this.moveTo(record);
+        System.arraycopy(this.current, 0, states, 0, states.length);
+    }
+
+    /**
+     * Method reading the state of a unit in a record.
+     * @param record number of the record
+     * @param index unit index, which is the position of the unit ID in {@link #getUnitIds()}
+     * @return state of the unit
+     * @throws IOException The record cannot be read.
+     */
+    public boolean getState(long record, int index) throws IOException {
+        this.moveTo(record);
+        return (this.current[index >>> 6] & (1L << index)) != 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Decode a record into the current states, from the current record if it is before it in the same keyframe
+     * interval, and from the keyframe otherwise.
+     */
+    private void moveTo(long record) throws IOException {
+        if (record < 0 || record >= this.recordCount) {
+            throw new IndexOutOfBoundsException("Record " + record + " is out of " + this.recordCount + " records.");
+        }
+        long keyframe = record / this.keyframeInterval;
+        if (this.currentRecord < 0 || record < this.currentRecord
+                || keyframe != this.currentRecord / this.keyframeInterval) {
+            this.seek(this.keyframeOffsets[(int) keyframe]);
+            this.currentRecord = keyframe * this.keyframeInterval - 1;
+        }
+        try {
+            while (this.currentRecord < record) {
+                if (!this.decode()) {
+                    throw new FileSystemException(this.source, null, "trace is truncated");
+                }
+                this.currentRecord++;
+            }
+        } catch (IOException e) {
+            // The current states are partly decoded, so the next read starts from a keyframe.
+            this.currentRecord = -1;
+            throw e;
+        }
+    }
+
+    /**
+     * Load the keyframe index appended when the writer was closed.
+     * @param dataOffset offset of the first record
+     * @return false if the trace has no index
+     */
+    private boolean readIndex(long dataOffset) throws IOException {
+        long fileSize = this.channel.size();
+        if (fileSize < dataOffset + 16) {
+            return false;
+        }
+        this.seek(fileSize - 16);
+        this.require(16);
+        long records = this.buffer.getLong();
+        int keyframeCount = this.buffer.getInt();
+        if (this.buffer.getInt() != TraceWriter.END_MAGIC) {
+            return false;
+        }
+        long indexOffset = fileSize - 16 - 8L * keyframeCount;
+        if (keyframeCount < 0 || indexOffset < dataOffset || records < 0
+                || (records + this.keyframeInterval - 1) / this.keyframeInterval != keyframeCount) {
+            throw new FileSystemException(this.source, null, "malformed keyframe index");
+        }
+        this.keyframeOffsets = new long[keyframeCount];
+        this.seek(indexOffset);
+        for (int keyframe = 0; keyframe < keyframeCount; keyframe++) {
+            this.require(8);
+            this.keyframeOffsets[keyframe] = this.buffer.getLong();
+        }
+        this.recordCount = records;
+        return true;
+    }
+
+    /**
+     * Find the keyframes by decoding all records of a trace that was not closed.
+     * @param dataOffset offset of the first record
+     */
+    private void scanIndex(long dataOffset) throws IOException {
+        this.keyframeOffsets = new long[16];
+        this.seek(dataOffset);
+        long records = 0;
+        while (true) {
+            long offset = this.readOffset - this.buffer.remaining();
+            try {
+                if (!this.decode()) {
+                    break;
+                }
+            } catch (FileSystemException e) {
+                // The writer was stopped in the middle of the record.
+                break;
+            }
+            if (records % this.keyframeInterval == 0) {
+                int keyframe = (int) (records / this.keyframeInterval);
+                if (keyframe == this.keyframeOffsets.length) {
+                    this.keyframeOffsets = Arrays.copyOf(this.keyframeOffsets, keyframe << 1);
+                }
+                this.keyframeOffsets[keyframe] = offset;
+            }
+            records++;
+        }
+        this.recordCount = records;
+        this.currentRecord = -1;
+    }
+
+    /**
+     * Decode the next record into the current states.
+     * @return false at the end of the records
+     */
+    private boolean decode() throws IOException {
+        if (!this.ensureRemaining(1)) {
+            return false;
+        }
+        byte type = this.buffer.get();
+        if (type == TraceWriter.KEYFRAME) {
+            Arrays.fill(this.current, 0L);
+        } else if (type != TraceWriter.DELTA) {
+            throw new FileSystemException(this.source, null, "unexpected trace record " + type);
+        }
+        int position = 0;
+        while (true) {
+            position += this.getVarint();
+            if (position == this.wordCount) {
+                return true;
+            }
+            int end = position + this.getVarint();
+            if (position > this.wordCount || end > this.wordCount || end <= position) {
+                throw new FileSystemException(this.source, null, "malformed trace record");
+            }
+            for (; position < end; position++) {
+                this.require(8);
+                this.current[position] ^= this.buffer.getLong();
+            }
+            if (position == this.wordCount) {
+                return true;
+            }
+        }
+    }
+
+    private int getVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            this.require(1);
+            byte next = this.buffer.get();
+            value |= (next & 0x7F) << shift;
+            if (next >= 0) {
+                if (value < 0) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new FileSystemException(this.source, null, "malformed varint");
+    }
+
+    private void seek(long offset) {
+        this.readOffset = offset;
+        this.buffer.clear();
+        this.buffer.limit(0);
+    }
+
+    private void require(int bytes) throws IOException {
+        if (!this.ensureRemaining(bytes)) {
+            throw new FileSystemException(this.source, null, "trace is truncated");
+        }
+    }
+
+    /**
+     * Make sure the buffer holds a number of bytes, reading more from the file if needed.
+     * @return false if the file ends before that
+     */
+    private boolean ensureRemaining(int bytes) throws IOException {
+        if (this.buffer.remaining() >= bytes) {
+            return true;
+        }
+        this.buffer.compact();
+        while (this.buffer.position() < bytes) {
+            int read = this.channel.read(this.buffer, this.readOffset);
+            if (read < 0) {
+                break;
+            }
+            this.readOffset += read;
+        }
+        this.buffer.flip();
+        return this.buffer.remaining() >= bytes;
+    }
+}
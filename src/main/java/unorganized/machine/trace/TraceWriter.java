@@ -0,0 +1,244 @@
+package unorganized.machine.trace;
+
+import lombok.Getter;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.engine.Topology;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writer class recording the unit states of an engine after every pulse into a compact trace file.
+ * Each record is the XOR delta of the packed states against the previous record, so a unit that keeps its state
+ * costs nothing. Every {@code keyframeInterval}-th record is a keyframe holding the states themselves, from which
+ * the records after it can be decoded without reading the ones before.
+ * <p>
+ * The file starts with the magic number, the format version, the number of units, the number of state words
+ * and the keyframe interval as ints, followed by the unit IDs in the order of the state bits. A record is a type
+ * byte and its words encoded in runs: a varint count of zero words, then, unless the words are complete,
+ * a varint count of non-zero words and these words as longs, and so on until all words are encoded.
+ * When the writer is closed, an index of the keyframe offsets is appended, followed by the number of records,
+ * the number of keyframes and an end marker, so that readers can seek to any record.
+ * @author altair823
+ * @see TraceReader
+ */
+public class TraceWriter implements StateSink {
+
+    static final int MAGIC = 0x554D5452;
+    static final int VERSION = 1;
+    static final int END_MAGIC = 0x454E4454;
+    static final byte KEYFRAME = 1;
+    static final byte DELTA = 2;
+
+    /**
+     * Default number of records from one keyframe to the next.
+     */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 1024;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Number of units and of state words of every record.
+     */
+    @Getter
+    private final int unitCount;
+    @Getter
+    private final int wordCount;
+
+    /**
+     * Number of records from one keyframe to the next.
+     */
+    @Getter
+    private final int keyframeInterval;
+
+    /**
+     * Number of records written.
+     */
+    @Getter
+    private long recordCount;
+
+    /**
+     * Number of bytes written, including the bytes still in the buffer.
+     */
+    @Getter
+    private long size;
+
+    private final ByteBuffer buffer;
+    private final FileChannel channel;
+    private final long[] previous;
+
+    /**
+     * File offsets of the keyframes.
+     */
+    private long[] keyframeOffsets = new long[16];
+
+    /**
+     * Constructor that creates a trace file for an engine with the default keyframe interval.
+     * @param engine engine whose states are recorded
+     * @param traceFile file to create or overwrite
+     * @throws IOException The file cannot be written.
+     */
+    public TraceWriter(CompiledEngine engine, File traceFile) throws IOException {
+        this(engine, traceFile, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * Constructor that creates a trace file for an engine.
+     * @param engine engine whose states are recorded
+     * @param traceFile file to create or overwrite
+     * @param keyframeInterval number of records from one keyframe to the next
+     * @throws IOException The file cannot be written.
+     */
+    public TraceWriter(CompiledEngine engine, File traceFile, int keyframeInterval) throws IOException {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be positive.");
+        }
+        Topology topology = engine.getTopology();
+        this.unitCount = topology.getUnitCount();
+        this.wordCount = topology.getWordCount();
+        this.keyframeInterval = keyframeInterval;
+        this.previous = new long[this.wordCount];
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.channel = FileChannel.open(traceFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.ensureRemaining(20);
+        this.buffer.putInt(MAGIC);
+        this.buffer.putInt(VERSION);
+        this.buffer.putInt(this.unitCount);
+        this.buffer.putInt(this.wordCount);
+        this.buffer.putInt(keyframeInterval);
+        for (long unitId : topology.getUnitIds()) {
+            this.ensureRemaining(8);
+            this.buffer.putLong(unitId);
+        }
+        this.size = 20 + 8L * this.unitCount;
+    }
+
+    /**
+     * Method recording the current states of an engine.
+     * @param engine engine with the topology of the trace
+     * @throws IOException The record cannot be written.
+     */
+    public void record(CompiledEngine engine) throws IOException {
+        this.record(engine.getStates());
+    }
+
+    /**
+     * Method recording packed unit states.
+     * @param states unit states, one bit per unit index
+     * @throws IOException The record cannot be written.
+     * @throws IllegalArgumentException The number of words does not match the trace.
+     */
+    @Override
+    public void record(long[] states) throws IOException {
+        if (states.length != this.wordCount) {
+            throw new IllegalArgumentException("Number of state words does not match the trace.");
+        }
+        long start = this.size;
+        this.ensureRemaining(1);
+        if (this.recordCount % this.keyframeInterval == 0) {
+            int keyframe = (int) (this.recordCount / this.keyframeInterval);
+            if (keyframe == this.keyframeOffsets.length) {
+                this.keyframeOffsets = Arrays.copyOf(this.keyframeOffsets, keyframe << 1);
+            }
+            this.keyframeOffsets[keyframe] = start;
+            this.buffer.put(KEYFRAME);
+            Arrays.fill(this.previous, 0L);
+        } else {
+            this.buffer.put(DELTA);
+        }
+        this.size++;
+        this.putRuns(states);
+        System.arraycopy(states, 0, this.previous, 0, states.length);
+        this.recordCount++;
+    }
+
+    /**
+     * Write the XOR of the states and the previous states in runs of zero and non-zero words.
+     */
+    private void putRuns(long[] states) throws IOException {
+        int position = 0;
+        while (true) {
+            int start = position;
+            while (position < states.length && states[position] == this.previous[position]) {
+                position++;
+            }
+            this.putVarint(position - start);
+            if (position == states.length) {
+                return;
+            }
+            start = position;
+            while (position < states.length && states[position] != this.previous[position]) {
+                position++;
+            }
+            this.putVarint(position - start);
+            for (int word = start; word < position; word++) {
+                this.ensureRemaining(8);
+                this.buffer.putLong(states[word] ^ this.previous[word]);
+            }
+            this.size += 8L * (position - start);
+            if (position == states.length) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write a non-negative int in groups of seven bits, the lowest group first.
+     */
+    private void putVarint(int value) throws IOException {
+        this.ensureRemaining(5);
+        while ((value & ~0x7F) != 0) {
+            this.buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+            this.size++;
+        }
+        this.buffer.put((byte) value);
+        this.size++;
+    }
+
+    /**
+     * Method writing the buffered records to the file.
+     * @throws IOException The records cannot be written.
+     */
+    @Override
+    public void flush() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    /**
+     * Method writing the keyframe index and closing the file.
+     * @throws IOException The index cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!this.channel.isOpen()) {
+            return;
+        }
+        int keyframeCount = (int) ((this.recordCount + this.keyframeInterval - 1) / this.keyframeInterval);
+        for (int keyframe = 0; keyframe < keyframeCount; keyframe++) {
+            this.ensureRemaining(8);
+            this.buffer.putLong(this.keyframeOffsets[keyframe]);
+        }
+        this.ensureRemaining(16);
+        this.buffer.putLong(this.recordCount);
+        this.buffer.putInt(keyframeCount);
+        this.buffer.putInt(END_MAGIC);
+        this.flush();
+        this.channel.close();
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (this.buffer.remaining() < bytes) {
+            this.flush();
+        }
+    }
+}
@@ -1,13 +1,13 @@
 package unorganized.machine.units;
 
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
 import unorganized.machine.calculator.StateCalculator;
 import unorganized.machine.edges.Edge;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 
@@ -21,8 +21,6 @@ import java.util.List;
  * @see Edge
  */
 @Getter
-@AllArgsConstructor
-@Builder
 public class Unit {
 
     /**
@@ -37,22 +35,64 @@ public class Unit {
     protected boolean currentState;
 
     /**
-     * List that holds the state of previous units.
+     * States of previous units packed into bits, bit {@code i} holding the i-th state.
      */
-    private List<Boolean> previousStates;
+    @Getter(AccessLevel.NONE)
+    private long previousStateBits;
+
+    /**
+     * Number of states received from previous units since the last calculation.
+     */
+    @Getter(AccessLevel.NONE)
+    private int previousStateCount;
+
+    /**
+     * List that holds the state of previous units when more than 64 states are received.
+     */
+    @Getter(AccessLevel.NONE)
+    private List<Boolean> previousStateList;
 
     /**
      * Calculator for current unit state.
      */
     private final StateCalculator stateCalculator;
 
+    /**
+     * Constructor that keeps the states given by previous units in a list of its own.
+     * @param id unit ID
+     * @param currentState current state
+     * @param previousStates states received from previous units, or null if no state is received
+     * @param stateCalculator calculator for current unit state
+     */
+    @Builder
+    public Unit(long id, boolean currentState, List<Boolean> previousStates, StateCalculator stateCalculator){
+        this.id = id;
+        this.currentState = currentState;
+        if (previousStates != null) {
+            this.previousStateList = new ArrayList<>(previousStates);
+            this.previousStateCount = previousStates.size();
+        }
+        this.stateCalculator = stateCalculator;
+    }
+
     /**
      * The function that receives a pulse from the control and updates the current state.
      */
     public void calculateState(){
-        if (stateCalculator != null && this.previousStates != null) {
-            this.currentState = stateCalculator.calculate(previousStates);
-            this.previousStates = null;
+        if (stateCalculator != null && (this.previousStateCount > 0 || this.previousStateList != null)) {
+            if (this.previousStateList != null) {
+                this.currentState = stateCalculator.calculate(this.previousStateList);
+            }
+            else if (this.previousStateCount == 2) {
+                this.currentState = stateCalculator.calculate((this.previousStateBits & 1L) != 0,
+                        (this.previousStateBits & 2L) != 0);
+            }
+            else {
+                this.currentState = stateCalculator.calculate(this.previousStateBits, this.previousStateCount);
+            }
+            this.previousStateBits = 0L;
+            this.previousStateCount = 0;
+            this.previousStateList = null;
         }
     }
 
@@ -61,12 +101,36 @@ public class Unit {
      * @param states collection of states
      */
     public void addPreviousStates(boolean states){
-        if (this.previousStates != null) {
-            this.previousStates.add(states);
+        if (this.previousStateList != null) {
+            this.previousStateList.add(states);
+        }
+        else if (this.previousStateCount == Long.SIZE) {
+            // More states than bits of the packed word are kept in a list.
+            this.previousStateList = this.getPreviousStates();
+            this.previousStateList.add(states);
+        }
+        else if (states) {
+            this.previousStateBits |= 1L << this.previousStateCount;
+        }
+        this.previousStateCount++;
+    }
+
+    /**
+     * Get the states received from previous units since the last calculation.
+     * @return new list of previous states, or null if no state is received
+     */
+    public List<Boolean> getPreviousStates(){
+        if (this.previousStateList != null) {
+            return new ArrayList<>(this.previousStateList);
+        }
+        if (this.previousStateCount == 0) {
+            return null;
         }
-        else {
-            this.previousStates = new LinkedList<>(List.of(states));
+        List<Boolean> states = new ArrayList<>(this.previousStateCount);
+        for (int i = 0; i < this.previousStateCount; i++) {
+            states.add((this.previousStateBits >>> i & 1L) != 0);
         }
+        return states;
     }
 
     @Override
@@ -0,0 +1,127 @@
+package unorganized.machine.writer;
+
+import unorganized.machine.control.Control;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.engine.Topology;
+import unorganized.machine.reader.BinaryLayoutReader;
+import unorganized.machine.reader.StreamingLayoutReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writer class persisting a machine in the binary unit layout format.
+ * The current states and edge inversions are written, so a mutated machine can be loaded again as it is.
+ * @author altair823
+ * @see BinaryLayoutReader
+ */
+public class BinaryLayoutWriter {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private FileChannel channel;
+
+    /**
+     * Method writing a compiled engine to a binary layout file.
+     * @param engine engine to write
+     * @param layoutFile file to create or overwrite
+     * @throws IOException The file cannot be written.
+     * @throws IllegalArgumentException The engine has units with custom state calculators.
+     */
+    public void write(CompiledEngine engine, File layoutFile) throws IOException {
+        Topology topology = engine.getTopology();
+        if (topology.hasCustomUnits()) {
+            throw new IllegalArgumentException("Units with custom state calculators cannot be written.");
+        }
+        try (FileChannel fileChannel = FileChannel.open(layoutFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            this.channel = fileChannel;
+            this.buffer.clear();
+            this.buffer.putInt(BinaryLayoutReader.MAGIC);
+            this.buffer.putInt(BinaryLayoutReader.VERSION);
+            this.buffer.putInt(topology.getUnitCount());
+            this.buffer.putInt(0);
+            this.putLongs(topology.getUnitIds());
+            this.putLongs(engine.getStates());
+            for (int input : topology.getInputs()) {
+                this.ensureRemaining(4);
+                this.buffer.putInt(input);
+            }
+            if ((topology.getInputs().length & 1) != 0) {
+                this.ensureRemaining(4);
+                this.buffer.putInt(0);
+            }
+            this.putLongs(topology.getFixedUnits());
+            this.putLongs(topology.getWiredUnits());
+            this.putLongs(topology.getSlotEdgeIds());
+            this.putLongs(engine.getInversions());
+            this.flush();
+        } finally {
+            this.channel = null;
+        }
+    }
+
+    /**
+     * Method writing the current machine of a control to a binary layout file.
+     * If the control is not compiled, its units and edges are compiled into a temporary engine.
+     * @param control control holding the machine
+     * @param layoutFile file to create or overwrite
+     * @throws IOException The file cannot be written.
+     */
+    public void write(Control control, File layoutFile) throws IOException {
+        if (control.getEngine() != null) {
+            this.write(control.getEngine(), layoutFile);
+        } else {
+            this.write(CompiledEngine.compile(control.getUnitMap(), control.getEdgeMap()), layoutFile);
+        }
+    }
+
+    /**
+     * Method converting a text unit layout file to a binary unit layout file.
+     * @param textLayoutFile unit layout file in the "UnitLayoutDataFile" format
+     * @param binaryLayoutFile file to create or overwrite
+     * @throws IOException A file cannot be read or written.
+     */
+    public static void convert(File textLayoutFile, File binaryLayoutFile) throws IOException {
+        new BinaryLayoutWriter().write(new StreamingLayoutReader(textLayoutFile).read(), binaryLayoutFile);
+    }
+
+    /**
+     * Command line converter from a text unit layout file to a binary one.
+     * @param args path of the text layout file and path of the binary layout file
+     * @throws IOException A file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: BinaryLayoutWriter <layout.ulf> <layout.bin>");
+            System.exit(2);
+        }
+        convert(new File(args[0]), new File(args[1]));
+    }
+
+    private void putLongs(long[] values) throws IOException {
+        for (long value : values) {
+            this.ensureRemaining(8);
+            this.buffer.putLong(value);
+        }
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (this.buffer.remaining() < bytes) {
+            this.flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+}
@@ -0,0 +1,139 @@
+package unorganized.machine.analysis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import unorganized.machine.control.Control;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.generator.LayoutGenerator;
+import unorganized.machine.mapper.ATypeMapper;
+import unorganized.machine.reader.StreamingLayoutReader;
+import unorganized.machine.reader.UnitLayoutReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BasinMapperTest {
+
+    @TempDir
+    Path directory;
+
+    private CompiledEngine generate(int unitCount, long seed) throws IOException {
+        File layoutFile = this.directory.resolve("machine-" + seed + ".ulf").toFile();
+        LayoutGenerator.builder().unitCount(unitCount).seed(seed).fixedRatio(0.1).build().writeText(layoutFile);
+        CompiledEngine engine = new StreamingLayoutReader(layoutFile).read();
+        engine.reverseEdge(1L);
+        return engine;
+    }
+
+    /**
+     * Find the attractor of every state by following single states on the engine.
+     * @return attractor number of every state, numbered by the smallest state on the cycle
+     */
+    private static int[] bruteForce(CompiledEngine engine, BasinMap basinMap) {
+        int stateCount = 1 << engine.getTopology().getUnitCount();
+        int[] successors = new int[stateCount];
+        CompiledEngine runner = engine.copy();
+        for (int state = 0; state < stateCount; state++) {
+            runner.setStates(new long[]{state});
+            runner.pulse();
+            successors[state] = (int) runner.getStates()[0];
+        }
+        int[] attractors = new int[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            // advance far enough to be on the cycle, and take the smallest state of the cycle.
+            int cursor = state;
+            for (int i = 0; i < stateCount; i++) {
+                cursor = successors[cursor];
+            }
+            int smallest = cursor;
+            for (int next = successors[cursor]; next != cursor; next = successors[next]) {
+                smallest = Math.min(smallest, next);
+            }
+            attractors[state] = -1;
+            for (int attractor = 0; attractor < basinMap.getAttractorCount(); attractor++) {
+                if (basinMap.getAttractorStates()[attractor] == smallest) {
+                    attractors[state] = attractor;
+                }
+            }
+        }
+        return attractors;
+    }
+
+    @Test
+    void transposeTest() {
+        SplittableRandom random = new SplittableRandom(1L);
+        long[] rows = new long[64];
+        for (int i = 0; i < 64; i++) {
+            rows[i] = random.nextLong();
+        }
+        long[] transposed = rows.clone();
+        BasinMapper.transpose(transposed);
+        for (int i = 0; i < 64; i++) {
+            for (int j = 0; j < 64; j++) {
+                assertEquals((rows[i] >>> j) & 1L, (transposed[j] >>> i) & 1L);
+            }
+        }
+    }
+
+    @Test
+    void mapTest() throws IOException {
+        for (int unitCount : new int[]{3, 8, 13}) {
+            for (long seed = 0; seed < 4; seed++) {
+                CompiledEngine engine = generate(unitCount, seed);
+                File tableFile = this.directory.resolve("table-" + unitCount + "-" + seed).toFile();
+                BasinMap basinMap = BasinMapper.builder().parallelism(3).tableFile(tableFile).build().map(engine);
+                int[] expected = bruteForce(engine, basinMap);
+
+                long[] basinSizes = new long[basinMap.getAttractorCount()];
+                ByteBuffer table = ByteBuffer.wrap(Files.readAllBytes(tableFile.toPath()))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                for (int state = 0; state < expected.length; state++) {
+                    assertTrue(expected[state] >= 0);
+                    assertEquals(expected[state], table.getInt());
+                    basinSizes[expected[state]]++;
+                }
+                assertArrayEquals(basinSizes, basinMap.getBasinSizes());
+                for (int attractor = 0; attractor < basinMap.getAttractorCount(); attractor++) {
+                    assertTrue(basinMap.getPeriods()[attractor] >= 1);
+                }
+            }
+        }
+    }
+
+    @Test
+    void largeMachineTest() throws IOException {
+        // 2^20 states run over many ranges and threads.
+        CompiledEngine engine = generate(20, 5L);
+        BasinMap basinMap = BasinMapper.builder().build().map(engine);
+        long total = 0;
+        for (long basinSize : basinMap.getBasinSizes()) {
+            total += basinSize;
+        }
+        assertEquals(1L << 20, total);
+        assertThrows(IllegalArgumentException.class, () -> BasinMapper.builder().build().map(generate(31, 1L)));
+    }
+
+    @Test
+    void controlTest() throws IOException {
+        Control control = new Control();
+        control.addMapper("A", new ATypeMapper());
+        control.readLayout(new UnitLayoutReader(new File("layout/TuringExample.ulf")));
+        BasinMap basinMap = BasinMapper.builder().parallelism(1).build().map(control);
+        assertEquals(5, basinMap.getUnitCount());
+        for (int attractor : bruteForce(control.getEngine(), basinMap)) {
+            assertTrue(attractor >= 0);
+        }
+        long total = 0;
+        for (long basinSize : basinMap.getBasinSizes()) {
+            total += basinSize;
+        }
+        assertEquals(32, total);
+    }
+}
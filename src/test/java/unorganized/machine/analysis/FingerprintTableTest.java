@@ -0,0 +1,29 @@
+package unorganized.machine.analysis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FingerprintTableTest {
+
+    @Test
+    void putAndRetainTest() {
+        FingerprintTable table = new FingerprintTable(100);
+        for (long step = 0; step < 100; step++) {
+            table.put(StateSpaceExplorer.fingerprint(new long[]{step}), step);
+        }
+        table.put(0L, 7L);
+        assertTrue(table.isFull());
+        assertEquals(101, table.size());
+        assertEquals(7L, table.get(0L));
+        assertEquals(42L, table.get(StateSpaceExplorer.fingerprint(new long[]{42L})));
+        assertEquals(-1L, table.get(StateSpaceExplorer.fingerprint(new long[]{100L})));
+
+        // only multiples of the stride are kept.
+        table.retain(4);
+        assertEquals(25, table.size());
+        assertEquals(40L, table.get(StateSpaceExplorer.fingerprint(new long[]{40L})));
+        assertEquals(-1L, table.get(StateSpaceExplorer.fingerprint(new long[]{42L})));
+        assertEquals(-1L, table.get(0L));
+    }
+}
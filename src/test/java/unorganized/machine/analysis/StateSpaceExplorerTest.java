@@ -0,0 +1,81 @@
+package unorganized.machine.analysis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import unorganized.machine.control.Control;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.engine.RunResult;
+import unorganized.machine.engine.StopCondition;
+import unorganized.machine.generator.LayoutGenerator;
+import unorganized.machine.mapper.ATypeMapper;
+import unorganized.machine.reader.StreamingLayoutReader;
+import unorganized.machine.reader.UnitLayoutReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StateSpaceExplorerTest {
+
+    @TempDir
+    Path directory;
+
+    private CompiledEngine generate(int unitCount, long seed) throws IOException {
+        File layoutFile = this.directory.resolve("machine-" + seed + ".ulf").toFile();
+        LayoutGenerator.builder().unitCount(unitCount).seed(seed).selfLoopRatio(0.1).build().writeText(layoutFile);
+        return new StreamingLayoutReader(layoutFile).read();
+    }
+
+    @Test
+    void exploreTest() throws IOException {
+        StateSpaceExplorer explorer = StateSpaceExplorer.builder().build();
+        // a tiny table forces the sampling stride to grow many times.
+        StateSpaceExplorer sampling = StateSpaceExplorer.builder().maxFingerprints(4).maxCycleStates(3).build();
+        for (long seed = 0; seed < 30; seed++) {
+            CompiledEngine engine = generate(40, seed);
+            RunResult expected = engine.copy().run(1_000_000, StopCondition.CYCLE);
+
+            for (StateSpaceExplorer each : new StateSpaceExplorer[]{explorer, sampling}) {
+                Attractor attractor = each.explore(engine);
+                assertTrue(attractor.isCycleFound());
+                assertEquals(expected.getCycleStart(), attractor.getTransientLength());
+                assertEquals(expected.getPeriod(), attractor.getPeriod());
+                assertEquals(Math.min(expected.getPeriod(), each.getMaxCycleStates()),
+                        attractor.getCycleStates().size());
+
+                // the first cycle state is reached after the transient.
+                CompiledEngine replay = engine.copy();
+                replay.run(attractor.getTransientLength(), StopCondition.NONE);
+                assertArrayEquals(replay.getStates(), attractor.getCycleStates().get(0));
+            }
+            assertEquals(0, engine.getPulseCount());
+        }
+    }
+
+    @Test
+    void controlTest() throws IOException {
+        Control control = new Control();
+        control.addMapper("A", new ATypeMapper());
+        control.readLayout(new UnitLayoutReader(new File("layout/TuringExample.ulf")));
+        Attractor attractor = StateSpaceExplorer.builder().build().explore(control);
+        assertTrue(attractor.isCycleFound());
+
+        // the control keeps its state, and runs into the same cycle.
+        assertEquals(0, control.getEngine().getPulseCount());
+        control.run(attractor.getTransientLength() + attractor.getPeriod(), StopCondition.NONE);
+        control.getUnitMap().forEach((id, unit) -> assertEquals(attractor.getState(0, id), unit.isCurrentState()));
+    }
+
+    @Test
+    void maxStepsTest() throws IOException {
+        CompiledEngine engine = generate(40, 3L);
+        RunResult expected = engine.copy().run(1_000_000, StopCondition.CYCLE);
+        long steps = expected.getCycleStart() + expected.getPeriod() - 1;
+        Attractor attractor = StateSpaceExplorer.builder().maxSteps(steps).build().explore(engine);
+        assertFalse(attractor.isCycleFound());
+        assertEquals(-1, attractor.getTransientLength());
+        assertEquals(steps, attractor.getSteps());
+    }
+}
@@ -13,4 +13,21 @@ class ATypeCalculatorTest {
         StateCalculator stateCalculator = new ATypeCalculator();
         assertFalse(stateCalculator.calculate(List.of(true, true)));
     }
-}
\ No newline at end of file
+
+    @Test
+    void primitiveCalculateTest() {
+        StateCalculator stateCalculator = new ATypeCalculator();
+        assertFalse(stateCalculator.calculate(true, true));
+        assertTrue(stateCalculator.calculate(true, false));
+        assertTrue(stateCalculator.calculate(false, false));
+        assertFalse(stateCalculator.calculate(0b11L, 2));
+        assertTrue(stateCalculator.calculate(0b01L, 2));
+        assertThrows(IndexOutOfBoundsException.class, () -> stateCalculator.calculate(0b1L, 1));
+
+        // primitive methods fall back to the collection method.
+        StateCalculator collectionOnly = states -> states.stream().filter(state -> state).count() == 2;
+        assertTrue(collectionOnly.calculate(true, true));
+        assertTrue(collectionOnly.calculate(0b1001L, 4));
+        assertFalse(collectionOnly.calculate(0b0001L, 4));
+    }
+}
@@ -0,0 +1,451 @@
+package unorganized.machine.engine;
+
+import org.junit.jupiter.api.Test;
+import unorganized.machine.calculator.StateCalculator;
+import unorganized.machine.control.Control;
+import unorganized.machine.edges.Edge;
+import unorganized.machine.mapper.ATypeMapper;
+import unorganized.machine.reader.UnitLayoutReader;
+import unorganized.machine.units.Unit;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.FileSystemException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledEngineTest {
+
+    private Control readControl() throws FileSystemException, FileNotFoundException {
+        Control control = new Control();
+        control.addMapper("A", new ATypeMapper());
+        control.readLayout(new UnitLayoutReader(new File("layout/TuringExample.ulf")));
+        return control;
+    }
+
+    static CompiledEngine randomEngine(int unitCount, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long[] unitIds = new long[unitCount];
+        int[] inputs = new int[unitCount << 1];
+        long[] slotEdgeIds = new long[unitCount << 1];
+        long[] fixedUnits = new long[Topology.wordsFor(unitCount)];
+        long[] wiredUnits = new long[Topology.wordsFor(unitCount)];
+        long[] states = new long[Topology.wordsFor(unitCount)];
+        long[] inversions = new long[Topology.wordsFor(unitCount << 1)];
+        for (int index = 0; index < unitCount; index++) {
+            unitIds[index] = index + 1;
+            if (random.nextInt(20) == 0) {
+                fixedUnits[index >>> 6] |= 1L << index;
+                inputs[index << 1] = index;
+                inputs[(index << 1) + 1] = index;
+            } else {
+                wiredUnits[index >>> 6] |= 1L << index;
+                inputs[index << 1] = random.nextInt(unitCount);
+                inputs[(index << 1) + 1] = random.nextInt(unitCount);
+                slotEdgeIds[index << 1] = (index << 1) + 1;
+                slotEdgeIds[(index << 1) + 1] = (index << 1) + 2;
+            }
+            if (random.nextBoolean()) {
+                states[index >>> 6] |= 1L << index;
+            }
+        }
+        for (int slot = 0; slot < unitCount << 1; slot++) {
+            if (random.nextInt(4) == 0) {
+                inversions[slot >>> 6] |= 1L << slot;
+            }
+        }
+        Topology topology = new Topology(unitIds, inputs, fixedUnits, wiredUnits, slotEdgeIds);
+        return new CompiledEngine(topology, states, inversions);
+    }
+
+    /**
+     * Replace the calculator of every third unit of a random machine with an XOR calculator
+     * that only implements the collection method.
+     */
+    static Map<Long, Unit> customUnitMap(CompiledEngine engine) {
+        StateCalculator xor = states -> states.stream().filter(state -> state).count() % 2 == 1;
+        Map<Long, Unit> unitMap = new HashMap<>();
+        engine.createUnitMap().forEach((id, unit) -> unitMap.put(id, id % 3 != 0 ? unit : Unit.builder()
+                .id(id)
+                .currentState(unit.isCurrentState())
+                .stateCalculator(xor)
+                .build()));
+        return unitMap;
+    }
+
+    @Test
+    void compileTest() throws FileSystemException, FileNotFoundException {
+        Control control = readControl();
+        CompiledEngine engine = control.compile();
+
+        // check flattened connectivity of the base example in paper.
+        Topology topology = engine.getTopology();
+        assertEquals(5, topology.getUnitCount());
+        assertEquals(10, topology.getEdgeCount());
+        int index = topology.indexOf(1L);
+        assertEquals(3L, topology.unitId(topology.input(index << 1)));
+        assertEquals(2L, topology.unitId(topology.input((index << 1) + 1)));
+        control.getUnitMap().forEach((id, unit) -> assertEquals(unit.isCurrentState(), engine.getState(id)));
+    }
+
+    @Test
+    void pulseTest() throws FileSystemException, FileNotFoundException {
+        Control original = readControl();
+        Control compiled = readControl();
+        compiled.compile();
+
+        for (int i = 0; i < 20; i++) {
+            original.makePulse();
+            compiled.makePulse();
+
+            // compare states of both paths.
+            original.getUnitMap().forEach((id, unit) ->
+                    assertEquals(unit.isCurrentState(), compiled.getEngine().getState(id)));
+        }
+    }
+
+    @Test
+    void reverseEdgeTest() throws FileSystemException, FileNotFoundException {
+        Control original = readControl();
+        Control compiled = readControl();
+        compiled.compile();
+
+        for (int i = 0; i < 20; i++) {
+            long edgeId = i % 10 + 1;
+            original.getEdgeMap().get(edgeId).reverseDeliverRule();
+            compiled.getEngine().reverseEdge(edgeId);
+            assertEquals(!original.getEdgeMap().get(edgeId).getStateDeliver().isDeliverWay(),
+                    compiled.getEngine().isEdgeReversed(edgeId));
+
+            original.makePulse();
+            compiled.makePulse();
+            original.getUnitMap().forEach((id, unit) ->
+                    assertEquals(unit.isCurrentState(), compiled.getEngine().getState(id)));
+        }
+    }
+
+    @Test
+    void exposedUnitsTest() throws FileSystemException, FileNotFoundException {
+        Control original = readControl();
+        Control compiled = readControl();
+        compiled.compile();
+
+        // states changed through the unit map are seen by the engine.
+        original.getUnitMap().get(3L).setCurrentState(false);
+        compiled.getUnitMap().get(3L).setCurrentState(false);
+        original.makePulse();
+        compiled.makePulse();
+        original.getUnitMap().forEach((id, unit) ->
+                assertEquals(unit.isCurrentState(), compiled.getUnitMap().get(id).isCurrentState()));
+
+        // initial states are restored in the engine.
+        compiled.initUnitStates();
+        compiled.getInitialUnitStates().forEach((id, state) -> assertEquals(state, compiled.getEngine().getState(id)));
+    }
+
+    @Test
+    void parallelPulseTest() {
+        CompiledEngine sequential = randomEngine(100_003, 7L);
+        CompiledEngine parallel = randomEngine(100_003, 7L);
+        parallel.setParallelism(4);
+        assertEquals(4, parallel.getParallelism());
+
+        for (int i = 0; i < 50; i++) {
+            sequential.pulse();
+            parallel.pulse();
+            assertArrayEquals(sequential.getStates(), parallel.getStates());
+        }
+        parallel.setParallelism(1);
+        assertEquals(1, parallel.getParallelism());
+    }
+
+    @Test
+    void vectorPulseTest() {
+        // the test task adds the module, so the kernel of the vector source set is loaded.
+        assertTrue(CompiledEngine.isVectorAvailable());
+        for (int unitCount : new int[]{1, 63, 130, 10_007}) {
+            CompiledEngine base = randomEngine(unitCount, unitCount);
+            Map<Long, Unit> unitMap = customUnitMap(base);
+            CompiledEngine scalar = CompiledEngine.compile(unitMap, base.createEdgeMap(unitMap));
+            CompiledEngine vector = scalar.copy();
+            scalar.reverseEdge(1L);
+            vector.reverseEdge(1L);
+            vector.setVectorized(true);
+            assertEquals(CompiledEngine.isVectorAvailable(), vector.isVectorized());
+
+            for (int i = 0; i < 30; i++) {
+                scalar.pulse();
+                vector.pulse();
+                assertArrayEquals(scalar.getStates(), vector.getStates());
+            }
+            vector.setVectorized(false);
+            assertFalse(vector.isVectorized());
+        }
+    }
+
+    @Test
+    void runCycleTest() {
+        for (long seed = 0; seed < 20; seed++) {
+            // find the cycle of a small machine by keeping every state.
+            CompiledEngine reference = randomEngine(16, seed);
+            List<Long> history = new ArrayList<>();
+            history.add(reference.getStates()[0]);
+            int cycleStart;
+            while (true) {
+                reference.pulse();
+                cycleStart = history.indexOf(reference.getStates()[0]);
+                if (cycleStart >= 0) {
+                    break;
+                }
+                history.add(reference.getStates()[0]);
+            }
+
+            CompiledEngine engine = randomEngine(16, seed);
+            RunResult result = engine.run(100_000, StopCondition.CYCLE);
+            assertTrue(result.isCycleFound());
+            assertEquals(cycleStart, result.getCycleStart());
+            assertEquals(history.size() - cycleStart, result.getPeriod());
+            assertEquals(result.getSteps(), engine.getPulseCount());
+        }
+    }
+
+    @Test
+    void runFixedPointTest() throws FileSystemException, FileNotFoundException {
+        Control control = readControl();
+        RunResult result = control.run(10, StopCondition.NONE);
+        assertEquals(10, result.getSteps());
+        assertFalse(result.isCycleFound());
+
+        // a machine of units without inputs is a fixed point from the start.
+        CompiledEngine engine = randomEngine(1, 3L);
+        engine.getTopology().getFixedUnits()[0] = 1L;
+        result = engine.run(10, StopCondition.FIXED_POINT);
+        assertEquals(1, result.getSteps());
+        assertEquals(0, result.getCycleStart());
+        assertEquals(1, result.getPeriod());
+    }
+
+    @Test
+    void reverseRandomEdgesTest() {
+        CompiledEngine engine = randomEngine(1000, 23L);
+        long[] inversions = engine.getInversions().clone();
+        EdgeFlips flips = engine.reverseRandomEdges(50, new SplittableRandom(1L));
+        assertEquals(50, flips.size());
+
+        // edges are distinct, exist although their IDs are not contiguous, and are reversed.
+        long[] edgeIds = flips.getEdgeIds().clone();
+        Arrays.sort(edgeIds);
+        for (int i = 0; i < edgeIds.length; i++) {
+            assertTrue(i == 0 || edgeIds[i - 1] != edgeIds[i]);
+            int slot = engine.getTopology().slotOf(edgeIds[i]);
+            assertTrue(slot >= 0);
+            assertNotEquals((inversions[slot >>> 6] >>> slot) & 1L, (engine.getInversions()[slot >>> 6] >>> slot) & 1L);
+        }
+
+        // the same seed draws the same edges.
+        CompiledEngine copy = engine.copy();
+        assertArrayEquals(flips.getEdgeIds(), copy.reverseRandomEdges(50, new SplittableRandom(1L)).getEdgeIds());
+        assertArrayEquals(inversions, copy.getInversions());
+
+        engine.reverseEdges(flips);
+        assertArrayEquals(inversions, engine.getInversions());
+
+        // all edges can be drawn, and no more.
+        int edgeCount = engine.getTopology().getEdgeCount();
+        EdgeFlips all = engine.reverseRandomEdges(edgeCount, new SplittableRandom(2L));
+        edgeIds = all.getEdgeIds().clone();
+        Arrays.sort(edgeIds);
+        for (int rank = 0; rank < edgeCount; rank++) {
+            assertEquals(engine.getTopology().edgeId(rank), edgeIds[rank]);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> engine.reverseRandomEdges(edgeCount + 1, new SplittableRandom(3L)));
+        assertThrows(IllegalArgumentException.class, () -> randomEngine(1000, 24L).reverseEdges(all));
+    }
+
+    @Test
+    void controlReverseRandomEdgesTest() throws FileSystemException, FileNotFoundException {
+        Control control = readControl();
+        Control reference = readControl();
+        EdgeFlips flips = control.reverseRandomEdges(3, new SplittableRandom(5L));
+        for (long edgeId : flips.getEdgeIds()) {
+            reference.getEdgeMap().get(edgeId).reverseDeliverRule();
+        }
+        control.makePulse();
+        reference.makePulse();
+        control.getUnitMap().forEach((id, unit) ->
+                assertEquals(reference.getUnitMap().get(id).isCurrentState(), unit.isCurrentState()));
+
+        Control original = readControl();
+        control.undoEdges(flips);
+        control.getEdgeMap().forEach((id, edge) -> assertEquals(original.getEdgeMap().get(id)
+                .getStateDeliver().isDeliverWay(), edge.getStateDeliver().isDeliverWay()));
+        control.reverseSingleEdge();
+    }
+
+    @Test
+    void controlHeldObjectsTest() throws FileSystemException, FileNotFoundException {
+        // a control that is not compiled reverses edge objects.
+        Control control = readControl();
+        Map<Long, Edge> edges = control.getEdgeMap();
+        Map<Long, Unit> units = control.getUnitMap();
+        control.reverseSingleEdge();
+        assertNull(control.getEngine());
+
+        // units and edges changed while held before an implicit compile are loaded into the engine.
+        edges.get(2L).reverseDeliverRule();
+        long unitId = units.keySet().iterator().next();
+        units.get(unitId).setCurrentState(!units.get(unitId).isCurrentState());
+        Control reference = Control.copy(control);
+        EdgeFlips flips = control.reverseRandomEdges(1, new SplittableRandom(3L));
+        assertNotNull(control.getEngine());
+        reference.getEdgeMap().get(flips.getEdgeIds()[0]).reverseDeliverRule();
+        for (int i = 0; i < 10; i++) {
+            control.makePulse();
+            reference.makePulse();
+        }
+        control.getUnitMap().forEach((id, unit) ->
+                assertEquals(reference.getUnitMap().get(id).isCurrentState(), unit.isCurrentState()));
+    }
+
+    @Test
+    void transactionTest() {
+        CompiledEngine engine = randomEngine(1000, 29L);
+        engine.setIncremental(true);
+        engine.pulse();
+        long[] states = engine.getStates().clone();
+        long[] inversions = engine.getInversions().clone();
+
+        // single changes are logged word by word and reverted.
+        engine.begin();
+        assertTrue(engine.isInTransaction());
+        assertThrows(IllegalStateException.class, engine::begin);
+        engine.setState(5L, !engine.getState(5L));
+        engine.reverseEdge(3L);
+        EdgeFlips flips = engine.reverseRandomEdges(20, new SplittableRandom(4L));
+        assertEquals(22, engine.getUndoLogSize());
+        engine.rollback();
+        assertFalse(engine.isInTransaction());
+        assertArrayEquals(states, engine.getStates());
+        assertArrayEquals(inversions, engine.getInversions());
+
+        // pulses and changes of all words are reverted as well, with the number of pulses.
+        CompiledEngine reference = engine.copy();
+        engine.begin();
+        engine.reverseEdges(flips);
+        engine.run(10, StopCondition.NONE);
+        engine.setState(7L, !engine.getState(7L));
+        engine.setInversions(new long[inversions.length]);
+        engine.pulse();
+        engine.rollback();
+        assertArrayEquals(states, engine.getStates());
+        assertArrayEquals(inversions, engine.getInversions());
+        assertEquals(1, engine.getPulseCount());
+        for (int i = 0; i < 20; i++) {
+            engine.pulse();
+            reference.pulse();
+            assertArrayEquals(reference.getStates(), engine.getStates());
+        }
+
+        // committed changes are kept.
+        engine.begin();
+        engine.reverseEdge(3L);
+        engine.commit();
+        assertNotEquals(reference.isEdgeReversed(3L), engine.isEdgeReversed(3L));
+        assertThrows(IllegalStateException.class, engine::commit);
+        assertThrows(IllegalStateException.class, engine::rollback);
+    }
+
+    @Test
+    void controlTransactionTest() throws FileSystemException, FileNotFoundException {
+        Control control = readControl();
+        Control reference = readControl();
+        control.begin();
+        control.reverseEdge(1L);
+        control.setUnitState(1L, !reference.getUnitMap().get(1L).isCurrentState());
+        control.getEdgeMap().get(2L).reverseDeliverRule();
+        control.makePulse();
+        control.rollback();
+
+        control.getUnitMap().forEach((id, unit) ->
+                assertEquals(reference.getUnitMap().get(id).isCurrentState(), unit.isCurrentState()));
+        control.getEdgeMap().forEach((id, edge) -> assertEquals(reference.getEdgeMap().get(id)
+                .getStateDeliver().isDeliverWay(), edge.getStateDeliver().isDeliverWay()));
+    }
+
+    @Test
+    void copyTest() {
+        CompiledEngine original = randomEngine(1000, 19L);
+        CompiledEngine copy = original.copy();
+        assertSame(original.getTopology(), copy.getTopology());
+        assertSame(original.getStates(), copy.getStates());
+        assertSame(original.getInversions(), copy.getInversions());
+
+        // changes of one engine are not seen by the other.
+        long[] originalStates = original.getStates().clone();
+        copy.reverseEdge(3L);
+        assertNotSame(original.getInversions(), copy.getInversions());
+        assertFalse(original.isEdgeReversed(3L) == copy.isEdgeReversed(3L));
+        copy.pulse();
+        copy.pulse();
+        original.setState(5L, !original.getState(5L));
+        assertNotEquals(originalStates[0], original.getStates()[0]);
+
+        CompiledEngine reference = randomEngine(1000, 19L);
+        reference.reverseEdge(3L);
+        reference.pulse();
+        reference.pulse();
+        assertArrayEquals(reference.getStates(), copy.getStates());
+    }
+
+    @Test
+    void sharedCopyTest() throws FileSystemException, FileNotFoundException {
+        Control original = readControl();
+        Control copy = Control.sharedCopy(original);
+        assertNotNull(original.getEngine());
+        assertSame(original.getEngine().getTopology(), copy.getEngine().getTopology());
+
+        copy.getEngine().reverseEdge(4L);
+        for (int i = 0; i < 5; i++) {
+            original.makePulse();
+            copy.makePulse();
+        }
+
+        // units and edges of the copy are created with the states of its own engine.
+        Control reference = readControl();
+        reference.getEdgeMap().get(4L).reverseDeliverRule();
+        for (int i = 0; i < 5; i++) {
+            reference.makePulse();
+        }
+        reference.getUnitMap().forEach((id, unit) ->
+                assertEquals(unit.isCurrentState(), copy.getUnitMap().get(id).isCurrentState()));
+        assertFalse(copy.getEdgeMap().get(4L).getStateDeliver().isDeliverWay());
+        assertTrue(original.getEdgeMap().get(4L).getStateDeliver().isDeliverWay());
+        assertNotSame(original.getUnitMap().get(1L), copy.getUnitMap().get(1L));
+    }
+
+    @Test
+    void customCalculatorTest() {
+        CompiledEngine base = randomEngine(300, 23L);
+        Map<Long, Unit> unitMap = customUnitMap(base);
+        Map<Long, Edge> edgeMap = base.createEdgeMap(unitMap);
+        CompiledEngine engine = CompiledEngine.compile(unitMap, edgeMap);
+        assertTrue(engine.getTopology().hasCustomUnits());
+
+        for (int i = 0; i < 20; i++) {
+            edgeMap.forEach((id, edge) -> edge.deliverState());
+            unitMap.forEach((id, unit) -> unit.calculateState());
+            engine.pulse();
+            unitMap.forEach((id, unit) -> assertEquals(unit.isCurrentState(), engine.getState(id)));
+        }
+
+        // units created from the engine keep their own calculators.
+        assertSame(unitMap.get(3L).getStateCalculator(), engine.createUnitMap().get(3L).getStateCalculator());
+    }
+}
@@ -0,0 +1,80 @@
+package unorganized.machine.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import unorganized.machine.generator.LayoutGenerator;
+import unorganized.machine.reader.StreamingLayoutReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeltaPulseTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Engine of a machine where most units have no inputs, so that the other units settle quickly.
+     */
+    private CompiledEngine settlingEngine() throws IOException {
+        File layoutFile = this.directory.resolve("settling.ulf").toFile();
+        LayoutGenerator.builder().unitCount(100_000).seed(6L).fixedRatio(0.97).build().writeText(layoutFile);
+        return new StreamingLayoutReader(layoutFile).read();
+    }
+
+    @Test
+    void settlingTest() throws IOException {
+        CompiledEngine reference = settlingEngine();
+        CompiledEngine incremental = settlingEngine();
+        incremental.setIncremental(true);
+        assertTrue(incremental.isIncremental());
+
+        for (int i = 0; i < 50; i++) {
+            reference.pulse();
+            incremental.pulse();
+            assertArrayEquals(reference.getStates(), incremental.getStates());
+        }
+        // only the first pulses are full sweeps, and few words are calculated after the machine settles.
+        assertTrue(incremental.getDeltaPulse().getFullSweeps() < 5);
+        assertTrue(incremental.getDeltaPulse().getDirtyCount() < reference.getTopology().getWordCount() / 20);
+
+        // changes from outside are seen by the next pulse.
+        long unitId = reference.getTopology().unitId(12_345);
+        reference.setState(unitId, !reference.getState(unitId));
+        incremental.setState(unitId, !incremental.getState(unitId));
+        reference.reverseEdge(101L);
+        incremental.reverseEdge(101L);
+        CompiledEngine copy = incremental.copy();
+        assertTrue(copy.isIncremental());
+        for (int i = 0; i < 20; i++) {
+            reference.pulse();
+            incremental.pulse();
+            copy.pulse();
+            assertArrayEquals(reference.getStates(), incremental.getStates());
+            assertArrayEquals(reference.getStates(), copy.getStates());
+        }
+    }
+
+    @Test
+    void fullSweepTest() {
+        // most units of a random machine keep changing, so pulses fall back to full sweeps.
+        CompiledEngine reference = CompiledEngineTest.randomEngine(10_000, 21L);
+        CompiledEngine incremental = CompiledEngineTest.randomEngine(10_000, 21L);
+        incremental.setIncremental(true);
+        for (int i = 0; i < 30; i++) {
+            reference.pulse();
+            incremental.pulse();
+            assertArrayEquals(reference.getStates(), incremental.getStates());
+        }
+        RunResult expected = reference.run(10_000, StopCondition.CYCLE);
+        RunResult result = incremental.run(10_000, StopCondition.CYCLE);
+        assertEquals(expected.toString(), result.toString());
+        assertArrayEquals(reference.getStates(), incremental.getStates());
+
+        incremental.setIncremental(false);
+        assertFalse(incremental.isIncremental());
+    }
+}
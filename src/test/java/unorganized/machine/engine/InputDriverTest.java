@@ -0,0 +1,169 @@
+package unorganized.machine.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import unorganized.machine.control.Control;
+import unorganized.machine.generator.LayoutGenerator;
+import unorganized.machine.mapper.ATypeMapper;
+import unorganized.machine.reader.StreamingLayoutReader;
+import unorganized.machine.reader.UnitLayoutReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InputDriverTest {
+
+    @TempDir
+    Path directory;
+
+    private static InputTape randomTape(int width, long frameCount, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long[] bits = new long[Topology.wordsFor((int) (width * frameCount))];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = random.nextLong();
+        }
+        return new InputTape(width, frameCount, bits);
+    }
+
+    /**
+     * Make a pulse without inputs and then set the input units to the next frame of a tape.
+     */
+    private static void referencePulse(CompiledEngine engine, long[] unitIds, InputTape tape) {
+        engine.pulse();
+        long[] frame = new long[Topology.wordsFor(unitIds.length)];
+        assertTrue(tape.next(frame));
+        for (int i = 0; i < unitIds.length; i++) {
+            engine.setState(unitIds[i], (frame[i >>> 6] & (1L << i)) != 0);
+        }
+    }
+
+    @Test
+    void drivenTest() {
+        long[] unitIds = {3, 70, 130, 200, 5, 299};
+        CompiledEngine reference = CompiledEngineTest.randomEngine(300, 9);
+        CompiledEngine driven = CompiledEngineTest.randomEngine(300, 9);
+        InputDriver driver = new InputDriver(randomTape(unitIds.length, 100, 4), unitIds);
+        driven.setInputDriver(driver);
+        InputTape tape = randomTape(unitIds.length, 100, 4);
+        for (int i = 0; i < 100; i++) {
+            referencePulse(reference, unitIds, tape);
+            driven.pulse();
+            assertArrayEquals(reference.getStates(), driven.getStates());
+        }
+        assertEquals(100, driver.getFrameCount());
+        assertFalse(driver.isEnded());
+
+        // the input units keep their last driven states after the tape ends.
+        long[] last = new Probe(unitIds).read(driven).clone();
+        driven.pulse();
+        assertTrue(driver.isEnded());
+        assertArrayEquals(last, new Probe(unitIds).read(driven));
+
+        // copies are not driven.
+        assertNull(driven.copy().getInputDriver());
+    }
+
+    @Test
+    void incrementalTest() throws IOException {
+        File layoutFile = this.directory.resolve("settling.ulf").toFile();
+        LayoutGenerator.builder().unitCount(100_000).seed(6L).fixedRatio(0.97).build().writeText(layoutFile);
+        CompiledEngine reference = new StreamingLayoutReader(layoutFile).read();
+        CompiledEngine incremental = new StreamingLayoutReader(layoutFile).read();
+        incremental.setIncremental(true);
+        // wired units are driven, so that they calculate other states once they are released.
+        Topology topology = reference.getTopology();
+        long[] unitIds = new long[40];
+        for (int i = 0, index = 0; i < unitIds.length; index++) {
+            if (topology.isWired(index)) {
+                unitIds[i++] = topology.unitId(index);
+                index += 2_000;
+            }
+        }
+        reference.setInputDriver(new InputDriver(randomTape(unitIds.length, 60, 8), unitIds));
+        incremental.setInputDriver(new InputDriver(randomTape(unitIds.length, 60, 8), unitIds));
+        for (int i = 0; i < 60; i++) {
+            reference.pulse();
+            incremental.pulse();
+            assertArrayEquals(reference.getStates(), incremental.getStates());
+        }
+        // driven words are scheduled without falling back to full sweeps.
+        assertTrue(incremental.getDeltaPulse().getFullSweeps() < 5);
+
+        // released units calculate their own states again.
+        reference.setInputDriver(null);
+        incremental.setInputDriver(null);
+        for (int i = 0; i < 20; i++) {
+            reference.pulse();
+            incremental.pulse();
+            assertArrayEquals(reference.getStates(), incremental.getStates());
+        }
+    }
+
+    @Test
+    void runTest() {
+        long[] unitIds = {1, 2, 100};
+        CompiledEngine reference = CompiledEngineTest.randomEngine(200, 2);
+        CompiledEngine driven = CompiledEngineTest.randomEngine(200, 2);
+        InputDriver driver = new InputDriver(randomTape(unitIds.length, 40, 6), unitIds);
+        driven.setInputDriver(driver);
+        InputTape tape = randomTape(unitIds.length, 40, 6);
+        for (int i = 0; i < 40; i++) {
+            referencePulse(reference, unitIds, tape);
+        }
+        RunResult result = driven.run(1_000, StopCondition.NONE);
+        assertEquals(40, result.getSteps());
+        assertFalse(result.isCycleFound());
+        assertEquals(40, driven.getPulseCount());
+        assertArrayEquals(reference.getStates(), driven.getStates());
+        assertEquals(0, driven.run(10, StopCondition.NONE).getSteps());
+        assertEquals(0, driven.run(10, StopCondition.FIXED_POINT).getSteps());
+        assertThrows(IllegalStateException.class, () -> driven.run(10, StopCondition.CYCLE));
+
+        // a run without driven units is not limited.
+        driven.setInputDriver(null);
+        assertEquals(10, driven.run(10, StopCondition.NONE).getSteps());
+    }
+
+    @Test
+    void generatorTest() {
+        CompiledEngine engine = CompiledEngineTest.randomEngine(100, 3);
+        long[] counter = new long[1];
+        engine.setInputDriver(new InputDriver(frame -> {
+            frame[0] = counter[0]++ & 3L;
+            return counter[0] <= 8;
+        }, 10, 20));
+        for (int i = 0; i < 8; i++) {
+            engine.pulse();
+            assertEquals((i & 1) != 0, engine.getState(10));
+            assertEquals((i & 2) != 0, engine.getState(20));
+        }
+        assertEquals(0, engine.run(5, StopCondition.NONE).getSteps());
+        assertThrows(IllegalArgumentException.class,
+                () -> engine.setInputDriver(new InputDriver(frame -> true, 1, 1_000)));
+    }
+
+    @Test
+    void controlTest() throws IOException {
+        Control control = new Control();
+        control.addMapper("A", new ATypeMapper());
+        control.readLayout(new UnitLayoutReader(new File("layout/TuringExample.ulf")));
+        long unitId = control.getUnitMap().keySet().iterator().next();
+        InputDriver driver = new InputDriver(frame -> {
+            frame[0] = 1L;
+            return true;
+        }, unitId);
+        control.setInputDriver(driver);
+        for (int i = 0; i < 5; i++) {
+            control.makePulse();
+            assertTrue(control.getEngine().getState(unitId));
+        }
+        assertEquals(5, control.run(5).getSteps());
+        assertTrue(control.getEngine().getState(unitId));
+        assertEquals(10, driver.getFrameCount());
+        assertSame(driver, control.compile().getInputDriver());
+    }
+}
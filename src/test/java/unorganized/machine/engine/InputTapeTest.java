@@ -0,0 +1,70 @@
+package unorganized.machine.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InputTapeTest {
+
+    @Test
+    void nextTest() {
+        SplittableRandom random = new SplittableRandom(1);
+        for (int width : new int[]{1, 3, 64, 70, 129}) {
+            long frameCount = 50;
+            long[] bits = new long[Topology.wordsFor((int) (width * frameCount))];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = random.nextLong();
+            }
+            InputTape tape = new InputTape(width, frameCount, bits);
+            long[] frame = new long[Topology.wordsFor(width)];
+            for (long f = 0; f < frameCount; f++) {
+                assertEquals(frameCount - f, tape.remaining());
+                assertTrue(tape.next(frame));
+                for (int i = 0; i < width; i++) {
+                    long bit = f * width + i;
+                    assertEquals((bits[(int) (bit >>> 6)] >>> bit) & 1L, (frame[i >>> 6] >>> i) & 1L);
+                }
+            }
+            assertFalse(tape.next(frame));
+            tape.rewind();
+            assertEquals(frameCount, tape.remaining());
+        }
+    }
+
+    @Test
+    void readTest() throws IOException {
+        Path file = Files.createTempFile("tape", ".bin");
+        try {
+            Files.write(file, new byte[]{(byte) 0b1011_0101, (byte) 0b0000_0110});
+            InputTape tape = InputTape.read(file, 3);
+            assertEquals(5, tape.getFrameCount());
+            long[] frame = new long[1];
+            long[] expected = {0b101, 0b110, 0b010, 0b011, 0b000};
+            for (long value : expected) {
+                assertTrue(tape.next(frame));
+                assertEquals(value, frame[0]);
+            }
+            assertFalse(tape.next(frame));
+
+            // bytes after the last whole word are kept.
+            Files.write(file, new byte[]{1, 0, 0, 0, 0, 0, 0, 0, (byte) 0x80});
+            tape = InputTape.read(file, 72);
+            long[] wide = new long[2];
+            assertTrue(tape.next(wide));
+            assertArrayEquals(new long[]{1L, 0x80L}, wide);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void invalidTest() {
+        assertThrows(IllegalArgumentException.class, () -> new InputTape(0, 1, new long[1]));
+        assertThrows(IllegalArgumentException.class, () -> new InputTape(10, 7, new long[1]));
+    }
+}
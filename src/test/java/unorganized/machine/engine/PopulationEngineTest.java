@@ -0,0 +1,97 @@
+package unorganized.machine.engine;
+
+import org.junit.jupiter.api.Test;
+import unorganized.machine.units.Unit;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PopulationEngineTest {
+
+    @Test
+    void pulseTest() {
+        CompiledEngine base = CompiledEngineTest.randomEngine(1000, 11L);
+        PopulationEngine population = PopulationEngine.of(base, 130);
+        CompiledEngine[] variants = new CompiledEngine[130];
+        SplittableRandom random = new SplittableRandom(5L);
+
+        // reverse different edges in every variant.
+        for (int variant = 0; variant < variants.length; variant++) {
+            variants[variant] = population.toEngine(variant);
+            for (int i = 0; i < 10; i++) {
+                long edgeId = randomEdge(base.getTopology(), random);
+                population.reverseEdge(variant, edgeId);
+                variants[variant].reverseEdge(edgeId);
+            }
+        }
+
+        population.run(30);
+        for (int variant = 0; variant < variants.length; variant++) {
+            variants[variant].run(30, StopCondition.NONE);
+            assertArrayEquals(variants[variant].getStates(), population.toEngine(variant).getStates());
+        }
+    }
+
+    @Test
+    void customCalculatorTest() {
+        CompiledEngine random = CompiledEngineTest.randomEngine(500, 29L);
+        Map<Long, Unit> unitMap = CompiledEngineTest.customUnitMap(random);
+        CompiledEngine base = CompiledEngine.compile(unitMap, random.createEdgeMap(unitMap));
+        PopulationEngine population = PopulationEngine.of(base, 70);
+        CompiledEngine[] variants = new CompiledEngine[70];
+        SplittableRandom edges = new SplittableRandom(3L);
+        for (int variant = 0; variant < variants.length; variant++) {
+            variants[variant] = population.toEngine(variant);
+            long edgeId = randomEdge(base.getTopology(), edges);
+            population.reverseEdge(variant, edgeId);
+            variants[variant].reverseEdge(edgeId);
+        }
+
+        population.run(15);
+        for (int variant = 0; variant < variants.length; variant++) {
+            variants[variant].run(15, StopCondition.NONE);
+            assertArrayEquals(variants[variant].getStates(), population.toEngine(variant).getStates());
+        }
+    }
+
+    @Test
+    void parallelPulseTest() {
+        CompiledEngine base = CompiledEngineTest.randomEngine(10_000, 13L);
+        PopulationEngine sequential = PopulationEngine.of(base, 64);
+        PopulationEngine parallel = PopulationEngine.of(base, 64);
+        parallel.setParallelism(4);
+        SplittableRandom random = new SplittableRandom(9L);
+        for (int variant = 0; variant < 64; variant++) {
+            long edgeId = randomEdge(base.getTopology(), random);
+            sequential.reverseEdge(variant, edgeId);
+            parallel.reverseEdge(variant, edgeId);
+        }
+
+        sequential.run(20);
+        parallel.run(20);
+        for (int variant = 0; variant < 64; variant++) {
+            assertArrayEquals(sequential.toEngine(variant).getStates(), parallel.toEngine(variant).getStates());
+        }
+    }
+
+    @Test
+    void stateTest() {
+        CompiledEngine base = CompiledEngineTest.randomEngine(100, 17L);
+        PopulationEngine population = PopulationEngine.of(base, 3);
+        population.setState(1, 42L, !population.getState(1, 42L));
+        assertEquals(base.getState(42L), population.getState(0, 42L));
+        assertNotEquals(base.getState(42L), population.getState(1, 42L));
+        assertThrows(IndexOutOfBoundsException.class, () -> population.getState(3, 42L));
+    }
+
+    private static long randomEdge(Topology topology, SplittableRandom random) {
+        while (true) {
+            int index = random.nextInt(topology.getUnitCount());
+            if (topology.isWired(index)) {
+                return topology.getSlotEdgeIds()[(index << 1) + random.nextInt(2)];
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package unorganized.machine.engine;
+
+import org.junit.jupiter.api.Test;
+import unorganized.machine.control.Control;
+import unorganized.machine.mapper.ATypeMapper;
+import unorganized.machine.reader.UnitLayoutReader;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.FileSystemException;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProbeTest {
+
+    @Test
+    void readTest() {
+        CompiledEngine engine = CompiledEngineTest.randomEngine(300, 7);
+        long[] unitIds = {300, 1, 65, 64, 128, 2, 299, 150};
+        Probe probe = new Probe(unitIds);
+        long[] values = probe.read(engine);
+        for (int pulse = 0; pulse < 10; pulse++) {
+            assertSame(values, probe.read(engine));
+            for (int i = 0; i < unitIds.length; i++) {
+                assertEquals(engine.getState(unitIds[i]), probe.get(i));
+                assertEquals(engine.getState(unitIds[i]), (values[0] & (1L << i)) != 0);
+            }
+            engine.pulse();
+        }
+        assertEquals(8, probe.size());
+        assertThrows(IndexOutOfBoundsException.class, () -> probe.get(8));
+    }
+
+    @Test
+    void readManyTest() {
+        CompiledEngine engine = CompiledEngineTest.randomEngine(500, 11);
+        long[] unitIds = new long[150];
+        for (int i = 0; i < unitIds.length; i++) {
+            unitIds[i] = 500 - 3L * i;
+        }
+        Probe probe = new Probe(unitIds);
+        long[] target = new long[Topology.wordsFor(unitIds.length)];
+        BitSet bits = new BitSet();
+        probe.read(engine, target);
+        probe.read(engine, bits);
+        for (int i = 0; i < unitIds.length; i++) {
+            boolean state = engine.getState(unitIds[i]);
+            assertEquals(state, (target[i >>> 6] & (1L << i)) != 0);
+            assertEquals(state, bits.get(i));
+        }
+        assertThrows(IllegalArgumentException.class, () -> probe.read(engine, new long[1]));
+    }
+
+    @Test
+    void reorderTest() {
+        CompiledEngine engine = CompiledEngineTest.randomEngine(200, 3);
+        long[] unitIds = {5, 17, 100, 199};
+        Probe probe = new Probe(unitIds);
+        long[] before = probe.read(engine).clone();
+        CompiledEngine reordered = engine.reorder(UnitOrder.REVERSE_CUTHILL_MCKEE);
+        assertArrayEquals(before, probe.read(reordered));
+        for (int i = 0; i < unitIds.length; i++) {
+            assertEquals(reordered.getState(unitIds[i]), probe.get(i));
+        }
+    }
+
+    @Test
+    void invalidTest() {
+        CompiledEngine engine = CompiledEngineTest.randomEngine(100, 5);
+        Probe probe = new Probe(1, 1000);
+        assertThrows(IllegalArgumentException.class, () -> probe.read(engine));
+        assertThrows(IllegalArgumentException.class, () -> probe.read(engine));
+    }
+
+    @Test
+    void controlReadProbeTest() throws FileSystemException, FileNotFoundException {
+        Control control = new Control();
+        control.addMapper("A", new ATypeMapper());
+        control.readLayout(new UnitLayoutReader(new File("layout/TuringExample.ulf")));
+        Long[] ids = control.getUnitMap().keySet().toArray(new Long[0]);
+        long[] unitIds = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            unitIds[i] = ids[i];
+        }
+        Probe probe = new Probe(unitIds);
+        long[] values = control.readProbe(probe);
+        BitSet bits = new BitSet();
+        control.readProbe(probe, bits);
+        for (int i = 0; i < unitIds.length; i++) {
+            boolean state = control.getEngine().getState(unitIds[i]);
+            assertEquals(state, (values[i >>> 6] & (1L << i)) != 0);
+            assertEquals(state, bits.get(i));
+        }
+    }
+}
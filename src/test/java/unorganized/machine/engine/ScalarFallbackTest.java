@@ -0,0 +1,29 @@
+package unorganized.machine.engine;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of engines running without the jdk.incubator.vector module. Run by the scalarTest task only.
+ */
+@Tag("scalar")
+class ScalarFallbackTest {
+
+    @Test
+    void fallbackTest() {
+        assertFalse(CompiledEngine.isVectorAvailable());
+        for (int unitCount : new int[]{1, 130, 10_007}) {
+            CompiledEngine scalar = CompiledEngineTest.randomEngine(unitCount, unitCount);
+            CompiledEngine vector = CompiledEngineTest.randomEngine(unitCount, unitCount);
+            vector.setVectorized(true);
+            assertFalse(vector.isVectorized());
+            for (int i = 0; i < 30; i++) {
+                scalar.pulse();
+                vector.pulse();
+                assertArrayEquals(scalar.getStates(), vector.getStates());
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package unorganized.machine.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import unorganized.machine.control.Control;
+import unorganized.machine.generator.LayoutGenerator;
+import unorganized.machine.mapper.ATypeMapper;
+import unorganized.machine.reader.StreamingLayoutReader;
+import unorganized.machine.reader.UnitLayoutReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UnitOrderTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Average distance between the index of a wired unit and the indexes of its inputs.
+     */
+    private static double averageDistance(Topology topology) {
+        long distance = 0;
+        long count = 0;
+        for (int slot = 0; slot < topology.getUnitCount() << 1; slot++) {
+            if (topology.isWired(slot >>> 1)) {
+                distance += Math.abs(topology.input(slot) - (slot >>> 1));
+                count++;
+            }
+        }
+        return (double) distance / count;
+    }
+
+    /**
+     * Engine of a local layout whose units are scattered over the state words.
+     */
+    private CompiledEngine scatteredEngine() throws IOException {
+        File layoutFile = this.directory.resolve("local.ulf").toFile();
+        LayoutGenerator.builder().unitCount(20_000).seed(4L).locality(4).fixedRatio(0.01).build().writeText(layoutFile);
+        CompiledEngine engine = new StreamingLayoutReader(layoutFile).read();
+        int[] order = new int[20_000];
+        for (int index = 0; index < order.length; index++) {
+            order[index] = index;
+        }
+        SplittableRandom random = new SplittableRandom(8L);
+        for (int index = order.length - 1; index > 0; index--) {
+            int other = random.nextInt(index + 1);
+            int temporary = order[index];
+            order[index] = order[other];
+            order[other] = temporary;
+        }
+        return CompiledEngine.of(engine.getTopology().reorder(order), engine.getStates());
+    }
+
+    @Test
+    void localityTest() throws IOException {
+        CompiledEngine scattered = scatteredEngine();
+        double before = averageDistance(scattered.getTopology());
+        double reverseCuthillMcKee = averageDistance(scattered.reorder(UnitOrder.REVERSE_CUTHILL_MCKEE).getTopology());
+        assertTrue(reverseCuthillMcKee * 50 < before, before + " -> " + reverseCuthillMcKee);
+        assertArrayEquals(scattered.getTopology().getUnitIds(),
+                scattered.reorder(UnitOrder.KEEP).getTopology().getUnitIds());
+    }
+
+    @Test
+    void sameMachineTest() throws IOException {
+        CompiledEngine scattered = scatteredEngine();
+        for (UnitOrder unitOrder : UnitOrder.values()) {
+            CompiledEngine original = scattered.copy();
+            original.reverseEdge(5L);
+            CompiledEngine reordered = original.reorder(unitOrder);
+            assertTrue(reordered.isEdgeReversed(5L));
+            reordered.reverseEdge(77L);
+            original.reverseEdge(77L);
+
+            // both engines report the same states and edges under the original IDs.
+            for (int i = 0; i < 20; i++) {
+                original.pulse();
+                reordered.pulse();
+            }
+            for (long id : original.getTopology().getUnitIds()) {
+                assertEquals(original.getState(id), reordered.getState(id));
+            }
+            assertEquals(original.createUnitMap().keySet(), reordered.createUnitMap().keySet());
+            long[] slotEdgeIds = reordered.getTopology().getSlotEdgeIds();
+            for (int slot = 0; slot < slotEdgeIds.length; slot++) {
+                if (reordered.getTopology().isWired(slot >>> 1)) {
+                    long edgeId = slotEdgeIds[slot];
+                    assertEquals(original.isEdgeReversed(edgeId), reordered.isEdgeReversed(edgeId));
+                }
+            }
+        }
+    }
+
+    @Test
+    void readLayoutTest() throws IOException {
+        Control original = new Control();
+        original.addMapper("A", new ATypeMapper());
+        original.readLayout(new UnitLayoutReader(new File("layout/TuringExample.ulf")));
+        Control reordered = new Control();
+        reordered.readLayout(new StreamingLayoutReader(new File("layout/TuringExample.ulf")),
+                UnitOrder.REVERSE_CUTHILL_MCKEE);
+
+        for (int i = 0; i < 10; i++) {
+            original.makePulse();
+            reordered.makePulse();
+        }
+        original.getUnitMap().forEach((id, unit) ->
+                assertEquals(unit.isCurrentState(), reordered.getUnitMap().get(id).isCurrentState()));
+        assertEquals(original.getEdgeMap().keySet(), reordered.getEdgeMap().keySet());
+        reordered.initUnitStates();
+        reordered.getInitialUnitStates().forEach((id, state) ->
+                assertEquals(state, reordered.getEngine().getState(id)));
+    }
+}
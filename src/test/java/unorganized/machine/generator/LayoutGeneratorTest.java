@@ -0,0 +1,89 @@
+package unorganized.machine.generator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import unorganized.machine.control.Control;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.engine.Topology;
+import unorganized.machine.mapper.ATypeMapper;
+import unorganized.machine.reader.BinaryLayoutReader;
+import unorganized.machine.reader.StreamingLayoutReader;
+import unorganized.machine.reader.UnitLayoutReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LayoutGeneratorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void textAndBinaryTest() throws IOException {
+        LayoutGenerator generator = LayoutGenerator.builder()
+                .unitCount(10_001).seed(5L).fixedRatio(0.1).selfLoopRatio(0.05).build();
+        File textFile = this.directory.resolve("generated.ulf").toFile();
+        File binaryFile = this.directory.resolve("generated.bin").toFile();
+        generator.writeText(textFile);
+        generator.writeBinary(binaryFile);
+        assertEquals(BinaryLayoutReader.fileSize(10_001), binaryFile.length());
+
+        // both forms describe the same machine.
+        CompiledEngine text = new StreamingLayoutReader(textFile).read();
+        CompiledEngine binary = new BinaryLayoutReader(binaryFile).read();
+        Topology expected = text.getTopology();
+        Topology loaded = binary.getTopology();
+        assertEquals(expected.getEdgeCount(), loaded.getEdgeCount());
+        assertArrayEquals(expected.getUnitIds(), loaded.getUnitIds());
+        assertArrayEquals(expected.getInputs(), loaded.getInputs());
+        assertArrayEquals(expected.getFixedUnits(), loaded.getFixedUnits());
+        assertArrayEquals(expected.getWiredUnits(), loaded.getWiredUnits());
+        assertArrayEquals(expected.getSlotEdgeIds(), loaded.getSlotEdgeIds());
+        assertArrayEquals(text.getStates(), binary.getStates());
+
+        // the same seed generates the same layout, and fixed units and self loops appear as configured.
+        File again = this.directory.resolve("again.ulf").toFile();
+        generator.writeText(again);
+        assertArrayEquals(Files.readAllBytes(textFile.toPath()), Files.readAllBytes(again.toPath()));
+        int fixed = 0;
+        int selfLoops = 0;
+        for (int index = 0; index < expected.getUnitCount(); index++) {
+            if (expected.isFixed(index)) {
+                fixed++;
+            } else if (expected.input(index << 1) == index) {
+                selfLoops++;
+            }
+        }
+        assertTrue(fixed > 800 && fixed < 1200);
+        assertTrue(selfLoops > 300 && selfLoops < 700);
+    }
+
+    @Test
+    void localityTest() throws IOException {
+        File textFile = this.directory.resolve("local.ulf").toFile();
+        LayoutGenerator.builder().unitCount(5000).seed(9L).locality(3).build().writeText(textFile);
+        Topology topology = new StreamingLayoutReader(textFile).read().getTopology();
+        for (int slot = 0; slot < topology.getUnitCount() << 1; slot++) {
+            int distance = Math.abs(topology.input(slot) - (slot >>> 1));
+            assertTrue(Math.min(distance, 5000 - distance) <= 3);
+        }
+    }
+
+    @Test
+    void unitLayoutReaderTest() throws IOException {
+        // generated layouts are accepted by the original reader as well.
+        File textFile = this.directory.resolve("small.ulf").toFile();
+        LayoutGenerator.builder().unitCount(300).seed(2L).fixedRatio(0.2).build().writeText(textFile);
+        Control control = new Control();
+        control.addMapper("A", new ATypeMapper());
+        control.readLayout(new UnitLayoutReader(textFile));
+        CompiledEngine engine = new StreamingLayoutReader(textFile).read();
+        assertEquals(300, control.getUnitMap().size());
+        assertEquals(engine.getTopology().getEdgeCount(), control.getEdgeMap().size());
+        control.getUnitMap().forEach((id, unit) -> assertEquals(unit.isCurrentState(), engine.getState(id)));
+    }
+}
@@ -0,0 +1,67 @@
+package unorganized.machine.metric;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketTest() {
+        LatencyHistogram histogram = new LatencyHistogram(7);
+        // small values have their own bucket.
+        for (long value = 0; value < 128; value++) {
+            assertEquals(value, histogram.bucketOf(value));
+            assertEquals(value, histogram.highestValueOf((int) value));
+        }
+        // every bucket follows the previous one, and its width is bounded by the precision.
+        long previous = -1;
+        for (int bucket = 0; bucket <= histogram.bucketOf(Long.MAX_VALUE); bucket++) {
+            long highest = histogram.highestValueOf(bucket);
+            assertEquals(bucket, histogram.bucketOf(previous + 1));
+            assertEquals(bucket, histogram.bucketOf(highest));
+            assertTrue(highest - previous <= Math.max(1L, (previous + 1) >>> 6));
+            previous = highest;
+            if (highest == Long.MAX_VALUE) {
+                break;
+            }
+        }
+        assertEquals(Long.MAX_VALUE, previous);
+    }
+
+    @Test
+    void percentileTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[10_000];
+        SplittableRandom random = new SplittableRandom(11L);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextLong(1_000_000_000L);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[0], histogram.getMin());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(Arrays.stream(values).average().orElse(0), histogram.getMean(), 1e-6);
+        for (double percentile : new double[]{1, 50, 90, 99, 99.9, 100}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long estimate = histogram.getValueAtPercentile(percentile);
+            assertTrue(estimate >= exact);
+            assertTrue(estimate - exact <= exact / 60);
+        }
+
+        LatencyHistogram sum = new LatencyHistogram();
+        sum.add(histogram);
+        sum.add(histogram);
+        assertEquals(2 * values.length, sum.getCount());
+        assertEquals(histogram.getValueAtPercentile(50), sum.getValueAtPercentile(50));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertThrows(IllegalArgumentException.class, () -> sum.add(new LatencyHistogram(3)));
+    }
+}
@@ -0,0 +1,143 @@
+package unorganized.machine.metric;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import unorganized.machine.control.Control;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.generator.LayoutGenerator;
+import unorganized.machine.mapper.ATypeMapper;
+import unorganized.machine.reader.StreamingLayoutReader;
+import unorganized.machine.reader.UnitLayoutReader;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.FileSystemException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MachineMetricsTest {
+
+    @TempDir
+    Path directory;
+
+    private Control readControl() throws FileSystemException, FileNotFoundException {
+        Control control = new Control();
+        control.addMapper("A", new ATypeMapper());
+        control.readLayout(new UnitLayoutReader(new File("layout/TuringExample.ulf")));
+        return control;
+    }
+
+    @Test
+    void controlTest() throws FileSystemException, FileNotFoundException {
+        MachineMetrics metrics = new MachineMetrics();
+        List<Long> flips = new ArrayList<>();
+        metrics.addListener(new MetricsListener() {
+            @Override
+            public void onPulse(long pulseCount, long flippedUnits, long deliveredEdges, long nanos) {
+                flips.add(flippedUnits);
+            }
+        });
+        Control control = new Control();
+        control.setMetrics(metrics);
+        control.addMapper("A", new ATypeMapper());
+        control.readLayout(new UnitLayoutReader(new File("layout/TuringExample.ulf")));
+        assertEquals(1, metrics.getLoadCount());
+        int edgeCount = control.getEdgeMap().size();
+
+        // pulses of units and edges and of the compiled engine count the same changes.
+        Control reference = readControl();
+        reference.compile();
+        for (int i = 0; i < 5; i++) {
+            long[] before = reference.getEngine().getStates().clone();
+            control.makePulse();
+            reference.makePulse();
+            long changed = 0;
+            for (int word = 0; word < before.length; word++) {
+                changed += Long.bitCount(before[word] ^ reference.getEngine().getStates()[word]);
+            }
+            assertEquals(changed, metrics.getLastFlippedUnits());
+        }
+        control.compile();
+        for (int i = 0; i < 5; i++) {
+            control.makePulse();
+        }
+        assertEquals(10, metrics.getPulseCount());
+        assertEquals(10, flips.size());
+        assertEquals(10L * edgeCount, metrics.getDeliveredEdgeCount());
+        assertEquals(flips.stream().mapToLong(Long::longValue).sum(), metrics.getFlippedUnitCount());
+        assertEquals(10, metrics.getPulseLatency().getCount());
+
+        Control.copy(control);
+        Control.sharedCopy(control);
+        assertEquals(2, metrics.getCopyCount());
+
+        // a control without metrics records nothing.
+        control.setMetrics(null);
+        control.makePulse();
+        assertEquals(10, metrics.getPulseCount());
+        metrics.reset();
+        assertEquals(0, metrics.getPulseCount());
+        assertEquals(0, metrics.getCopyCount());
+    }
+
+    @Test
+    void incrementalTest() throws FileSystemException, FileNotFoundException {
+        MachineMetrics metrics = new MachineMetrics();
+        CompiledEngine engine = readControl().compile();
+        engine.setIncremental(true);
+        engine.setMetrics(metrics);
+        for (int i = 0; i < 20; i++) {
+            engine.pulse();
+        }
+        // incremental pulses deliver at most the edges of a full pulse.
+        assertEquals(20, metrics.getPulseCount());
+        assertTrue(metrics.getDeliveredEdgeCount() <= 20L * engine.getTopology().getEdgeCount());
+        assertTrue(metrics.getDeliveredEdgeCount() >= engine.getTopology().getEdgeCount());
+    }
+
+    @Test
+    void incrementalFlipTest() throws IOException {
+        File layoutFile = this.directory.resolve("settling.ulf").toFile();
+        LayoutGenerator.builder().unitCount(100_000).seed(6L).fixedRatio(0.97).build().writeText(layoutFile);
+        CompiledEngine reference = new StreamingLayoutReader(layoutFile).read();
+        CompiledEngine engine = new StreamingLayoutReader(layoutFile).read();
+        engine.setIncremental(true);
+        MachineMetrics metrics = new MachineMetrics();
+        engine.setMetrics(metrics);
+        for (int i = 0; i < 30; i++) {
+            long[] before = reference.getStates().clone();
+            reference.pulse();
+            engine.pulse();
+            long changed = 0;
+            for (int word = 0; word < before.length; word++) {
+                changed += Long.bitCount(before[word] ^ reference.getStates()[word]);
+            }
+            // incremental pulses count the same changes from the calculated words only.
+            assertEquals(changed, metrics.getLastFlippedUnits());
+        }
+        assertTrue(metrics.getDeliveredEdgeCount() < 30L * engine.getTopology().getEdgeCount());
+    }
+
+    @Test
+    void registerTest() throws JMException {
+        MachineMetrics metrics = new MachineMetrics();
+        metrics.recordPulse(3, 10, 1000);
+        ObjectName objectName = metrics.register("test machine");
+        try {
+            assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "PulseCount"));
+            assertEquals(3L, ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "LastFlippedUnits"));
+            ManagementFactory.getPlatformMBeanServer().invoke(objectName, "reset", null, null);
+            assertEquals(0, metrics.getPulseCount());
+        } finally {
+            MachineMetrics.unregister(objectName);
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+    }
+}
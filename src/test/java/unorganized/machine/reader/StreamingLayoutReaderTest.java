@@ -0,0 +1,126 @@
+package unorganized.machine.reader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import unorganized.machine.control.Control;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.mapper.ATypeMapper;
+import unorganized.machine.writer.BinaryLayoutWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingLayoutReaderTest {
+
+    @TempDir
+    Path directory;
+
+    private Control readControl(File layoutFile) throws IOException {
+        Control control = new Control();
+        control.addMapper("A", new ATypeMapper());
+        control.readLayout(new UnitLayoutReader(layoutFile));
+        return control;
+    }
+
+    @Test
+    void readTest() throws IOException {
+        File layoutFile = new File("layout/TuringExample.ulf");
+        Control original = readControl(layoutFile);
+        CompiledEngine engine = new StreamingLayoutReader(layoutFile).read();
+        assertEquals(5, engine.getTopology().getUnitCount());
+        assertEquals(10, engine.getTopology().getEdgeCount());
+
+        for (int i = 0; i < 20; i++) {
+            original.getUnitMap().forEach((id, unit) -> assertEquals(unit.isCurrentState(), engine.getState(id)));
+            original.makePulse();
+            engine.pulse();
+        }
+    }
+
+    @Test
+    void explicitIdTest() throws IOException {
+        // mix lines with and without unit IDs.
+        File layoutFile = Files.writeString(this.directory.resolve("explicit.ulf"),
+                "UnitLayoutDataFile\r\nA 3 2 1\r\nA 7 3 5 1\r\nA 4 5 0\r\nA 3 4 0\r\nA 2 5 1\r\n").toFile();
+        Control original = readControl(layoutFile);
+        Control streamed = new Control();
+        streamed.readLayout(new StreamingLayoutReader(layoutFile));
+
+        assertEquals(original.getUnitMap().keySet(), streamed.getUnitMap().keySet());
+        assertEquals(original.getInitialUnitStates(), streamed.getInitialUnitStates());
+        original.getEdgeMap().forEach((id, edge) -> {
+            assertEquals(edge.getTailUnit().getId(), streamed.getEdgeMap().get(id).getTailUnit().getId());
+            assertEquals(edge.getHeadUnit().getId(), streamed.getEdgeMap().get(id).getHeadUnit().getId());
+        });
+        for (int i = 0; i < 10; i++) {
+            original.makePulse();
+            streamed.makePulse();
+        }
+        original.getUnitMap().forEach((id, unit) ->
+                assertEquals(unit.isCurrentState(), streamed.getUnitMap().get(id).isCurrentState()));
+
+        streamed.initUnitStates();
+        streamed.getInitialUnitStates().forEach((id, state) -> assertEquals(state, streamed.getEngine().getState(id)));
+    }
+
+    @Test
+    void compileTest() throws IOException {
+        // compiling a control loaded straight into an engine keeps that engine.
+        File layoutFile = new File("layout/TuringExample.ulf");
+        File binaryFile = this.directory.resolve("example.bin").toFile();
+        BinaryLayoutWriter.convert(layoutFile, binaryFile);
+        Control streamed = new Control();
+        streamed.readLayout(new StreamingLayoutReader(layoutFile));
+        Control binary = new Control();
+        binary.readLayout(new BinaryLayoutReader(binaryFile));
+        Control reference = readControl(layoutFile);
+        for (Control control : new Control[]{streamed, binary}) {
+            CompiledEngine engine = control.getEngine();
+            assertSame(engine, control.compile(2));
+            assertEquals(2, engine.getParallelism());
+            assertSame(engine, control.compile());
+        }
+        for (int i = 0; i < 10; i++) {
+            reference.makePulse();
+            streamed.makePulse();
+            binary.makePulse();
+        }
+        reference.getUnitMap().forEach((id, unit) -> {
+            assertEquals(unit.isCurrentState(), streamed.getEngine().getState(id));
+            assertEquals(unit.isCurrentState(), binary.getEngine().getState(id));
+        });
+        streamed.getEngine().setParallelism(1);
+        binary.getEngine().setParallelism(1);
+    }
+
+    @Test
+    void manyExplicitIdTest() throws IOException {
+        // the first implicit ID collides with an explicit one, and many explicit IDs are kept after it.
+        StringBuilder layout = new StringBuilder("UnitLayoutDataFile\nA 1 1 1 1\n");
+        for (int i = 0; i < 500; i++) {
+            layout.append(i % 3 == 1 ? "A " + (10_000 + i) + " 1 1 0\n" : "A 1 1 " + (i & 1) + "\n");
+        }
+        File layoutFile = Files.writeString(this.directory.resolve("many.ulf"), layout.toString()).toFile();
+        Control original = readControl(layoutFile);
+        Control streamed = new Control();
+        streamed.readLayout(new StreamingLayoutReader(layoutFile));
+
+        assertEquals(original.getUnitMap().keySet(), streamed.getUnitMap().keySet());
+        assertEquals(original.getInitialUnitStates(), streamed.getInitialUnitStates());
+    }
+
+    @Test
+    void malformedTest() throws IOException {
+        File wrongHeader = Files.writeString(this.directory.resolve("header.ulf"), "LayoutFile\nA 1 1 0\n").toFile();
+        assertThrows(FileSystemException.class, () -> new StreamingLayoutReader(wrongHeader));
+
+        File wrongLine = Files.writeString(this.directory.resolve("line.ulf"), "UnitLayoutDataFile\nA 1 x 0\n").toFile();
+        StreamingLayoutReader reader = new StreamingLayoutReader(wrongLine);
+        assertThrows(FileSystemException.class, reader::read);
+    }
+}
@@ -0,0 +1,54 @@
+package unorganized.machine.reader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import unorganized.machine.edges.Edge;
+import unorganized.machine.mapper.ATypeMapper;
+import unorganized.machine.mapper.DataMapper;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UnitLayoutReaderScaleTest {
+
+    private static final int UNIT_COUNT = 200_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void createAllEdgesTest() throws IOException {
+        File layoutFile = this.directory.resolve("scale.ulf").toFile();
+        SplittableRandom random = new SplittableRandom(1L);
+        long[] previousUnitIds = new long[UNIT_COUNT << 1];
+        try (BufferedWriter writer = Files.newBufferedWriter(layoutFile.toPath())) {
+            writer.write("UnitLayoutDataFile\n");
+            for (int i = 0; i < UNIT_COUNT; i++) {
+                previousUnitIds[i << 1] = random.nextInt(UNIT_COUNT) + 1;
+                previousUnitIds[(i << 1) + 1] = random.nextInt(UNIT_COUNT) + 1;
+                writer.write("A " + previousUnitIds[i << 1] + " " + previousUnitIds[(i << 1) + 1]
+                        + " " + random.nextInt(2) + "\n");
+            }
+        }
+        UnitLayoutReader unitLayoutReader = new UnitLayoutReader(layoutFile);
+        Map<String, DataMapper> dataMapperMap = Map.of("A", new ATypeMapper());
+        unitLayoutReader.mapAllLine(dataMapperMap);
+        unitLayoutReader.createAllUnits();
+        Map<Long, Edge> edgeMap = unitLayoutReader.createAllEdges();
+
+        // the k-th previous unit of the line of unit i is the tail of edge 2 * (i - 1) + k + 1.
+        assertEquals(UNIT_COUNT << 1, edgeMap.size());
+        for (int slot = 0; slot < UNIT_COUNT << 1; slot++) {
+            Edge edge = edgeMap.get(slot + 1L);
+            assertEquals(previousUnitIds[slot], edge.getTailUnit().getId());
+            assertEquals((slot >>> 1) + 1L, edge.getHeadUnit().getId());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package unorganized.machine.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.engine.StopCondition;
+import unorganized.machine.generator.LayoutGenerator;
+import unorganized.machine.reader.StreamingLayoutReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MutationSearchTest {
+
+    @TempDir
+    Path directory;
+
+    private static final FitnessFunction ONES = outputs -> {
+        int count = 0;
+        for (long word : outputs) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    };
+
+    private CompiledEngine generate(int unitCount, long seed) throws IOException {
+        File layoutFile = this.directory.resolve("machine-" + seed + ".ulf").toFile();
+        LayoutGenerator.builder().unitCount(unitCount).seed(seed).build().writeText(layoutFile);
+        return new StreamingLayoutReader(layoutFile).read();
+    }
+
+    private static long[] outputs(CompiledEngine engine, int count) {
+        long[] unitIds = new long[count];
+        for (int i = 0; i < count; i++) {
+            unitIds[i] = engine.getTopology().unitId(i);
+        }
+        return unitIds;
+    }
+
+    @Test
+    void searchTest() throws IOException {
+        CompiledEngine base = generate(200, 1);
+        long[] outputUnitIds = outputs(base, 100);
+        long[] states = base.getStates().clone();
+        long[] inversions = base.getInversions().clone();
+        MutationSearch search = MutationSearch.builder().fitness(ONES).outputUnitIds(outputUnitIds)
+                .pulses(8).flipsPerCandidate(2).candidatesPerGeneration(64).bestCount(4).parallelism(3).seed(7)
+                .build();
+        SearchResult result = search.search(base, 10);
+
+        assertEquals(1 + 10 * 64, result.getCandidateCount());
+        assertTrue(result.getCandidatesPerSecond() > 0);
+        List<Candidate> best = result.getBestCandidates();
+        assertEquals(4, best.size());
+        for (int i = 1; i < best.size(); i++) {
+            assertTrue(best.get(i - 1).getFitness() >= best.get(i).getFitness());
+        }
+        // the base machine is kept as a candidate, so the search never gets worse.
+        double baseFitness = search.search(base, 0).getBest().getFitness();
+        assertTrue(result.getBest().getFitness() >= baseFitness);
+        assertArrayEquals(states, base.getStates());
+        assertArrayEquals(inversions, base.getInversions());
+        assertEquals(0, base.getPulseCount());
+
+        // reversing the edges of a candidate on a copy gives its fitness.
+        for (Candidate candidate : best) {
+            CompiledEngine replay = base.copy();
+            for (long edgeId : candidate.getFlippedEdgeIds()) {
+                replay.reverseEdge(edgeId);
+            }
+            replay.run(8, StopCondition.NONE);
+            int ones = 0;
+            for (long unitId : outputUnitIds) {
+                ones += replay.getState(unitId) ? 1 : 0;
+            }
+            assertEquals(ones, candidate.getFitness());
+        }
+
+        // the same seed and parallelism gives the same result.
+        SearchResult again = search.search(base, 10);
+        for (int i = 0; i < best.size(); i++) {
+            assertArrayEquals(best.get(i).getFlippedEdgeIds(),
+                    again.getBestCandidates().get(i).getFlippedEdgeIds());
+            assertEquals(best.get(i).getFitness(), again.getBestCandidates().get(i).getFitness());
+        }
+    }
+
+    @Test
+    void toggleTest() {
+        assertArrayEquals(new long[]{1, 4, 9}, MutationSearch.toggle(new long[]{1, 5}, new long[]{9, 5, 4}));
+        assertArrayEquals(new long[]{1, 5}, MutationSearch.toggle(new long[]{1, 5}, new long[]{3, 3}));
+        assertArrayEquals(new long[]{3}, MutationSearch.toggle(new long[]{}, new long[]{3, 3, 3}));
+    }
+
+    @Test
+    void invalidTest() throws IOException {
+        CompiledEngine base = generate(20, 2);
+        MutationSearch unknownOutput = MutationSearch.builder().fitness(ONES).outputUnitIds(new long[]{-1}).build();
+        assertThrows(IllegalArgumentException.class, () -> unknownOutput.search(base, 1));
+        MutationSearch noParallelism = MutationSearch.builder().fitness(ONES).outputUnitIds(outputs(base, 1))
+                .parallelism(0).build();
+        assertThrows(IllegalArgumentException.class, () -> noParallelism.search(base, 1));
+    }
+}
@@ -0,0 +1,130 @@
+package unorganized.machine.snapshot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import unorganized.machine.control.Control;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.engine.StopCondition;
+import unorganized.machine.engine.Topology;
+import unorganized.machine.engine.UnitOrder;
+import unorganized.machine.generator.LayoutGenerator;
+import unorganized.machine.reader.StreamingLayoutReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystemException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotTest {
+
+    private static final File LAYOUT_FILE = new File("layout/TuringExample.ulf");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void incrementalTest() throws IOException {
+        CompiledEngine engine = new StreamingLayoutReader(LAYOUT_FILE).read();
+        File snapshotFile = this.directory.resolve("run.snapshot").toFile();
+        long[][] savedStates = new long[6][];
+        try (SnapshotWriter writer = new SnapshotWriter(engine, snapshotFile)) {
+            for (int i = 0; i < 6; i++) {
+                engine.reverseEdge(i + 1);
+                engine.run(7, StopCondition.NONE);
+                writer.writeIncremental();
+                savedStates[i] = engine.getStates().clone();
+            }
+        }
+
+        // restore every checkpoint into a fresh engine.
+        for (int i = 0; i < 6; i++) {
+            CompiledEngine restored = new StreamingLayoutReader(LAYOUT_FILE).read();
+            try (SnapshotReader reader = new SnapshotReader(snapshotFile)) {
+                assertEquals(i + 1, reader.restore(restored, i + 1));
+            }
+            assertArrayEquals(savedStates[i], restored.getStates());
+            assertEquals(7L * (i + 1), restored.getPulseCount());
+            for (long edgeId = 1; edgeId <= 10; edgeId++) {
+                assertEquals(edgeId <= i + 1, restored.isEdgeReversed(edgeId));
+            }
+        }
+    }
+
+    @Test
+    void byteBufferTest() throws IOException {
+        Control control = new Control();
+        control.readLayout(new StreamingLayoutReader(LAYOUT_FILE));
+        control.getEngine().reverseEdge(3L);
+        control.run(5);
+        ByteBuffer buffer = ByteBuffer.allocate(SnapshotWriter.fullSize(control.getEngine()));
+        new SnapshotWriter(control.getEngine(), buffer).writeFull();
+        assertFalse(buffer.hasRemaining());
+
+        // the restored control continues in the same way.
+        buffer.flip();
+        Control restored = new Control();
+        restored.readLayout(new StreamingLayoutReader(LAYOUT_FILE));
+        new SnapshotReader(buffer).restore(restored);
+        control.run(5);
+        restored.run(5);
+        control.getUnitMap().forEach((id, unit) ->
+                assertEquals(unit.isCurrentState(), restored.getUnitMap().get(id).isCurrentState()));
+        assertFalse(restored.getEdgeMap().get(3L).getStateDeliver().isDeliverWay());
+        assertEquals(10, restored.getEngine().getPulseCount());
+    }
+
+    @Test
+    void reorderedTest() throws IOException {
+        File layoutFile = this.directory.resolve("random.ulf").toFile();
+        LayoutGenerator.builder().unitCount(2_000).seed(4L).fixedRatio(0.1).build().writeText(layoutFile);
+        CompiledEngine engine = new StreamingLayoutReader(layoutFile).read();
+        File snapshotFile = this.directory.resolve("keep.snapshot").toFile();
+        try (SnapshotWriter writer = new SnapshotWriter(engine, snapshotFile)) {
+            engine.run(5, StopCondition.NONE);
+            writer.writeIncremental();
+            engine.reverseRandomEdges(50, new SplittableRandom(1L));
+            engine.run(5, StopCondition.NONE);
+            writer.writeIncremental();
+        }
+
+        // a snapshot of the kept order is restored by unit ID into a reordered engine.
+        CompiledEngine reordered = new StreamingLayoutReader(layoutFile).read()
+                .reorder(UnitOrder.REVERSE_CUTHILL_MCKEE);
+        assertFalse(Arrays.equals(engine.getTopology().getUnitIds(), reordered.getTopology().getUnitIds()));
+        try (SnapshotReader reader = new SnapshotReader(snapshotFile)) {
+            reader.restore(reordered);
+        }
+        Topology topology = engine.getTopology();
+        for (int i = 0; i < 3; i++) {
+            for (int index = 0; index < topology.getUnitCount(); index++) {
+                long unitId = topology.unitId(index);
+                assertEquals(engine.getState(unitId), reordered.getState(unitId));
+            }
+            engine.pulse();
+            reordered.pulse();
+        }
+        for (int slot = 0; slot < topology.getUnitCount() << 1; slot++) {
+            if (topology.isWired(slot >>> 1)) {
+                long edgeId = topology.getSlotEdgeIds()[slot];
+                assertEquals(engine.isEdgeReversed(edgeId), reordered.isEdgeReversed(edgeId));
+            }
+        }
+
+        // an engine without the saved units is rejected.
+        try (SnapshotReader reader = new SnapshotReader(snapshotFile)) {
+            CompiledEngine other = new StreamingLayoutReader(LAYOUT_FILE).read();
+            assertThrows(IllegalArgumentException.class, () -> reader.restore(other));
+        }
+    }
+
+    @Test
+    void malformedTest() {
+        assertThrows(FileSystemException.class, () -> new SnapshotReader(ByteBuffer.allocate(16)));
+        assertThrows(FileSystemException.class, () -> new SnapshotReader(LAYOUT_FILE));
+    }
+}
@@ -0,0 +1,118 @@
+package unorganized.machine.trace;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.generator.LayoutGenerator;
+import unorganized.machine.reader.StreamingLayoutReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncTraceWriterTest {
+
+    @TempDir
+    Path directory;
+
+    private CompiledEngine generate(int unitCount) throws IOException {
+        File layoutFile = this.directory.resolve("machine.ulf").toFile();
+        LayoutGenerator.builder().unitCount(unitCount).seed(9L).build().writeText(layoutFile);
+        return new StreamingLayoutReader(layoutFile).read();
+    }
+
+    /**
+     * Sink keeping copies of the states, slowed down by a pause on every record.
+     */
+    private static class SlowSink implements StateSink {
+        private final List<long[]> records = new ArrayList<>();
+        private final long pauseNanos;
+        private boolean closed;
+
+        SlowSink(long pauseNanos) {
+            this.pauseNanos = pauseNanos;
+        }
+
+        @Override
+        public void record(long[] states) throws IOException {
+            if (this.pauseNanos > 0) {
+                LockSupport.parkNanos(this.pauseNanos);
+            }
+            this.records.add(states.clone());
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+        }
+    }
+
+    @Test
+    void blockTest() throws IOException {
+        CompiledEngine engine = generate(1000);
+        File traceFile = this.directory.resolve("run.trace").toFile();
+        long[][] expected = new long[5000][];
+        AsyncTraceWriter writer = new AsyncTraceWriter(new TraceWriter(engine, traceFile, 64),
+                engine.getStates().length, 8, OverflowPolicy.BLOCK);
+        for (int pulse = 0; pulse < expected.length; pulse++) {
+            engine.pulse();
+            assertTrue(writer.record(engine));
+            expected[pulse] = engine.getStates().clone();
+        }
+        writer.close();
+        assertEquals(expected.length, writer.getRecordedCount());
+        assertEquals(0, writer.getDroppedCount());
+
+        try (TraceReader reader = new TraceReader(traceFile)) {
+            assertEquals(expected.length, reader.getRecordCount());
+            for (int record = 0; record < expected.length; record++) {
+                assertArrayEquals(expected[record], reader.read(record));
+            }
+        }
+    }
+
+    @Test
+    void dropTest() throws IOException {
+        SlowSink sink = new SlowSink(1_000_000);
+        AsyncTraceWriter writer = new AsyncTraceWriter(sink, 1, 2, OverflowPolicy.DROP);
+        for (long value = 0; value < 200; value++) {
+            writer.record(new long[]{value});
+        }
+        writer.close();
+        assertTrue(sink.closed);
+        assertTrue(writer.getDroppedCount() > 0);
+        assertEquals(200, writer.getRecordedCount() + writer.getDroppedCount());
+        assertEquals(writer.getRecordedCount(), sink.records.size());
+        // the states that were kept are written in order.
+        for (int i = 1; i < sink.records.size(); i++) {
+            assertTrue(sink.records.get(i - 1)[0] < sink.records.get(i)[0]);
+        }
+        assertThrows(IllegalStateException.class, () -> writer.record(new long[1]));
+    }
+
+    @Test
+    void failureTest() {
+        StateSink failing = new SlowSink(0) {
+            @Override
+            public void record(long[] states) throws IOException {
+                throw new IOException("disk is full");
+            }
+        };
+        AsyncTraceWriter writer = new AsyncTraceWriter(failing, 1, 4, OverflowPolicy.BLOCK);
+        assertThrows(IOException.class, () -> {
+            for (int i = 0; i < 1_000_000; i++) {
+                writer.record(new long[1]);
+            }
+        });
+        assertThrows(IOException.class, writer::close);
+    }
+}
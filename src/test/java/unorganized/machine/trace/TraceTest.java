@@ -0,0 +1,110 @@
+package unorganized.machine.trace;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.generator.LayoutGenerator;
+import unorganized.machine.reader.StreamingLayoutReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TraceTest {
+
+    @TempDir
+    Path directory;
+
+    private CompiledEngine generate(int unitCount, double fixedRatio) throws IOException {
+        File layoutFile = this.directory.resolve("machine.ulf").toFile();
+        LayoutGenerator.builder().unitCount(unitCount).seed(5L).fixedRatio(fixedRatio).build().writeText(layoutFile);
+        return new StreamingLayoutReader(layoutFile).read();
+    }
+
+    @Test
+    void randomAccessTest() throws IOException {
+        CompiledEngine engine = generate(2000, 0);
+        File traceFile = this.directory.resolve("run.trace").toFile();
+        long[][] expected = new long[3000][];
+        try (TraceWriter writer = new TraceWriter(engine, traceFile, 100)) {
+            for (int pulse = 0; pulse < expected.length; pulse++) {
+                engine.pulse();
+                writer.record(engine);
+                expected[pulse] = engine.getStates().clone();
+            }
+            assertEquals(expected.length, writer.getRecordCount());
+        }
+
+        try (TraceReader reader = new TraceReader(traceFile)) {
+            assertEquals(expected.length, reader.getRecordCount());
+            assertEquals(2000, reader.getUnitCount());
+            assertArrayEquals(engine.getTopology().getUnitIds(), reader.getUnitIds());
+            for (int record = 0; record < expected.length; record++) {
+                assertArrayEquals(expected[record], reader.read(record));
+            }
+            SplittableRandom random = new SplittableRandom(3L);
+            long[] states = new long[reader.getWordCount()];
+            for (int i = 0; i < 500; i++) {
+                int record = random.nextInt(expected.length);
+                reader.read(record, states);
+                assertArrayEquals(expected[record], states);
+                int index = random.nextInt(2000);
+                assertEquals((expected[record][index >>> 6] & (1L << index)) != 0, reader.getState(record, index));
+            }
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.read(expected.length));
+        }
+    }
+
+    @Test
+    void compressionTest() throws IOException {
+        // most units are fixed, so their states never change.
+        CompiledEngine engine = generate(10_000, 0.99);
+        File traceFile = this.directory.resolve("stable.trace").toFile();
+        int pulses = 2000;
+        try (TraceWriter writer = new TraceWriter(engine, traceFile)) {
+            for (int pulse = 0; pulse < pulses; pulse++) {
+                engine.pulse();
+                writer.record(engine);
+            }
+        }
+        long packedSize = (long) pulses * engine.getStates().length * 8;
+        assertTrue(Files.size(traceFile.toPath()) * 20 < packedSize);
+    }
+
+    @Test
+    void unclosedTest() throws IOException {
+        CompiledEngine engine = generate(300, 0);
+        File traceFile = this.directory.resolve("unclosed.trace").toFile();
+        TraceWriter writer = new TraceWriter(engine, traceFile, 7);
+        long[][] expected = new long[50][];
+        for (int pulse = 0; pulse < expected.length; pulse++) {
+            engine.pulse();
+            writer.record(engine);
+            expected[pulse] = engine.getStates().clone();
+        }
+        writer.flush();
+        // a record cut off by a crash of the writer is ignored.
+        Files.write(traceFile.toPath(), new byte[]{TraceWriter.DELTA, 1, 1, 0}, StandardOpenOption.APPEND);
+
+        try (TraceReader reader = new TraceReader(traceFile)) {
+            assertEquals(expected.length, reader.getRecordCount());
+            for (int record = expected.length - 1; record >= 0; record--) {
+                assertArrayEquals(expected[record], reader.read(record));
+            }
+        }
+        writer.close();
+    }
+
+    @Test
+    void invalidFileTest() throws IOException {
+        File file = this.directory.resolve("invalid.trace").toFile();
+        Files.write(file.toPath(), new byte[32]);
+        assertThrows(FileSystemException.class, () -> new TraceReader(file));
+    }
+}
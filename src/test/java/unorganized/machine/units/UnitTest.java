@@ -47,6 +47,51 @@ class UnitTest {
         assertFalse(unit.isCurrentState());
     }
 
+    @Test
+    void previousStatesTest() {
+        Unit unit = Unit.builder().id(0).currentState(true).stateCalculator(this.stateHandler).build();
+        assertNull(unit.getPreviousStates());
+        unit.addPreviousStates(true);
+        unit.addPreviousStates(false);
+        assertEquals(List.of(true, false), unit.getPreviousStates());
+        unit.calculateState();
+        assertTrue(unit.isCurrentState());
+        assertNull(unit.getPreviousStates());
+
+        // more states than bits of a word are kept as well.
+        Unit counter = Unit.builder().id(1).stateCalculator(states -> states.size() == 100).build();
+        for (int i = 0; i < 100; i++) {
+            counter.addPreviousStates(i % 3 == 0);
+        }
+        assertEquals(100, counter.getPreviousStates().size());
+        assertTrue(counter.getPreviousStates().get(99));
+        counter.calculateState();
+        assertTrue(counter.isCurrentState());
+    }
+
+    @Test
+    void builderPreviousStatesTest() {
+        Unit unit = Unit.builder().id(0).currentState(true).previousStates(List.of(true, true))
+                .stateCalculator(this.stateHandler).build();
+        assertEquals(List.of(true, true), unit.getPreviousStates());
+        unit.addPreviousStates(false);
+        assertEquals(List.of(true, true, false), unit.getPreviousStates());
+        unit.calculateState();
+        assertFalse(unit.isCurrentState());
+        assertNull(unit.getPreviousStates());
+    }
+
+    @Test
+    void noCalculatorTest() {
+        // a unit without a calculator keeps its state and the received states.
+        Unit unit = Unit.builder().id(0).currentState(true).build();
+        unit.addPreviousStates(false);
+        unit.addPreviousStates(true);
+        unit.calculateState();
+        assertTrue(unit.isCurrentState());
+        assertEquals(List.of(false, true), unit.getPreviousStates());
+    }
+
     @Test
     void copyTest() {
         // create original
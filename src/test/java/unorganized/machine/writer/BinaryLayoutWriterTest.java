@@ -0,0 +1,92 @@
+package unorganized.machine.writer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import unorganized.machine.control.Control;
+import unorganized.machine.engine.CompiledEngine;
+import unorganized.machine.engine.Topology;
+import unorganized.machine.mapper.ATypeMapper;
+import unorganized.machine.reader.BinaryLayoutReader;
+import unorganized.machine.reader.StreamingLayoutReader;
+import unorganized.machine.reader.UnitLayoutReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryLayoutWriterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void convertTest() throws IOException {
+        File textFile = new File("layout/TuringExample.ulf");
+        File binaryFile = this.directory.resolve("TuringExample.bin").toFile();
+        BinaryLayoutWriter.convert(textFile, binaryFile);
+        assertEquals(BinaryLayoutReader.fileSize(5), binaryFile.length());
+
+        CompiledEngine expected = new StreamingLayoutReader(textFile).read();
+        CompiledEngine loaded = new BinaryLayoutReader(binaryFile).read();
+        assertTopologyEquals(expected.getTopology(), loaded.getTopology());
+        assertArrayEquals(expected.getStates(), loaded.getStates());
+        assertArrayEquals(expected.getInversions(), loaded.getInversions());
+    }
+
+    @Test
+    void mutatedControlTest() throws IOException {
+        // mutate a control read from text.
+        Control control = new Control();
+        control.addMapper("A", new ATypeMapper());
+        control.readLayout(new UnitLayoutReader(new File("layout/TuringExample.ulf")));
+        control.getEdgeMap().get(2L).reverseDeliverRule();
+        control.getEdgeMap().get(7L).reverseDeliverRule();
+        control.makePulse();
+        control.makePulse();
+        File binaryFile = this.directory.resolve("mutated.bin").toFile();
+        new BinaryLayoutWriter().write(control, binaryFile);
+
+        // the loaded machine continues in the same way.
+        Control loaded = new Control();
+        loaded.readLayout(new BinaryLayoutReader(binaryFile));
+        assertFalse(loaded.getEdgeMap().get(2L).getStateDeliver().isDeliverWay());
+        assertTrue(loaded.getEdgeMap().get(3L).getStateDeliver().isDeliverWay());
+        for (int i = 0; i < 10; i++) {
+            control.makePulse();
+            loaded.makePulse();
+            control.getUnitMap().forEach((id, unit) ->
+                    assertEquals(unit.isCurrentState(), loaded.getEngine().getState(id)));
+        }
+    }
+
+    @Test
+    void malformedTest() throws IOException {
+        File binaryFile = this.directory.resolve("TuringExample.bin").toFile();
+        BinaryLayoutWriter.convert(new File("layout/TuringExample.ulf"), binaryFile);
+        byte[] bytes = Files.readAllBytes(binaryFile.toPath());
+
+        File truncated = Files.write(this.directory.resolve("truncated.bin"), Arrays.copyOf(bytes, bytes.length - 8)).toFile();
+        assertThrows(FileSystemException.class, () -> new BinaryLayoutReader(truncated));
+
+        bytes[4] = 9;
+        File otherVersion = Files.write(this.directory.resolve("version.bin"), bytes).toFile();
+        assertThrows(FileSystemException.class, () -> new BinaryLayoutReader(otherVersion));
+
+        File textFile = new File("layout/TuringExample.ulf");
+        assertThrows(FileSystemException.class, () -> new BinaryLayoutReader(textFile));
+    }
+
+    private static void assertTopologyEquals(Topology expected, Topology actual) {
+        assertEquals(expected.getUnitCount(), actual.getUnitCount());
+        assertArrayEquals(expected.getUnitIds(), actual.getUnitIds());
+        assertArrayEquals(expected.getInputs(), actual.getInputs());
+        assertArrayEquals(expected.getFixedUnits(), actual.getFixedUnits());
+        assertArrayEquals(expected.getWiredUnits(), actual.getWiredUnits());
+        assertArrayEquals(expected.getSlotEdgeIds(), actual.getSlotEdgeIds());
+    }
+}
@@ -0,0 +1,108 @@
+package unorganized.machine.engine;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Pulse kernel that calculates the NAND gates of type A units over vector lanes of the JDK Vector API.
+ * Each lane holds one unit. The two input words are gathered by the word index of the tail units,
+ * shifted by their bit positions, XORed with the inversion bits and combined into a NAND,
+ * and the lanes are packed back into the state word of the units.
+ * The class must only be loaded when the jdk.incubator.vector module is available, so it is kept in its own
+ * source set and loaded by the engine through reflection.
+ * @author altair823
+ * @see CompiledEngine#isVectorAvailable()
+ */
+class VectorPulse implements VectorKernel {
+
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    private final Topology topology;
+
+    /**
+     * State word index and bit position of the first and second input of each unit.
+     */
+    private final int[] firstWords;
+    private final int[] secondWords;
+    private final long[] firstShifts;
+    private final long[] secondShifts;
+
+    /**
+     * Lane numbers, and the bit positions of the first input slots of the lanes in an inversion word.
+     */
+    private final LongVector lanes;
+    private final LongVector slotShifts;
+
+    /**
+     * Constructor that splits the inputs of a topology into word indexes and bit positions.
+     * @param topology connectivity of the machine
+     */
+    VectorPulse(Topology topology) {
+        this.topology = topology;
+        int unitCount = topology.getUnitCount();
+        int[] inputs = topology.getInputs();
+        this.firstWords = new int[unitCount];
+        this.secondWords = new int[unitCount];
+        this.firstShifts = new long[unitCount];
+        this.secondShifts = new long[unitCount];
+        for (int index = 0; index < unitCount; index++) {
+            int first = inputs[index << 1];
+            int second = inputs[(index << 1) + 1];
+            this.firstWords[index] = first >>> 6;
+            this.secondWords[index] = second >>> 6;
+            this.firstShifts[index] = first & 63;
+            this.secondShifts[index] = second & 63;
+        }
+        this.lanes = LongVector.zero(SPECIES).addIndex(1);
+        this.slotShifts = this.lanes.lanewise(VectorOperators.LSHL, 1);
+    }
+
+    /**
+     * Calculate the NAND gates of all units in a range of state words.
+     * Fixed and custom units are not handled here and must be corrected by the caller.
+     * @param source current states
+     * @param target words receiving the NAND gates
+     * @param inversions inversion flags of input slots
+     * @param fromWord first word, inclusive
+     * @param toWord last word, exclusive
+     */
+    @Override
+    public void compute(long[] source, long[] target, long[] inversions, int fromWord, int toWord) {
+        int unitCount = this.topology.getUnitCount();
+        int laneCount = SPECIES.length();
+        for (int word = fromWord; word < toWord; word++) {
+            int base = word << 6;
+            int bits = Math.min(64, unitCount - base);
+            long next = 0L;
+            int bit = 0;
+            for (; bit + laneCount <= bits; bit += laneCount) {
+                int index = base + bit;
+                LongVector first = LongVector.fromArray(SPECIES, source, 0, this.firstWords, index)
+                        .lanewise(VectorOperators.LSHR, LongVector.fromArray(SPECIES, this.firstShifts, index));
+                LongVector second = LongVector.fromArray(SPECIES, source, 0, this.secondWords, index)
+                        .lanewise(VectorOperators.LSHR, LongVector.fromArray(SPECIES, this.secondShifts, index));
+                // Slots of the lanes lie in one inversion word, as 32 units share a word of slots.
+                LongVector inversion = LongVector.broadcast(SPECIES, inversions[index >>> 5]);
+                LongVector shifts = this.slotShifts.add((long) (index & 31) << 1);
+                first = first.lanewise(VectorOperators.XOR, inversion.lanewise(VectorOperators.LSHR, shifts));
+                second = second.lanewise(VectorOperators.XOR,
+                        inversion.lanewise(VectorOperators.LSHR, shifts.add(1L)));
+                // NAND gate of the two delivered states, packed back to the bits of the units.
+                next |= first.and(second).not().and(1L)
+                        .lanewise(VectorOperators.LSHL, this.lanes.add(bit))
+                        .reduceLanes(VectorOperators.OR);
+            }
+            for (; bit < bits; bit++) {
+                int index = base + bit;
+                int slot = index << 1;
+                long firstState = (source[this.firstWords[index]] >>> this.firstShifts[index])
+                        ^ (inversions[slot >>> 6] >>> slot);
+                long secondState = (source[this.secondWords[index]] >>> this.secondShifts[index])
+                        ^ (inversions[(slot + 1) >>> 6] >>> (slot + 1));
+                next |= (~(firstState & secondState) & 1L) << bit;
+            }
+            target[word] = next;
+        }
+    }
+}